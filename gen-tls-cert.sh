@@ -0,0 +1,22 @@
+#!/bin/bash
+
+echo "================================================"
+echo "NetQuiz TLS Certificate"
+echo "================================================"
+echo ""
+
+# Self-signed key for localhost; for real deployments use a certificate from a CA
+PASSWORD="${NETQUIZ_TLS_PASSWORD:-changeit}"
+rm -f netquiz-server.p12 netquiz-trust.p12 netquiz.crt
+
+keytool -genkeypair -alias netquiz -keyalg EC -groupname secp256r1 -validity 365 \
+    -dname "CN=localhost" -ext "SAN=dns:localhost,ip:127.0.0.1" \
+    -keystore netquiz-server.p12 -storetype PKCS12 -storepass "$PASSWORD" || exit 1
+keytool -exportcert -alias netquiz -keystore netquiz-server.p12 -storepass "$PASSWORD" -file netquiz.crt || exit 1
+keytool -importcert -noprompt -alias netquiz -file netquiz.crt \
+    -keystore netquiz-trust.p12 -storetype PKCS12 -storepass "$PASSWORD" || exit 1
+rm -f netquiz.crt
+
+echo ""
+echo "Wrote netquiz-server.p12 (server key) and netquiz-trust.p12 (client trust)"
+echo "Run server and clients with -Dnetquiz.tls=true"
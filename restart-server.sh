@@ -0,0 +1,63 @@
+#!/bin/bash
+
+echo "================================================"
+echo "NetQuiz Hot Restart"
+echo "================================================"
+echo ""
+
+# Seconds to wait for the new server to start listening before giving up
+START_TIMEOUT=${START_TIMEOUT:-60}
+
+# Servers running now; they drain once the new one is listening. Started
+# either by mvn exec:java or by an earlier run of this script.
+OLD_PIDS=$(pgrep -f "exec.mainClass=com.netQuiz.server.NetQuizServer")
+if [ -f logs/server.pid ] && kill -0 "$(cat logs/server.pid)" 2>/dev/null; then
+    OLD_PIDS="$OLD_PIDS $(cat logs/server.pid)"
+fi
+
+# Build in a staging copy: the old server still loads classes from its own
+# directory while it drains, so that must not be cleaned or overwritten
+STAMP=$(date +%Y%m%d-%H%M%S)
+STAGE="$PWD/releases/$STAMP"
+LOG="logs/server-$STAMP.out"
+mkdir -p logs "$STAGE"
+cp -r pom.xml src "$STAGE"/
+
+echo "Building in releases/$STAMP..."
+if ! (cd "$STAGE" && mvn compile -q); then
+    echo "Build failed, old server left running"
+    rm -rf "$STAGE"
+    exit 1
+fi
+CP="$STAGE/target/classes:$(cd "$STAGE" && mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)"
+
+echo "Starting the new server (log: $LOG)..."
+nohup java -cp "$CP" com.netQuiz.server.NetQuizServer > "$LOG" 2>&1 &
+NEW_PID=$!
+
+# Both processes share the ports (SO_REUSEPORT) until the old one has drained
+WAITED=0
+until grep -q "Waiting for client connections" "$LOG" 2>/dev/null; do
+    if ! kill -0 $NEW_PID 2>/dev/null; then
+        echo "New server exited during startup, old server left running; see $LOG"
+        exit 1
+    fi
+    if [ $WAITED -ge $START_TIMEOUT ]; then
+        echo "New server not listening after ${START_TIMEOUT}s, stopping it; old server left running"
+        kill -TERM $NEW_PID
+        exit 1
+    fi
+    sleep 1
+    WAITED=$((WAITED + 1))
+done
+echo $NEW_PID > logs/server.pid
+ln -sfn "server-$STAMP.out" logs/server.out
+echo "New server is listening (pid $NEW_PID)"
+
+if [ -n "${OLD_PIDS// /}" ]; then
+    echo "Draining old server(s): $OLD_PIDS"
+    kill -TERM $OLD_PIDS
+fi
+
+# Keep the three newest builds; older servers have long finished draining
+ls -dt releases/*/ 2>/dev/null | tail -n +4 | xargs -r rm -rf
@@ -0,0 +1,30 @@
+#!/bin/bash
+
+echo "================================================"
+echo "NetQuiz Local Cluster"
+echo "================================================"
+echo ""
+
+# id=host:clientPort:busPort; the first node also sends UDP notifications
+NODES="n1=localhost:5002:7002,n2=localhost:5012:7012,n3=localhost:5022:7022"
+# Nodes prove they belong to the cluster with this secret; generated per run unless set
+export NETQUIZ_CLUSTER_SECRET="${NETQUIZ_CLUSTER_SECRET:-$(head -c 32 /dev/urandom | base64)}"
+
+mvn clean compile -q || { echo "Build failed"; exit 1; }
+CP="$PWD/target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)"
+
+for NODE in n1 n2 n3; do
+    mkdir -p "cluster/$NODE"
+    # Each node gets its own working directory for quizzes, scores, files and mailboxes,
+    # but one session key file, so a token from any node is accepted by all,
+    # and one credentials file, so a user registered on one node exists on all
+    (cd "cluster/$NODE" && java -cp "$CP" \
+        -Dnetquiz.cluster.nodes="$NODES" -Dnetquiz.node.id="$NODE" \
+        -Dnetquiz.auth.keys="$PWD/../session-keys.json" \
+        -Dnetquiz.auth.credentials="$PWD/../credentials.jsonl" \
+        com.netQuiz.server.NetQuizServer > server.out 2>&1 &)
+    echo "Started $NODE (logs in cluster/$NODE)"
+done
+
+echo ""
+echo "Point a client at a node with -Dnetquiz.server.port=5002, 5012 or 5022"
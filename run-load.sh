@@ -0,0 +1,11 @@
+#!/bin/bash
+
+echo "================================================"
+echo "NetQuiz Load Generator"
+echo "================================================"
+echo ""
+echo "Usage: ./run-load.sh <LOGIN_STORM|CHAT_ROOM|EXAM_BURST|MASS_DOWNLOAD> [users] [seconds]"
+echo "Make sure the server is running first!"
+echo ""
+
+mvn -q exec:java -Dexec.mainClass="com.netQuiz.client.load.LoadGenerator" -Dexec.args="$*"
@@ -0,0 +1,66 @@
+package com.netQuiz.server.auth;
+
+import com.netQuiz.shared.Constants;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a quiz submission or upload pays to authenticate: checking a signed
+ * token, against the scrypt password check a login does
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionTokenBenchmark {
+    private Path keys;
+    private SessionTokens tokens;
+    private String token;
+    private String forged;
+    private byte[] salt;
+
+    @Setup
+    public void setUp() throws IOException {
+        keys = Files.createTempFile("netquiz-session-keys", ".json");
+        Files.delete(keys);
+        tokens = new SessionTokens(keys, Constants.AUTH_TOKEN_TTL_MS, Constants.AUTH_TOKEN_KEY_ROTATION_MS);
+        token = tokens.issue("student-42");
+        // Same length, last MAC byte wrong
+        char last = token.charAt(token.length() - 1);
+        forged = token.substring(0, token.length() - 1) + (last == 'A' ? 'B' : 'A');
+        salt = new byte[Constants.AUTH_SALT_BYTES];
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(keys);
+    }
+
+    @Benchmark
+    public String issue() {
+        return tokens.issue("student-42");
+    }
+
+    @Benchmark
+    public String verify() {
+        return tokens.verify(token);
+    }
+
+    @Benchmark
+    public String verifyForged() {
+        return tokens.verify(forged);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public byte[] passwordCheck() {
+        return Scrypt.hash("correct horse", salt, Constants.AUTH_SCRYPT_N, Constants.AUTH_SCRYPT_R,
+                Constants.AUTH_SCRYPT_P, Constants.AUTH_HASH_BYTES);
+    }
+}
@@ -0,0 +1,35 @@
+package com.netQuiz.server.handlers;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QuizHandler.calculateScore for a submitted answer sheet
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QuizScoringBenchmark {
+    private QuizHandler quizHandler;
+    private int[] answers;
+
+    @Setup
+    public void setUp() {
+        quizHandler = new QuizHandler(null, null);
+        answers = new int[]{1, 1, 0};
+    }
+
+    @Benchmark
+    public int calculateScore() {
+        return quizHandler.calculateScore("QUIZ001", answers);
+    }
+
+    @Benchmark
+    public int calculateScoreUnknownQuiz() {
+        return quizHandler.calculateScore("MISSING", answers);
+    }
+}
@@ -0,0 +1,105 @@
+package com.netQuiz.server.messaging;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chat fan-out and the online user list at 10, 1k and 10k recipients.
+ * MessagingEngine.publish replaced ChatHandler.broadcast, and presence
+ * snapshots replaced UserHandler.broadcastUserList. Transports only count,
+ * so this measures the engine, not socket writes. Run with -prof gc to see
+ * the allocation per operation; userList and presenceSnapshot should show
+ * none, as they are rebuilt only when someone joins or leaves.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FanOutBenchmark {
+    @Param({"10", "1000", "10000"})
+    private int recipients;
+
+    private MessagingEngine engine;
+    private CountingTransport sender;
+    private CountingTransport joiner;
+    private String someone;
+    private Path mailboxDirectory;
+
+    @Setup
+    public void setUp() throws IOException {
+        mailboxDirectory = Files.createTempDirectory("netquiz-bench-mailbox");
+        // Limits high enough that the rate limiter never rejects
+        ChatRateLimiter unlimited = new ChatRateLimiter(1e9, Integer.MAX_VALUE, 1e9, Integer.MAX_VALUE);
+        engine = new MessagingEngine(null, null, unlimited,
+                new OfflineMailbox(mailboxDirectory, 100, 1000, 1000, 100_000));
+        sender = new CountingTransport();
+        joiner = new CountingTransport();
+        // A fresh copy, as a name read off a socket would be, not the interned one
+        someone = new String("user" + (recipients / 2));
+        engine.attach("user0", sender);
+        for (int i = 1; i < recipients; i++) {
+            engine.attach("user" + i, new CountingTransport());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        engine.stop();
+        Files.deleteIfExists(mailboxDirectory);
+    }
+
+    @Benchmark
+    public void publish() {
+        engine.publish(sender, "user0", "Does anyone know the answer to question 3?");
+    }
+
+    @Benchmark
+    public void userList(Blackhole blackhole) {
+        blackhole.consume(engine.getOnlineUsers());
+    }
+
+    @Benchmark
+    public void presenceSnapshot(Blackhole blackhole) {
+        blackhole.consume(engine.presenceSnapshot());
+    }
+
+    @Benchmark
+    public boolean lookup() {
+        return engine.isOnline(someone);
+    }
+
+    /**
+     * A login and logout in a full room: registry update, join and leave
+     * announcements, and the rebuilt snapshot sent to the new connection
+     */
+    @Benchmark
+    public void joinAndLeave() {
+        engine.attach("newcomer", joiner);
+        engine.detach("newcomer", joiner);
+    }
+
+    private static class CountingTransport implements ChatTransport {
+        private long delivered;
+
+        @Override
+        public Kind getKind() {
+            return Kind.CHAT;
+        }
+
+        @Override
+        public void deliver(ChatEvent event) {
+            delivered++;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
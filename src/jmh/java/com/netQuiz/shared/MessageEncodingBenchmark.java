@@ -0,0 +1,76 @@
+package com.netQuiz.shared;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding one chat Message: the writeUTF sequence the chat handlers use,
+ * a length-prefixed frame written into a reused buffer, and Java
+ * serialization as the slow reference.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageEncodingBenchmark {
+    @Param({"16", "256", "4096"})
+    private int contentLength;
+
+    private Message message;
+    private ByteArrayOutputStream bytes;
+    private DataOutputStream data;
+    private ByteBuffer frame;
+
+    @Setup
+    public void setUp() {
+        message = new Message("student42", "x".repeat(contentLength), System.currentTimeMillis());
+        bytes = new ByteArrayOutputStream(8192);
+        data = new DataOutputStream(bytes);
+        frame = ByteBuffer.allocate(64 * 1024);
+    }
+
+    @Benchmark
+    public int writeUtf() throws IOException {
+        bytes.reset();
+        data.writeUTF(message.getSender());
+        data.writeUTF(message.getContent());
+        data.writeLong(message.getTimestamp());
+        data.flush();
+        return bytes.size();
+    }
+
+    /**
+     * [length:4][senderLength:2][sender][contentLength:4][content][timestamp:8]
+     */
+    @Benchmark
+    public int framed() {
+        byte[] sender = message.getSender().getBytes(StandardCharsets.UTF_8);
+        byte[] content = message.getContent().getBytes(StandardCharsets.UTF_8);
+        frame.clear();
+        frame.putInt(2 + sender.length + 4 + content.length + 8);
+        frame.putShort((short) sender.length);
+        frame.put(sender);
+        frame.putInt(content.length);
+        frame.put(content);
+        frame.putLong(message.getTimestamp());
+        return frame.position();
+    }
+
+    @Benchmark
+    public int objectStream() throws IOException {
+        bytes.reset();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        }
+        return bytes.size();
+    }
+}
@@ -0,0 +1,60 @@
+package com.netQuiz.shared;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Quiz over ObjectOutputStream, as QuizHandler sends it for GET_QUIZ
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QuizSerializationBenchmark {
+    @Param({"3", "50"})
+    private int questionCount;
+
+    private Quiz quiz;
+    private byte[] serialized;
+    private ByteArrayOutputStream bytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Quiz.Question> questions = new ArrayList<>();
+        for (int i = 0; i < questionCount; i++) {
+            questions.add(new Quiz.Question("Question number " + i + "?",
+                    Arrays.asList("Option A", "Option B", "Option C", "Option D"), i % 4));
+        }
+        quiz = new Quiz("BENCH", "Benchmark Quiz", questions);
+        bytes = new ByteArrayOutputStream(64 * 1024);
+        serialize();
+        serialized = bytes.toByteArray();
+    }
+
+    @Benchmark
+    public int serialize() throws IOException {
+        bytes.reset();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(quiz);
+        }
+        return bytes.size();
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return in.readObject();
+        }
+    }
+}
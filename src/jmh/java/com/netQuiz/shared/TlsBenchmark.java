@@ -0,0 +1,160 @@
+package com.netQuiz.shared;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * One short request per connection, the way QuizService and FileService
+ * talk to the server: plaintext, TLS with a full handshake every time, and
+ * TLS resuming the previous session. The large payload shows the bulk
+ * cost of encryption once the handshake is paid.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TlsBenchmark {
+    private static final char[] PASSWORD = "benchmark".toCharArray();
+
+    @Param({"256", "1048576"})
+    private int payload;
+
+    private Path directory;
+    private ServerSocket plainServer;
+    private ServerSocket tlsServer;
+    private ExecutorService workers;
+    private SSLContext serverContext;
+    private SSLContext clientContext;
+    private byte[] buffer;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("netquiz-tls-bench");
+        Path keyStore = directory.resolve("server.p12");
+        Path trustStore = directory.resolve("trust.p12");
+        Path certificate = directory.resolve("server.crt");
+        keytool("-genkeypair", "-alias", "bench", "-keyalg", "EC", "-groupname", "secp256r1",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1",
+                "-keystore", keyStore.toString(), "-storetype", "PKCS12", "-storepass", new String(PASSWORD));
+        keytool("-exportcert", "-alias", "bench", "-keystore", keyStore.toString(),
+                "-storepass", new String(PASSWORD), "-file", certificate.toString());
+        keytool("-importcert", "-noprompt", "-alias", "bench", "-file", certificate.toString(),
+                "-keystore", trustStore.toString(), "-storetype", "PKCS12", "-storepass", new String(PASSWORD));
+        serverContext = Tls.serverContext(keyStore, PASSWORD);
+        clientContext = Tls.clientContext(trustStore, PASSWORD);
+
+        workers = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "BenchServer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        plainServer = new ServerSocket(0, 512, InetAddress.getLoopbackAddress());
+        tlsServer = new ServerSocket(0, 512, InetAddress.getLoopbackAddress());
+        workers.execute(() -> serve(plainServer, false));
+        workers.execute(() -> serve(tlsServer, true));
+        buffer = new byte[Constants.TLS_RECORD_SIZE];
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        plainServer.close();
+        tlsServer.close();
+        workers.shutdownNow();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public long plaintext() throws IOException {
+        try (Socket socket = new Socket("localhost", plainServer.getLocalPort())) {
+            return request(socket);
+        }
+    }
+
+    @Benchmark
+    public long tlsFullHandshake() throws IOException {
+        try (SSLSocket socket = Tls.client(clientContext, new Socket("localhost", tlsServer.getLocalPort()),
+                "localhost", tlsServer.getLocalPort())) {
+            long read = request(socket);
+            // Forget the session so the next connection cannot resume it
+            socket.getSession().invalidate();
+            return read;
+        }
+    }
+
+    @Benchmark
+    public long tlsResumed() throws IOException {
+        try (SSLSocket socket = Tls.client(clientContext, new Socket("localhost", tlsServer.getLocalPort()),
+                "localhost", tlsServer.getLocalPort())) {
+            return request(socket);
+        }
+    }
+
+    private long request(Socket socket) throws IOException {
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeInt(payload);
+        out.flush();
+        InputStream in = socket.getInputStream();
+        long total = 0;
+        int read;
+        while (total < payload && (read = in.read(buffer)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+
+    private void serve(ServerSocket server, boolean tls) {
+        while (!server.isClosed()) {
+            try {
+                Socket accepted = server.accept();
+                workers.execute(() -> respond(accepted, tls));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void respond(Socket accepted, boolean tls) {
+        try (Socket socket = tls ? Tls.server(serverContext, accepted) : accepted) {
+            int size = new DataInputStream(socket.getInputStream()).readInt();
+            OutputStream out = socket.getOutputStream();
+            byte[] chunk = new byte[Constants.TLS_RECORD_SIZE];
+            for (int sent = 0; sent < size; sent += chunk.length) {
+                out.write(chunk, 0, Math.min(chunk.length, size - sent));
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Client went away mid-request
+        }
+    }
+
+    private static void keytool(String... args) throws IOException, InterruptedException {
+        String[] command = new String[args.length + 1];
+        command[0] = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString();
+        System.arraycopy(args, 0, command, 1, args.length);
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        process.getInputStream().transferTo(OutputStream.nullOutputStream());
+        if (process.waitFor() != 0) {
+            throw new IOException("keytool " + args[0] + " failed");
+        }
+    }
+}
@@ -1,16 +1,18 @@
 package com.netQuiz.client;
 
+import com.netQuiz.shared.Constants;
+
 import java.io.*;
 import java.net.*;
 
 /**
  * ChatClient - Console-based chat client
- * Connects to ChatServer and enables real-time messaging
+ * Connects to the server's line chat port and enables real-time messaging
  * Uses two threads: one for reading, one for writing
  */
 public class ChatClient {
-    private static final String SERVER_ADDRESS = "localhost";
-    private static final int SERVER_PORT = 5002;
+    private static final String SERVER_ADDRESS = Constants.SERVER_HOST;
+    private static final int SERVER_PORT = Constants.LINE_CHAT_PORT;
 
     public static void main(String[] args) {
         System.out.println("=================================");
@@ -0,0 +1,317 @@
+package com.netQuiz.client.load;
+
+import com.netQuiz.client.service.FileService;
+import com.netQuiz.client.service.QuizService;
+import com.netQuiz.client.service.ServerBusy;
+import com.netQuiz.client.service.UserService;
+import com.netQuiz.shared.Constants;
+import com.netQuiz.shared.Quiz;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless load generator for capacity testing against a local server.
+ * Every virtual user drives the same client.service classes the Swing
+ * client uses, so the server sees real protocol traffic.
+ *
+ * Usage: LoadGenerator <scenario> [users] [seconds]
+ *   LOGIN_STORM    all users log in at once, stay online, log out
+ *   CHAT_ROOM      logged-in users chat at one message per second each
+ *   EXAM_BURST     all users log in, fetch a quiz at once, then submit together
+ *   MASS_DOWNLOAD  all users download the same file at once
+ */
+public class LoadGenerator {
+
+    public enum Scenario {
+        LOGIN_STORM, CHAT_ROOM, EXAM_BURST, MASS_DOWNLOAD
+    }
+
+    private static final String MESSAGE_PREFIX = "load@";
+    private static final String QUIZ_ID = "QUIZ001";
+    private static final int DOWNLOAD_FILE_SIZE = 1024 * 1024;
+
+    private final Scenario scenario;
+    private final int users;
+    private final int seconds;
+    private final Map<String, OperationStats> stats;
+    private final ExecutorService workers;
+
+    public LoadGenerator(Scenario scenario, int users, int seconds) {
+        this.scenario = scenario;
+        this.users = users;
+        this.seconds = seconds;
+        this.stats = new LinkedHashMap<>();
+        this.workers = Executors.newFixedThreadPool(users, r -> {
+            Thread thread = new Thread(r, "VirtualUser");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private synchronized OperationStats stats(String operation) {
+        return stats.computeIfAbsent(operation, OperationStats::new);
+    }
+
+    public void run() throws Exception {
+        System.out.println("[LOAD] " + scenario + " with " + users + " users for " + seconds + "s against "
+                + Constants.SERVER_HOST + ":" + Constants.SERVER_PORT);
+        long start = System.nanoTime();
+
+        switch (scenario) {
+            case LOGIN_STORM:
+                loginStorm();
+                break;
+            case CHAT_ROOM:
+                chatRoom();
+                break;
+            case EXAM_BURST:
+                examBurst();
+                break;
+            case MASS_DOWNLOAD:
+                massDownload();
+                break;
+        }
+
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        workers.shutdownNow();
+        report(elapsed);
+    }
+
+    /**
+     * Run one task per virtual user, all released at the same moment
+     */
+    private void together(UserTask task) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(users);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(users);
+        for (int i = 0; i < users; i++) {
+            int user = i;
+            workers.execute(() -> {
+                try {
+                    ready.countDown();
+                    go.await();
+                    task.run(user);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        ready.await();
+        go.countDown();
+        done.await();
+    }
+
+    private UserService login(int user) {
+        UserService service = new UserService();
+        long start = System.nanoTime();
+        try {
+            if (service.login(username(user), "password", users -> {
+            }, this::onMessage)) {
+                stats("LOGIN").recordSince(start);
+                return service;
+            }
+        } catch (IOException e) {
+            // Counted below
+        }
+        stats("LOGIN").recordError();
+        return null;
+    }
+
+    private void loginStorm() throws InterruptedException {
+        List<Session> sessions = new ArrayList<>();
+        together(user -> {
+            UserService service = login(user);
+            if (service != null) {
+                synchronized (sessions) {
+                    sessions.add(new Session(username(user), service));
+                }
+            }
+        });
+        TimeUnit.SECONDS.sleep(seconds);
+        logoutAll(sessions);
+    }
+
+    private void chatRoom() throws InterruptedException {
+        List<Session> sessions = new ArrayList<>();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        together(user -> {
+            UserService session = login(user);
+            if (session == null) {
+                return;
+            }
+            synchronized (sessions) {
+                sessions.add(new Session(username(user), session));
+            }
+            // Stay under the per-user rate limit so we measure delivery, not throttling
+            while (System.nanoTime() < end) {
+                long sendStart = System.nanoTime();
+                try {
+                    session.sendMessage(MESSAGE_PREFIX + sendStart);
+                    stats("MESSAGE_SEND").recordSince(sendStart);
+                } catch (IOException e) {
+                    stats("MESSAGE_SEND").recordError();
+                }
+                TimeUnit.MILLISECONDS.sleep(1000);
+            }
+        });
+        logoutAll(sessions);
+    }
+
+    /**
+     * Chat lines arrive as "sender: load@<nanoTime>"; same box, so the
+     * send timestamp gives end-to-end delivery latency
+     */
+    private void onMessage(String message) {
+        int at = message.indexOf(MESSAGE_PREFIX);
+        if (at < 0) {
+            return;
+        }
+        try {
+            long sent = Long.parseLong(message.substring(at + MESSAGE_PREFIX.length()).trim());
+            stats("MESSAGE_DELIVERY").recordSince(sent);
+        } catch (NumberFormatException e) {
+            // Not one of ours
+        }
+    }
+
+    private void examBurst() throws InterruptedException {
+        QuizService quizService = new QuizService();
+        // Submissions need each user's session token
+        UserService[] sessions = new UserService[users];
+        together(user -> sessions[user] = login(user));
+        int[][] answers = new int[users][];
+        together(user -> {
+            long start = System.nanoTime();
+            try {
+                Quiz quiz = quizService.getQuiz(QUIZ_ID);
+                stats("GET_QUIZ").recordSince(start);
+                answers[user] = new int[quiz == null ? 0 : quiz.getQuestions().size()];
+            } catch (IOException | ClassNotFoundException e) {
+                stats("GET_QUIZ").recordError();
+            }
+        });
+        together(user -> {
+            long start = System.nanoTime();
+            try {
+                if (sessions[user] == null) {
+                    stats("SUBMIT_ANSWERS").recordError();
+                    return;
+                }
+                quizService.submitAnswers(sessions[user].getSessionToken(), QUIZ_ID,
+                        answers[user] == null ? new int[0] : answers[user]);
+                stats("SUBMIT_ANSWERS").recordSince(start);
+            } catch (IOException | ClassNotFoundException e) {
+                stats("SUBMIT_ANSWERS").recordError();
+            }
+        });
+        for (int user = 0; user < users; user++) {
+            if (sessions[user] != null) {
+                sessions[user].logout(username(user));
+            }
+        }
+    }
+
+    private void massDownload() throws IOException, InterruptedException {
+        FileService fileService = new FileService();
+        File upload = File.createTempFile("load-download", ".bin");
+        upload.deleteOnExit();
+        Files.write(upload.toPath(), new byte[DOWNLOAD_FILE_SIZE]);
+
+        UserService uploader = new UserService();
+        if (!uploader.login("loadgen", "password", users -> {
+        })) {
+            throw new IOException("Could not log in to upload the test file");
+        }
+        long start = System.nanoTime();
+        fileService.uploadFile(upload, uploader.getSessionToken());
+        stats("UPLOAD").recordSince(start);
+        uploader.logout("loadgen");
+
+        together(user -> {
+            File target = null;
+            long downloadStart = System.nanoTime();
+            try {
+                target = File.createTempFile("load-" + user, ".bin");
+                fileService.downloadFile(upload.getName(), target);
+                stats("DOWNLOAD").recordSince(downloadStart);
+            } catch (IOException e) {
+                stats("DOWNLOAD").recordError();
+            } finally {
+                if (target != null) {
+                    target.delete();
+                }
+            }
+        });
+    }
+
+    private void logoutAll(List<Session> sessions) {
+        synchronized (sessions) {
+            for (Session session : sessions) {
+                session.service.logout(session.username);
+            }
+        }
+    }
+
+    private static String username(int user) {
+        return "load-" + user;
+    }
+
+    private void report(double elapsedSeconds) {
+        System.out.println();
+        System.out.println("[LOAD] " + scenario + " finished in " + String.format("%.1f", elapsedSeconds) + "s");
+        System.out.println(OperationStats.header());
+        synchronized (this) {
+            for (OperationStats operation : stats.values()) {
+                System.out.println(operation.format(elapsedSeconds));
+            }
+        }
+        // Past the per-address cap the server answers busy; services wait and retry,
+        // so these show up as latency, and as errors only once the retries run out
+        long busy = ServerBusy.getBusyReplies();
+        if (busy > 0) {
+            System.out.println("[LOAD] " + busy + " SERVER_BUSY replies retried after the server's delay");
+        }
+    }
+
+    /**
+     * A logged-in virtual user; sessions are collected in completion order,
+     * so the name has to travel with the service
+     */
+    private static class Session {
+        final String username;
+        final UserService service;
+
+        Session(String username, UserService service) {
+            this.username = username;
+            this.service = service;
+        }
+    }
+
+    private interface UserTask {
+        void run(int user) throws InterruptedException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: LoadGenerator <LOGIN_STORM|CHAT_ROOM|EXAM_BURST|MASS_DOWNLOAD> [users] [seconds]");
+            return;
+        }
+        Scenario scenario = Scenario.valueOf(args[0].toUpperCase());
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        new LoadGenerator(scenario, users, seconds).run();
+        System.exit(0);
+    }
+}
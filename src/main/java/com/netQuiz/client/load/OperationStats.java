@@ -0,0 +1,74 @@
+package com.netQuiz.client.load;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency samples and error count for one operation.
+ * Samples are kept in full so percentiles are exact.
+ */
+public class OperationStats {
+    private final String operation;
+    private long[] samples;
+    private int count;
+    private long errors;
+
+    public OperationStats(String operation) {
+        this.operation = operation;
+        this.samples = new long[1024];
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public synchronized void recordError() {
+        errors++;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Latency at the given percentile (0-100) in milliseconds
+     */
+    public synchronized double percentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * One report line: count, errors, throughput over the run, p50/p90/p99/max
+     */
+    public String format(double elapsedSeconds) {
+        return String.format("%-16s %8d %7d %10.1f %9.2f %9.2f %9.2f %9.2f",
+                operation, getCount(), getErrors(), getCount() / elapsedSeconds,
+                percentileMillis(50), percentileMillis(90), percentileMillis(99), percentileMillis(100));
+    }
+
+    public static String header() {
+        return String.format("%-16s %8s %7s %10s %9s %9s %9s %9s",
+                "operation", "count", "errors", "ops/s", "p50 ms", "p90 ms", "p99 ms", "max ms");
+    }
+}
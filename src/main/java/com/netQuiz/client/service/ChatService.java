@@ -2,48 +2,104 @@ package com.netQuiz.client.service;
 
 import com.netQuiz.shared.Constants;
 import com.netQuiz.shared.Message;
+import com.netQuiz.shared.Tls;
 
 import java.io.*;
 import java.net.Socket;
+import java.util.concurrent.ScheduledFuture;
 import java.util.function.Consumer;
 
 public class ChatService {
-    private Socket socket;
-    private DataOutputStream out;
-    private DataInputStream in;
+    // Replaced by the receiver thread when a busy server has it reconnect
+    private volatile Socket socket;
+    private volatile DataOutputStream out;
+    private volatile DataInputStream in;
     private Thread receiverThread;
     private Consumer<Message> messageHandler;
+    private volatile ScheduledFuture<?> heartbeat;
     private volatile boolean running = false;
+    private String username;
+    private String sessionToken;
     
-    public void connect(String username, Consumer<Message> messageHandler) throws IOException {
+    /**
+     * @param sessionToken token from the user's login; the server refuses
+     *                     to attach a chat connection without it
+     */
+    public void connect(String username, String sessionToken, Consumer<Message> messageHandler) throws IOException {
         this.messageHandler = messageHandler;
-        socket = new Socket(Constants.SERVER_HOST, Constants.SERVER_PORT);
+        this.username = username;
+        this.sessionToken = sessionToken;
+        open();
+        
+        running = true;
+        receiverThread = new Thread(this::receiveMessages);
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+    }
+
+    private void open() throws IOException {
+        socket = Tls.connect(Constants.SERVER_HOST, Constants.SERVER_PORT);
         out = new DataOutputStream(socket.getOutputStream());
-        in = new DataInputStream(socket.getInputStream());
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
         
         // Send request type
         out.writeUTF(Constants.CHAT_REQUEST);
         out.writeUTF("CONNECT");
         out.writeUTF(username);
+        out.writeUTF(sessionToken != null ? sessionToken : "");
         out.flush();
-        
-        running = true;
-        receiverThread = new Thread(this::receiveMessages);
-        receiverThread.setDaemon(true);
-        receiverThread.start();
+    }
+
+    /**
+     * Wait for the server to take the connection, reconnecting after the
+     * delay it asks for while it answers busy
+     */
+    private void awaitAdmission() throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                ServerBusy.check(in);
+                return;
+            } catch (ServerBusyException e) {
+                if (attempt >= Constants.CLIENT_BUSY_RETRIES || !running) {
+                    throw e;
+                }
+                socket.close();
+                ServerBusy.backOff(e.getRetryAfterMs());
+                open();
+            }
+        }
     }
     
     public void sendMessage(String sender, String content) throws IOException {
         if (out != null) {
-            out.writeUTF("MESSAGE");
-            out.writeUTF(sender);
-            out.writeUTF(content);
-            out.flush();
+            synchronized (out) {
+                out.writeUTF("MESSAGE");
+                out.writeUTF(sender);
+                out.writeUTF(content);
+                out.flush();
+            }
+        }
+    }
+
+    private void sendHeartbeat() {
+        try {
+            synchronized (out) {
+                out.writeUTF("PING");
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Receiver thread reports the broken connection; stop beating into it
+            heartbeat.cancel(false);
         }
     }
     
     private void receiveMessages() {
         try {
+            awaitAdmission();
+            if (!running) {
+                return;
+            }
+            heartbeat = Heartbeats.start(this::sendHeartbeat);
             while (running && !Thread.currentThread().isInterrupted()) {
                 String sender = in.readUTF();
                 String content = in.readUTF();
@@ -63,6 +119,9 @@ public class ChatService {
     
     public void disconnect() {
         running = false;
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+        }
         
         if (receiverThread != null) {
             receiverThread.interrupt();
@@ -70,9 +129,11 @@ public class ChatService {
         
         try {
             if (out != null) {
-                out.writeUTF("DISCONNECT");
-                out.flush();
-                out.close();
+                synchronized (out) {
+                    out.writeUTF("DISCONNECT");
+                    out.flush();
+                    out.close();
+                }
             }
         } catch (IOException e) {
             // Ignore
@@ -1,5 +1,11 @@
 package com.netQuiz.client.service;
 
+import com.netQuiz.shared.NotificationEvent;
+import com.netQuiz.shared.NotificationTopic;
+
+import java.io.IOException;
+import java.util.EnumSet;
+
 public class ClientServiceManager {
     private static ClientServiceManager instance;
     
@@ -9,6 +15,7 @@ public class ClientServiceManager {
     private ChatService chatService;
     private UserService userService;
     private NotificationService notificationService;
+    private SearchService searchService;
     
     private ClientServiceManager() {
         this.quizService = new QuizService();
@@ -16,6 +23,7 @@ public class ClientServiceManager {
         this.chatService = new ChatService();
         this.userService = new UserService();
         this.notificationService = new NotificationService();
+        this.searchService = new SearchService();
     }
     
     public static synchronized ClientServiceManager getInstance() {
@@ -28,17 +36,30 @@ public class ClientServiceManager {
     public String getUsername() {
         return username;
     }
+
+    /**
+     * Proof of login for quiz submissions and uploads
+     */
+    public String getSessionToken() {
+        return userService.getSessionToken();
+    }
     
     public void setUsername(String username) {
         this.username = username;
-     
-        // Register notification callback
-        notificationService.setNotificationCallback(
-            msg -> System.out.println("[NOTIFY CLIENT] " + msg)
-        );
 
-        // Start listening to server notifications
-        notificationService.startListening();
+        // Typed notifications arrive on the login session once it is open. Chat
+        // presence and activity already come over the chat connection, so the
+        // CHAT topic is left out rather than sent to every client twice
+        try {
+            userService.subscribeNotifications(EnumSet.of(NotificationTopic.QUIZ, NotificationTopic.FILE,
+                    NotificationTopic.SYSTEM), events -> {
+                for (NotificationEvent event : events) {
+                    System.out.println("[NOTIFY CLIENT] " + event.getType() + ": " + event.getPayload());
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Notification subscription error: " + e.getMessage());
+        }
     }
     
     public void connectChat() {
@@ -51,7 +72,7 @@ public class ClientServiceManager {
     public void connectChat(java.util.function.Consumer<com.netQuiz.shared.Message> messageHandler) {
         if (username != null) {
             try {
-                chatService.connect(username, messageHandler);
+                chatService.connect(username, userService.getSessionToken(), messageHandler);
             } catch (Exception e) {
                 System.err.println("Chat connection error: " + e.getMessage());
             }
@@ -77,6 +98,10 @@ public class ClientServiceManager {
     public NotificationService getNotificationService() {
         return notificationService;
     }
+
+    public SearchService getSearchService() {
+        return searchService;
+    }
     
     public void shutdown() {
         chatService.disconnect();
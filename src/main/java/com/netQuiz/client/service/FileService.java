@@ -2,6 +2,7 @@ package com.netQuiz.client.service;
 
 import com.netQuiz.shared.Constants;
 import com.netQuiz.shared.FileInfo;
+import com.netQuiz.shared.Tls;
 
 import java.io.*;
 import java.net.Socket;
@@ -10,8 +11,15 @@ import java.util.List;
 
 public class FileService {
     
-    public void uploadFile(File file, String uploader) throws IOException {
-        try (Socket socket = new Socket(Constants.SERVER_HOST, Constants.SERVER_PORT);
+    /**
+     * @param sessionToken from UserService.getSessionToken(); the file is listed under its user
+     */
+    public void uploadFile(File file, String sessionToken) throws IOException {
+        ServerBusy.retrying(() -> upload(file, sessionToken));
+    }
+
+    private Void upload(File file, String sessionToken) throws IOException {
+        try (Socket socket = Tls.connect(Constants.SERVER_HOST, Constants.SERVER_PORT);
              DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
              DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
             
@@ -19,7 +27,7 @@ public class FileService {
             out.writeUTF(Constants.FILE_REQUEST);
             out.writeUTF("UPLOAD");
             out.writeUTF(file.getName());
-            out.writeUTF(uploader);
+            out.writeUTF(sessionToken);
             out.writeLong(file.length());
             out.flush();
             
@@ -36,15 +44,24 @@ public class FileService {
                 out.flush();
             }
             
+            ServerBusy.check(in);
             String response = in.readUTF();
+            if ("UNAUTHORIZED".equals(response)) {
+                throw new IOException("Session expired, please log in again");
+            }
             if (!"SUCCESS".equals(response)) {
                 throw new IOException("File upload failed");
             }
+            return null;
         }
     }
     
     public void downloadFile(String fileName, File destination) throws IOException {
-        try (Socket socket = new Socket(Constants.SERVER_HOST, Constants.SERVER_PORT);
+        ServerBusy.retrying(() -> download(fileName, destination));
+    }
+
+    private Void download(String fileName, File destination) throws IOException {
+        try (Socket socket = Tls.connect(Constants.SERVER_HOST, Constants.SERVER_PORT);
              DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
              DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
             
@@ -54,6 +71,7 @@ public class FileService {
             out.writeUTF(fileName);
             out.flush();
             
+            ServerBusy.check(in);
             String response = in.readUTF();
             long fileSize = in.readLong();
             
@@ -76,11 +94,16 @@ public class FileService {
                 
                 bos.flush();
             }
+            return null;
         }
     }
     
     public List<FileInfo> getFileList() throws IOException {
-        try (Socket socket = new Socket(Constants.SERVER_HOST, Constants.SERVER_PORT);
+        return ServerBusy.retrying(this::list);
+    }
+
+    private List<FileInfo> list() throws IOException {
+        try (Socket socket = Tls.connect(Constants.SERVER_HOST, Constants.SERVER_PORT);
              DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
              DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
             
@@ -89,6 +112,7 @@ public class FileService {
             out.writeUTF("LIST");
             out.flush();
             
+            ServerBusy.check(in);
             List<FileInfo> fileList = new ArrayList<>();
             int count = in.readInt();
             
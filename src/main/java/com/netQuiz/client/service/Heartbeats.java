@@ -0,0 +1,27 @@
+package com.netQuiz.client.service;
+
+import com.netQuiz.shared.Constants;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One scheduler thread sends heartbeats for every open session in this JVM
+ */
+final class Heartbeats {
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Heartbeats() {
+    }
+
+    static ScheduledFuture<?> start(Runnable beat) {
+        return SCHEDULER.scheduleAtFixedRate(beat, Constants.SESSION_HEARTBEAT_MS,
+                Constants.SESSION_HEARTBEAT_MS, TimeUnit.MILLISECONDS);
+    }
+}
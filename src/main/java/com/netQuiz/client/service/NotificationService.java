@@ -2,53 +2,150 @@ package com.netQuiz.client.service;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.function.Consumer;
 import com.netQuiz.shared.Constants;
+import com.netQuiz.shared.NotificationProtocol;
+import com.netQuiz.shared.NotificationTopic;
 
+/**
+ * Receives UDP notifications. The receive loop reuses one direct buffer
+ * and reads headers in place, so packets for unsubscribed topics, duplicates
+ * and heartbeats cost no allocation; payloads are only decoded to strings
+ * when a callback is registered.
+ */
 public class NotificationService {
-    private DatagramSocket socket;
+    // Give up on a missing notification once the server can no longer replay it
+    private static final long MAX_TRACKED_GAP = Constants.NOTIFICATION_REPLAY_BUFFER_SIZE;
+
+    private DatagramChannel channel;
     private Thread listenerThread;
-    private boolean running = false;
-    private Consumer<String> notificationCallback;
+    private volatile boolean running = false;
+    private volatile Consumer<String> notificationCallback;
+    private final Set<NotificationTopic> topics = EnumSet.allOf(NotificationTopic.class);
+    private NotificationProtocol.DeliveryMode deliveryMode = Constants.NOTIFICATION_DELIVERY_MODE;
+
+    // Receive state, only touched by the listener thread
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(2048);
+    private final byte[] payloadBytes = new byte[2048];
+    private final boolean[] subscribed = new boolean[NotificationTopic.values().length];
+    private final TopicState[] states = new TopicState[NotificationTopic.values().length];
+    private InetAddress serverAddress;
+    private volatile long lostCount = 0;
+
+    public NotificationService() {
+        for (NotificationTopic topic : NotificationTopic.values()) {
+            states[topic.ordinal()] = new TopicState(topic);
+        }
+    }
+
+    /**
+     * Limit which topics this client receives. In multicast mode only the
+     * chosen groups are joined, so other topics never reach this host.
+     * Must be called before {@link #startListening()}.
+     */
+    public synchronized void subscribe(NotificationTopic... subscribed) {
+        topics.clear();
+        for (NotificationTopic topic : subscribed) {
+            topics.add(topic);
+        }
+    }
+
+    public synchronized void setDeliveryMode(NotificationProtocol.DeliveryMode deliveryMode) {
+        this.deliveryMode = deliveryMode;
+    }
 
     public synchronized void startListening() {
         if (running)
             return;
 
         try {
-            // Bind to the same port server broadcasts to
-            socket = new DatagramSocket(null);
-            socket.setReuseAddress(true);
-            socket.bind(new InetSocketAddress(Constants.UDP_NOTIFICATION_PORT));
-            socket.setBroadcast(true);
+            // Bind to the same port server sends to
+            channel = DatagramChannel.open(StandardProtocolFamily.INET);
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(Constants.UDP_NOTIFICATION_PORT));
+            if (deliveryMode == NotificationProtocol.DeliveryMode.MULTICAST) {
+                NetworkInterface networkInterface = multicastInterface();
+                for (NotificationTopic topic : topics) {
+                    channel.join(topic.group(), networkInterface);
+                }
+            } else {
+                channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+            }
+            for (NotificationTopic topic : NotificationTopic.values()) {
+                subscribed[topic.ordinal()] = topics.contains(topic);
+            }
 
             running = true;
             listenerThread = new Thread(this::listen, "NotificationListener");
             listenerThread.setDaemon(true);
             listenerThread.start();
 
-            System.out.println("[CLIENT NOTIFY] Listening for UDP Broadcasts...");
+            System.out.println("[CLIENT NOTIFY] Listening for UDP " + deliveryMode.name().toLowerCase()
+                    + " notifications on " + topics);
 
         } catch (Exception e) {
             System.err.println("[CLIENT NOTIFY] Failed to start: " + e.getMessage());
         }
     }
 
+    /**
+     * First interface that is up and supports multicast, preferring a real
+     * network over loopback
+     */
+    private static NetworkInterface multicastInterface() throws SocketException {
+        NetworkInterface loopback = null;
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        while (interfaces.hasMoreElements()) {
+            NetworkInterface ni = interfaces.nextElement();
+            if (!ni.isUp() || !ni.supportsMulticast()) {
+                continue;
+            }
+            if (!ni.isLoopback()) {
+                return ni;
+            }
+            loopback = ni;
+        }
+        if (loopback == null) {
+            throw new SocketException("No multicast-capable network interface");
+        }
+        return loopback;
+    }
+
     private void listen() {
-        byte[] buffer = new byte[1024];
-        System.out.println("[CLIENT NOTIFY] Ready to receive broadcast messages...");
+        System.out.println("[CLIENT NOTIFY] Ready to receive notifications...");
 
         while (running) {
             try {
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                socket.receive(packet);
+                buffer.clear();
+                SocketAddress sender = channel.receive(buffer);
+                buffer.flip();
+                if (buffer.limit() < NotificationProtocol.HEADER_SIZE) {
+                    continue;
+                }
 
-                String message = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
-                System.out.println("[CLIENT NOTIFY] Received: " + message);
+                // Header is read in place; nothing is allocated for packets we skip
+                byte type = buffer.get(0);
+                NotificationTopic topic = NotificationTopic.fromCode(buffer.get(1));
+                if (topic == null || !subscribed[topic.ordinal()]) {
+                    // Broadcast mode delivers every topic; skip the ones we did not ask for
+                    continue;
+                }
+                if (sender instanceof InetSocketAddress) {
+                    serverAddress = ((InetSocketAddress) sender).getAddress();
+                }
+                TopicState state = states[topic.ordinal()];
+                long sequence = buffer.getLong(2);
 
-                if (notificationCallback != null) {
-                    notificationCallback.accept(message);
+                if (type == NotificationProtocol.HEARTBEAT) {
+                    state.handleHeartbeat(sequence);
+                } else if (type == NotificationProtocol.DATA && state.accept(sequence)) {
+                    deliver();
                 }
             } catch (IOException e) {
                 if (running)
@@ -59,15 +156,184 @@ public class NotificationService {
         System.out.println("[CLIENT NOTIFY] Listener stopped.");
     }
 
+    /**
+     * Decode the entries of a DATA packet, one datagram may carry several
+     */
+    private void deliver() {
+        Consumer<String> callback = notificationCallback;
+        if (callback == null) {
+            return;
+        }
+        buffer.position(NotificationProtocol.HEADER_SIZE);
+        int count = buffer.getShort() & 0xFFFF;
+        for (int i = 0; i < count && buffer.remaining() >= NotificationProtocol.ENTRY_OVERHEAD; i++) {
+            int length = Math.min(buffer.getShort() & 0xFFFF, buffer.remaining());
+            buffer.get(payloadBytes, 0, length);
+            callback.accept(new String(payloadBytes, 0, length, StandardCharsets.UTF_8));
+        }
+    }
+
+    private void sendNack(NotificationTopic topic, long from, long to) {
+        if (serverAddress == null) {
+            return;
+        }
+        try {
+            byte[] nack = NotificationProtocol.encodeNack(topic, from, to);
+            channel.send(ByteBuffer.wrap(nack), new InetSocketAddress(serverAddress, Constants.UDP_NACK_PORT));
+        } catch (IOException e) {
+            System.err.println("[CLIENT NOTIFY] Failed to send NACK: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Number of notifications that were missed and could not be recovered
+     */
+    public long getLostCount() {
+        return lostCount;
+    }
+
     public void setNotificationCallback(Consumer<String> callback) {
         this.notificationCallback = callback;
     }
 
     public synchronized void stop() {
         running = false;
-        if (socket != null && !socket.isClosed()) {
-            socket.close();
+        if (channel != null && channel.isOpen()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignore
+            }
         }
         System.out.println("[CLIENT NOTIFY] Stopped listening.");
     }
+
+    /**
+     * Gap tracking for one topic's sequence stream. Missing sequences are
+     * bits in a ring covering the last MAX_TRACKED_GAP sequences, so
+     * tracking them allocates nothing; one still set when the ring moves
+     * past it was never recovered.
+     */
+    private class TopicState {
+        private static final int WINDOW = (int) MAX_TRACKED_GAP;
+
+        private final NotificationTopic topic;
+        private long lastSequence = -1;
+        private final long[] missing = new long[(WINDOW + 63) / 64];
+        private int missingCount;
+
+        TopicState(NotificationTopic topic) {
+            this.topic = topic;
+        }
+
+        /**
+         * Decide whether a data packet is new, and request any gap it reveals
+         */
+        boolean accept(long sequence) {
+            if (lastSequence < 0) {
+                // First packet since we started listening; earlier history is not ours
+                lastSequence = sequence;
+                return true;
+            }
+            if (sequence <= lastSequence) {
+                // Retransmission we asked for, or a duplicate
+                return sequence >= 0 && sequence > lastSequence - WINDOW && clear(sequence);
+            }
+            advance(sequence, false);
+            return true;
+        }
+
+        void handleHeartbeat(long latest) {
+            if (lastSequence < 0) {
+                lastSequence = latest;
+                return;
+            }
+            if (latest > lastSequence) {
+                advance(latest, true);
+            } else if (missingCount > 0) {
+                // Ask again for anything still outstanding
+                requestMissing();
+            }
+        }
+
+        /**
+         * Move the window up to a newer sequence, marking everything after the
+         * last one seen as missing, the newest too unless it has just arrived
+         */
+        private void advance(long latest, boolean latestMissing) {
+            long from = Math.max(lastSequence + 1, latest - WINDOW + 1);
+            if (from > lastSequence + 1) {
+                // Jumped past the whole window; nothing tracked can be recovered
+                expire(lastSequence - WINDOW + 1, lastSequence);
+            }
+            boolean gap = false;
+            for (long sequence = from; sequence <= latest; sequence++) {
+                // The slot last held the sequence a whole window earlier
+                if (clear(sequence)) {
+                    lost(sequence - WINDOW);
+                }
+                if (sequence < latest || latestMissing) {
+                    set(sequence);
+                    gap = true;
+                }
+            }
+            lastSequence = latest;
+            if (gap) {
+                requestMissing();
+            }
+        }
+
+        private void requestMissing() {
+            long first = -1;
+            long last = -1;
+            for (long sequence = Math.max(0, lastSequence - WINDOW + 1); sequence <= lastSequence; sequence++) {
+                if (isMissing(sequence)) {
+                    if (first < 0) {
+                        first = sequence;
+                    }
+                    last = sequence;
+                }
+            }
+            if (first >= 0) {
+                sendNack(topic, first, last);
+            }
+        }
+
+        private void expire(long from, long to) {
+            for (long sequence = Math.max(0, from); sequence <= to; sequence++) {
+                if (clear(sequence)) {
+                    lost(sequence);
+                }
+            }
+        }
+
+        private void lost(long sequence) {
+            lostCount++;
+            System.err.println("[CLIENT NOTIFY] " + topic + " notification #" + sequence + " lost");
+        }
+
+        private boolean isMissing(long sequence) {
+            int slot = (int) (sequence % WINDOW);
+            return (missing[slot >>> 6] & (1L << slot)) != 0;
+        }
+
+        private void set(long sequence) {
+            int slot = (int) (sequence % WINDOW);
+            missing[slot >>> 6] |= 1L << slot;
+            missingCount++;
+        }
+
+        /**
+         * Mark a sequence as received; true if it had been missing
+         */
+        private boolean clear(long sequence) {
+            if (!isMissing(sequence)) {
+                return false;
+            }
+            int slot = (int) (sequence % WINDOW);
+            missing[slot >>> 6] &= ~(1L << slot);
+            missingCount--;
+            return true;
+        }
+    }
 }
@@ -2,56 +2,82 @@ package com.netQuiz.client.service;
 
 import com.netQuiz.shared.Constants;
 import com.netQuiz.shared.Quiz;
+import com.netQuiz.shared.Tls;
 
 import java.io.*;
 import java.net.Socket;
 import java.util.List;
 
 public class QuizService {
-    
-    @SuppressWarnings("unchecked")
+    // Highest catalog version seen; reads ask for at least this, so moving
+    // between cluster nodes never shows an older catalog
+    private volatile long minVersion;
+
     public List<String> getQuizList() throws IOException, ClassNotFoundException {
-        try (Socket socket = new Socket(Constants.SERVER_HOST, Constants.SERVER_PORT);
+        return ServerBusy.retrying(this::listQuizzes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> listQuizzes() throws IOException, ClassNotFoundException {
+        try (Socket socket = Tls.connect(Constants.SERVER_HOST, Constants.SERVER_PORT);
              DataOutputStream out = new DataOutputStream(socket.getOutputStream());
-             DataInputStream in = new DataInputStream(socket.getInputStream())) {
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
             
             // Send request type
             out.writeUTF(Constants.QUIZ_REQUEST);
-            out.writeUTF("LIST_QUIZZES");
+            out.writeUTF("LIST_QUIZZES_AT");
+            out.writeLong(minVersion);
             out.flush();
             
+            ServerBusy.check(in);
+            seenVersion(in.readLong());
             ObjectInputStream ois = new ObjectInputStream(in);
             return (List<String>) ois.readObject();
         }
     }
     
     public Quiz getQuiz(String quizId) throws IOException, ClassNotFoundException {
-        try (Socket socket = new Socket(Constants.SERVER_HOST, Constants.SERVER_PORT);
+        return ServerBusy.retrying(() -> fetchQuiz(quizId));
+    }
+
+    private Quiz fetchQuiz(String quizId) throws IOException, ClassNotFoundException {
+        try (Socket socket = Tls.connect(Constants.SERVER_HOST, Constants.SERVER_PORT);
              DataOutputStream out = new DataOutputStream(socket.getOutputStream());
-             DataInputStream in = new DataInputStream(socket.getInputStream())) {
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
             
             // Send request type
             out.writeUTF(Constants.QUIZ_REQUEST);
-            out.writeUTF("GET_QUIZ");
+            out.writeUTF("GET_QUIZ_AT");
             out.writeUTF(quizId);
+            out.writeLong(minVersion);
             out.flush();
             
+            ServerBusy.check(in);
+            seenVersion(in.readLong());
             ObjectInputStream ois = new ObjectInputStream(in);
             return (Quiz) ois.readObject();
         }
     }
     
-    public int submitAnswers(String userId, String quizId, int[] answers) 
+    /**
+     * @param sessionToken from UserService.getSessionToken(); the score is saved for its user
+     */
+    public int submitAnswers(String sessionToken, String quizId, int[] answers)
             throws IOException, ClassNotFoundException {
-        try (Socket socket = new Socket(Constants.SERVER_HOST, Constants.SERVER_PORT)) {
+        return ServerBusy.retrying(() -> submit(sessionToken, quizId, answers));
+    }
+
+    private int submit(String sessionToken, String quizId, int[] answers) throws IOException {
+        try (Socket socket = Tls.connect(Constants.SERVER_HOST, Constants.SERVER_PORT)) {
             
-            OutputStream out = socket.getOutputStream();
+            // Sent in one write: the server may refuse the token and close before reading the answers
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
             DataOutputStream dos = new DataOutputStream(out);
             
             // Send request type
             dos.writeUTF(Constants.QUIZ_REQUEST);
             dos.writeUTF("SUBMIT_ANSWERS");
-            dos.writeUTF(userId);
+            dos.writeUTF(sessionToken);
             dos.writeUTF(quizId);
             
             // Now send answers using ObjectOutputStream on same stream
@@ -60,8 +86,24 @@ public class QuizService {
             oos.flush();
             
             // Read response
-            DataInputStream dis = new DataInputStream(socket.getInputStream());
-            return dis.readInt();
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            ServerBusy.check(dis);
+            int score = dis.readInt();
+            if (score == Constants.SCORE_UNAUTHORIZED) {
+                throw new IOException("Session expired, please log in again");
+            }
+            if (score == Constants.SCORE_UNAVAILABLE) {
+                throw new IOException("Quiz " + quizId + " is not available right now, please try again");
+            }
+            return score;
         }
     }
+
+    private synchronized void seenVersion(long version) {
+        minVersion = Math.max(minVersion, version);
+    }
+
+    public long getMinVersion() {
+        return minVersion;
+    }
 }
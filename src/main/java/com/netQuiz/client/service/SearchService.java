@@ -0,0 +1,46 @@
+package com.netQuiz.client.service;
+
+import com.netQuiz.shared.Constants;
+import com.netQuiz.shared.SearchHit;
+import com.netQuiz.shared.Tls;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SearchService {
+
+    public List<SearchHit> search(String query, int limit) throws IOException {
+        return ServerBusy.retrying(() -> query(query, limit));
+    }
+
+    private List<SearchHit> query(String query, int limit) throws IOException {
+        try (Socket socket = Tls.connect(Constants.SERVER_HOST, Constants.SERVER_PORT);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+
+            // Send request type
+            out.writeUTF(Constants.SEARCH_REQUEST);
+            out.writeUTF("QUERY");
+            out.writeUTF(query);
+            out.writeInt(limit);
+            out.flush();
+
+            ServerBusy.check(in);
+            List<SearchHit> hits = new ArrayList<>();
+            int count = in.readInt();
+
+            for (int i = 0; i < count; i++) {
+                SearchHit.HitType type = SearchHit.HitType.valueOf(in.readUTF());
+                String title = in.readUTF();
+                String text = in.readUTF();
+                long timestamp = in.readLong();
+                float score = in.readFloat();
+                hits.add(new SearchHit(type, title, text, timestamp, score));
+            }
+
+            return hits;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.netQuiz.client.service;
+
+import com.netQuiz.shared.Constants;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control answers a connection it will not serve with
+ * [UTF SERVER_BUSY][long retryAfterMs] where the reply would be, then
+ * closes. Services look for that frame before reading a reply, and retry
+ * once the server's delay has passed.
+ */
+public final class ServerBusy {
+    // The frame as writeUTF encodes it: two length bytes, then the name
+    private static final byte[] FRAME_HEAD = head();
+    private static final AtomicLong busyReplies = new AtomicLong();
+
+    private ServerBusy() {
+    }
+
+    interface Call<T, E extends Exception> {
+        T call() throws IOException, E;
+    }
+
+    /**
+     * Throw ServerBusyException if the reply starts with a busy frame;
+     * otherwise leave it to be read as usual. The stream must support mark,
+     * e.g. wrap a BufferedInputStream. Bytes are compared one at a time, so
+     * an ordinary reply is never waited on past its first differing byte.
+     */
+    static void check(DataInputStream in) throws IOException {
+        in.mark(FRAME_HEAD.length);
+        for (byte expected : FRAME_HEAD) {
+            if (in.read() != (expected & 0xff)) {
+                in.reset();
+                return;
+            }
+        }
+        busyReplies.incrementAndGet();
+        throw new ServerBusyException(in.readLong());
+    }
+
+    /**
+     * Run a request, repeating it after the server's delay plus some jitter
+     * while it answers busy, up to CLIENT_BUSY_RETRIES times
+     */
+    static <T, E extends Exception> T retrying(Call<T, E> call) throws IOException, E {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return call.call();
+            } catch (ServerBusyException e) {
+                if (attempt >= Constants.CLIENT_BUSY_RETRIES) {
+                    throw e;
+                }
+                backOff(e.getRetryAfterMs());
+            }
+        }
+    }
+
+    /**
+     * Wait out a busy reply. Jitter spreads out clients that were turned
+     * away together so they do not all come back at once.
+     */
+    static void backOff(long retryAfterMs) throws InterruptedIOException {
+        try {
+            Thread.sleep(retryAfterMs + ThreadLocalRandom.current().nextLong(retryAfterMs / 2 + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while the server was busy");
+        }
+    }
+
+    /**
+     * Busy replies seen by every service in this JVM, retried or not
+     */
+    public static long getBusyReplies() {
+        return busyReplies.get();
+    }
+
+    private static byte[] head() {
+        byte[] name = Constants.SERVER_BUSY.getBytes(StandardCharsets.UTF_8);
+        byte[] head = new byte[2 + name.length];
+        head[0] = (byte) (name.length >>> 8);
+        head[1] = (byte) name.length;
+        System.arraycopy(name, 0, head, 2, name.length);
+        return head;
+    }
+}
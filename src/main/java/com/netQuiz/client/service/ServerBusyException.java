@@ -0,0 +1,23 @@
+package com.netQuiz.client.service;
+
+import java.io.IOException;
+
+/**
+ * The server turned the connection away under load and asked us to come
+ * back later. Services retry on their own; this reaches callers only once
+ * the retries run out.
+ */
+public class ServerBusyException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMs;
+
+    public ServerBusyException(long retryAfterMs) {
+        super("Server is busy, retry in " + retryAfterMs + "ms");
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+}
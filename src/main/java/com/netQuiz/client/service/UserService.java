@@ -1,11 +1,19 @@
 package com.netQuiz.client.service;
 
 import com.netQuiz.shared.Constants;
+import com.netQuiz.shared.NotificationEvent;
+import com.netQuiz.shared.NotificationProtocol;
+import com.netQuiz.shared.NotificationTopic;
+import com.netQuiz.shared.Tls;
 
 import java.io.*;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
 import java.util.function.Consumer;
 
 public class UserService {
@@ -15,7 +23,20 @@ public class UserService {
     private Thread listenerThread;
     private Consumer<List<String>> userListHandler;
     private Consumer<String> messageHandler;  // For receiving chat messages
+    private Consumer<List<String>> typingHandler;
+    private Consumer<List<NotificationEvent>> notificationHandler;
+    private Set<NotificationTopic> notificationTopics = EnumSet.noneOf(NotificationTopic.class);
+    private ScheduledFuture<?> heartbeat;
     private volatile boolean running = false;
+
+    // Presence state rebuilt from snapshots and versioned deltas
+    private final Set<String> onlineUsers = new LinkedHashSet<>();
+    private long presenceVersion = -1;
+
+    // From the last login and refreshed by the server while logged in; a reconnect
+    // as the same user, quiz submissions and uploads present it instead of the password
+    private volatile String sessionToken;
+    private String tokenUser;
     
     public boolean login(String username, String password, Consumer<List<String>> userListHandler) 
             throws IOException {
@@ -26,19 +47,29 @@ public class UserService {
                         Consumer<String> messageHandler) throws IOException {
         this.userListHandler = userListHandler;
         this.messageHandler = messageHandler;
-        socket = new Socket(Constants.SERVER_HOST, Constants.SERVER_PORT);
-        out = new DataOutputStream(socket.getOutputStream());
-        in = new DataInputStream(socket.getInputStream());
-        
-        // Send request type
-        out.writeUTF(Constants.USER_REQUEST);
-        out.writeUTF("LOGIN");
-        out.writeUTF(username);
-        out.writeUTF(password);
-        out.flush();
-        
-        boolean success = in.readBoolean();
-        String welcomeMessage = in.readUTF();
+
+        boolean success = false;
+        String welcomeMessage = null;
+        if (sessionToken != null && username.equals(tokenUser)) {
+            String token = sessionToken;
+            sessionToken = null;
+            openLogin("LOGIN_TOKEN", token);
+            success = in.readBoolean();
+            welcomeMessage = in.readUTF();
+            if (!success) {
+                // Expired or issued by a server that has since restarted
+                closeConnection();
+            }
+        }
+        if (!success) {
+            openLogin("LOGIN", username, password);
+            success = in.readBoolean();
+            welcomeMessage = in.readUTF();
+        }
+        if (success) {
+            sessionToken = in.readUTF();
+            tokenUser = username;
+        }
 
         if (success && messageHandler != null) {
             messageHandler.accept(welcomeMessage);
@@ -49,24 +80,108 @@ public class UserService {
             listenerThread = new Thread(this::listenForUpdates);
             listenerThread.setDaemon(true);
             listenerThread.start();
+            heartbeat = Heartbeats.start(this::sendHeartbeat);
+            if (!notificationTopics.isEmpty()) {
+                sendSubscription();
+            }
         }
         
         return success;
     }
     
+    private void openLogin(String command, String... fields) throws IOException {
+        ServerBusy.retrying(() -> {
+            socket = Tls.connect(Constants.SERVER_HOST, Constants.SERVER_PORT);
+            out = new DataOutputStream(socket.getOutputStream());
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            // Send request type
+            out.writeUTF(Constants.USER_REQUEST);
+            out.writeUTF(command);
+            for (String field : fields) {
+                out.writeUTF(field);
+            }
+            out.flush();
+            try {
+                ServerBusy.check(in);
+            } catch (ServerBusyException e) {
+                closeConnection();
+                throw e;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Signed token from the last successful login, or null. Pass it to
+     * QuizService.submitAnswers and FileService.uploadFile.
+     */
+    public String getSessionToken() {
+        return sessionToken;
+    }
+
     /**
      * Send a chat message or command to the server
      * Supports: regular messages, /msg username message, /users, /help
      */
     public void sendMessage(String message) throws IOException {
         if (out != null && running) {
-            out.writeUTF(message);
-            out.flush();
+            synchronized (out) {
+                out.writeUTF(message);
+                out.flush();
+            }
+        }
+    }
+
+    private void sendHeartbeat() {
+        try {
+            sendMessage("PING");
+        } catch (IOException e) {
+            // Listener thread reports the broken connection; stop beating into it
+            heartbeat.cancel(false);
         }
     }
 
+    /**
+     * Tell other users we are typing. Cheap to call on every keystroke:
+     * the server coalesces indicators into its periodic presence frame.
+     */
+    public void sendTyping() throws IOException {
+        sendMessage("TYPING");
+    }
+
+    public void setTypingHandler(Consumer<List<String>> typingHandler) {
+        this.typingHandler = typingHandler;
+    }
+
+    /**
+     * Receive typed notifications for the given topics over the login
+     * session. The server only sends topics we subscribed to. May be called
+     * before login; the subscription is sent once the session is open.
+     */
+    public void subscribeNotifications(Set<NotificationTopic> topics, Consumer<List<NotificationEvent>> handler)
+            throws IOException {
+        this.notificationTopics = EnumSet.noneOf(NotificationTopic.class);
+        this.notificationTopics.addAll(topics);
+        this.notificationHandler = handler;
+        sendSubscription();
+    }
+
+    private void sendSubscription() throws IOException {
+        StringBuilder command = new StringBuilder("SUBSCRIBE");
+        String separator = " ";
+        for (NotificationTopic topic : notificationTopics) {
+            command.append(separator).append(topic.name());
+            separator = ",";
+        }
+        sendMessage(command.toString());
+    }
+
     public void logout(String username) {
         running = false;
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+        }
         
         if (listenerThread != null) {
             listenerThread.interrupt();
@@ -74,9 +189,11 @@ public class UserService {
         
         try {
             if (out != null) {
-                out.writeUTF("LOGOUT");
-                out.writeUTF(username);
-                out.flush();
+                synchronized (out) {
+                    out.writeUTF("LOGOUT");
+                    out.writeUTF(username);
+                    out.flush();
+                }
             }
         } catch (IOException e) {
             // Ignore
@@ -86,15 +203,20 @@ public class UserService {
     }
     
     public List<String> getOnlineUsers() throws IOException {
-        try (Socket tempSocket = new Socket(Constants.SERVER_HOST, Constants.SERVER_PORT);
+        return ServerBusy.retrying(this::fetchOnlineUsers);
+    }
+
+    private List<String> fetchOnlineUsers() throws IOException {
+        try (Socket tempSocket = Tls.connect(Constants.SERVER_HOST, Constants.SERVER_PORT);
              DataOutputStream tempOut = new DataOutputStream(tempSocket.getOutputStream());
-             DataInputStream tempIn = new DataInputStream(tempSocket.getInputStream())) {
+             DataInputStream tempIn = new DataInputStream(new BufferedInputStream(tempSocket.getInputStream()))) {
             
             // Send request type
             tempOut.writeUTF(Constants.USER_REQUEST);
             tempOut.writeUTF("GET_USERS");
             tempOut.flush();
             
+            ServerBusy.check(tempIn);
             int count = tempIn.readInt();
             List<String> users = new ArrayList<>();
             
@@ -126,6 +248,26 @@ public class UserService {
                         }
                         break;
 
+                    case "PRESENCE_SNAPSHOT":
+                        readPresenceSnapshot();
+                        break;
+
+                    case "SESSION_TOKEN":
+                        sessionToken = in.readUTF();
+                        break;
+
+                    case "PRESENCE_DELTA":
+                        readPresenceDelta();
+                        break;
+
+                    case "PRIVATE_BATCH":
+                        readPrivateBatch();
+                        break;
+
+                    case NotificationProtocol.EVENT_BATCH:
+                        readNotificationBatch();
+                        break;
+
                     case "MESSAGE":
                     case "CHAT_MSG":
                     case "SYSTEM_MSG":
@@ -147,7 +289,10 @@ public class UserService {
                                 String line = in.readUTF();
                                 // Check if this might be a new message type
                                 if (line.equals("USER_LIST") || line.equals("MESSAGE") ||
-                                    line.equals("CHAT_MSG") || line.equals("SYSTEM_MSG")) {
+                                    line.equals("CHAT_MSG") || line.equals("SYSTEM_MSG") ||
+                                    line.equals("PRESENCE_SNAPSHOT") || line.equals("PRESENCE_DELTA") ||
+                                    line.equals("PRIVATE_BATCH") || line.equals(NotificationProtocol.EVENT_BATCH) ||
+                                    line.equals("SESSION_TOKEN")) {
                                     // This is a new message, handle it recursively
                                     handleMessage(line);
                                     break;
@@ -187,6 +332,26 @@ public class UserService {
                 }
                 break;
 
+            case "PRESENCE_SNAPSHOT":
+                readPresenceSnapshot();
+                break;
+
+            case "PRESENCE_DELTA":
+                readPresenceDelta();
+                break;
+
+            case "PRIVATE_BATCH":
+                readPrivateBatch();
+                break;
+
+            case NotificationProtocol.EVENT_BATCH:
+                readNotificationBatch();
+                break;
+
+            case "SESSION_TOKEN":
+                sessionToken = in.readUTF();
+                break;
+
             case "CHAT_MSG":
             case "SYSTEM_MSG":
             case "MESSAGE":
@@ -198,6 +363,72 @@ public class UserService {
         }
     }
 
+    private void readPresenceSnapshot() throws IOException {
+        presenceVersion = in.readLong();
+        onlineUsers.clear();
+        onlineUsers.addAll(readNames());
+        if (userListHandler != null) {
+            userListHandler.accept(new ArrayList<>(onlineUsers));
+        }
+    }
+
+    private void readPresenceDelta() throws IOException {
+        long baseVersion = in.readLong();
+        long version = in.readLong();
+        List<String> joined = readNames();
+        List<String> left = readNames();
+        List<String> typing = readNames();
+
+        if (baseVersion != presenceVersion) {
+            // Missed an update: ask for a full snapshot instead of applying out of order
+            System.out.println("[UserService] Presence gap (have " + presenceVersion + ", got " + baseVersion + ")");
+            sendMessage("SYNC_PRESENCE");
+            return;
+        }
+
+        presenceVersion = version;
+        // Deltas may repeat what a snapshot already showed; only report real changes
+        boolean changed = onlineUsers.addAll(joined);
+        changed |= onlineUsers.removeAll(left);
+        if (changed) {
+            if (userListHandler != null) {
+                userListHandler.accept(new ArrayList<>(onlineUsers));
+            }
+        }
+        if (!typing.isEmpty() && typingHandler != null) {
+            typingHandler.accept(typing);
+        }
+    }
+
+    /**
+     * Private messages that were queued while we were offline
+     */
+    private void readPrivateBatch() throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String message = in.readUTF();
+            if (messageHandler != null) {
+                messageHandler.accept(message);
+            }
+        }
+    }
+
+    private void readNotificationBatch() throws IOException {
+        List<NotificationEvent> events = NotificationProtocol.readEventBatch(in);
+        if (notificationHandler != null && !events.isEmpty()) {
+            notificationHandler.accept(events);
+        }
+    }
+
+    private List<String> readNames() throws IOException {
+        int count = in.readInt();
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(in.readUTF());
+        }
+        return names;
+    }
+
     private void closeConnection() {
         try {
             if (out != null) out.close();
@@ -15,6 +15,8 @@ public class MainSwing extends JFrame {
 
     private JTextArea chatArea;
     private JTextField chatInput;
+    private JLabel typingLabel;
+    private long lastTypingSent;
 
     private DefaultListModel<String> quizListModel;
     private DefaultListModel<String> fileListModel;
@@ -41,6 +43,15 @@ public class MainSwing extends JFrame {
         chatInput = new JTextField();
         JButton sendBtn = new JButton("Send");
         sendBtn.addActionListener(e -> sendChat());
+        chatInput.addKeyListener(new java.awt.event.KeyAdapter() {
+            @Override
+            public void keyTyped(java.awt.event.KeyEvent e) {
+                sendTyping();
+            }
+        });
+        typingLabel = new JLabel(" ");
+        typingLabel.setForeground(Color.GRAY);
+        chatInputPanel.add(typingLabel, BorderLayout.NORTH);
         chatInputPanel.add(chatInput, BorderLayout.CENTER);
         chatInputPanel.add(sendBtn, BorderLayout.EAST);
         chatPanel.add(chatInputPanel, BorderLayout.SOUTH);
@@ -84,9 +95,33 @@ public class MainSwing extends JFrame {
             }
         }));
 
+        serviceManager.getUserService().setTypingHandler(this::showTyping);
+
         // Load initial lists asynchronously
         loadInitialData();
     }
+
+    /**
+     * Send a typing indicator at most every two seconds
+     */
+    private void sendTyping() {
+        long now = System.currentTimeMillis();
+        if (now - lastTypingSent < 2000) return;
+        lastTypingSent = now;
+        try {
+            serviceManager.getUserService().sendTyping();
+        } catch (Exception ignored) {}
+    }
+
+    private void showTyping(List<String> users) {
+        SwingUtilities.invokeLater(() -> {
+            users.remove(serviceManager.getUsername());
+            typingLabel.setText(users.isEmpty() ? " " : String.join(", ", users) + " typing...");
+            Timer clear = new Timer(3000, e -> typingLabel.setText(" "));
+            clear.setRepeats(false);
+            clear.start();
+        });
+    }
     
     /**
      * Update user list - called when server broadcasts user list updates
@@ -140,7 +175,7 @@ public class MainSwing extends JFrame {
             File f = chooser.getSelectedFile();
             new Thread(() -> {
                 try {
-                    serviceManager.getFileService().uploadFile(f, serviceManager.getUsername());
+                    serviceManager.getFileService().uploadFile(f, serviceManager.getSessionToken());
                     SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, "Upload complete"));
                 } catch (Exception e) {
                     SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, "Upload failed: " + e.getMessage()));
@@ -262,7 +297,7 @@ public class MainSwing extends JFrame {
         new Thread(() -> {
             try {
                 int score = serviceManager.getQuizService().submitAnswers(
-                    serviceManager.getUsername(), 
+                    serviceManager.getSessionToken(), 
                     currentQuiz.getId(), 
                     answers
                 );
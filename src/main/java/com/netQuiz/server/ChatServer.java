@@ -1,62 +1,77 @@
 package com.netQuiz.server;
 
+import com.netQuiz.server.auth.CredentialStore;
+import com.netQuiz.server.logging.Logger;
+import com.netQuiz.server.messaging.ChatTransport;
+import com.netQuiz.server.messaging.MessagingEngine;
+
 import java.io.*;
 import java.net.*;
-import java.util.*;
 import java.util.concurrent.*;
 
 /**
- * ChatServer - Multithreaded chat server that handles multiple clients
- * Port: 5002
- * Uses ExecutorService for thread management
+ * ChatServer - Line-based chat front end for ChatClient and telnet
+ * Started by NetQuizServer on its own port (Constants.LINE_CHAT_PORT)
+ * Attaches ClientHandlers to the server's MessagingEngine, so line users
+ * share rooms, presence and mailboxes with framed CHAT_REQUEST sessions
+ * Logins use the server's credential store
  */
-public class ChatServer {
-    private static final int PORT = 5002;
-    private static Set<ClientHandler> clientHandlers = ConcurrentHashMap.newKeySet();
-    private static ExecutorService pool = Executors.newCachedThreadPool();
-
-    public static void main(String[] args) {
-        System.out.println("=================================");
-        System.out.println("Chat Server started on port " + PORT);
-        System.out.println("=================================");
-
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            while (true) {
-                Socket clientSocket = serverSocket.accept();
-                System.out.println("New client connected: " + clientSocket.getInetAddress());
-
-                ClientHandler clientHandler = new ClientHandler(clientSocket);
-                clientHandlers.add(clientHandler);
-                pool.execute(clientHandler);
+public class ChatServer implements Runnable {
+    private static final Logger log = Logger.get("LINE CHAT");
+
+    private final MessagingEngine messagingEngine;
+    private final CredentialStore credentials;
+    private final int port;
+    private final ExecutorService pool;
+    private volatile ServerSocket serverSocket;
+    private volatile boolean running;
+
+    public ChatServer(MessagingEngine messagingEngine, CredentialStore credentials, int port) {
+        this.messagingEngine = messagingEngine;
+        this.credentials = credentials;
+        this.port = port;
+        this.pool = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "LineChat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public void run() {
+        running = true;
+        try (ServerSocket socket = new ServerSocket(port)) {
+            serverSocket = socket;
+            log.info("Service started on port {}", port);
+            while (running) {
+                Socket clientSocket = socket.accept();
+                log.debug("New client connected: {}", clientSocket.getInetAddress());
+
+                pool.execute(new ClientHandler(clientSocket, messagingEngine, credentials));
             }
         } catch (IOException e) {
-            System.err.println("Server error: " + e.getMessage());
-            e.printStackTrace();
+            if (running) {
+                log.error("Line chat server error", e);
+            }
         } finally {
             pool.shutdown();
         }
     }
 
-    /**
-     * Broadcast a message to all connected clients except the sender
-     * @param message The message to broadcast
-     * @param sender The client who sent the message (will not receive it back)
-     */
-    public static void broadcast(String message, ClientHandler sender) {
-        for (ClientHandler client : clientHandlers) {
-            if (client != sender) {
-                client.sendMessage(message);
+    public void stop() {
+        running = false;
+        try {
+            ServerSocket socket = serverSocket;
+            if (socket != null) {
+                socket.close();
             }
+        } catch (IOException e) {
+            log.warn("Error closing line chat socket: {}", e.getMessage());
         }
-    }
-
-    /**
-     * Remove a client from the active clients list
-     * @param client The client to remove
-     */
-    public static void removeClient(ClientHandler client) {
-        clientHandlers.remove(client);
-        System.out.println("Client disconnected. Total clients: " + clientHandlers.size());
+        messagingEngine.closeAll(ChatTransport.Kind.LINE);
     }
 }
-
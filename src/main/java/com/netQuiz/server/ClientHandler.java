@@ -1,20 +1,34 @@
 package com.netQuiz.server;
 
+import com.netQuiz.server.auth.CredentialStore;
+import com.netQuiz.server.logging.Logger;
+import com.netQuiz.server.messaging.ChatEvent;
+import com.netQuiz.server.messaging.ChatTransport;
+import com.netQuiz.server.messaging.MessagingEngine;
+
 import java.io.*;
 import java.net.*;
 
 /**
  * ClientHandler - Handles communication with a single client
  * Implements Runnable to run in a separate thread
+ * Attached to the MessagingEngine as a LINE transport once the user has
+ * given their password
  */
-public class ClientHandler implements Runnable {
+public class ClientHandler implements Runnable, ChatTransport {
+    private static final Logger log = Logger.get("LINE CHAT");
+
     private Socket socket;
     private BufferedReader in;
     private PrintWriter out;
     private String username;
+    private MessagingEngine messagingEngine;
+    private CredentialStore credentials;
 
-    public ClientHandler(Socket socket) {
+    public ClientHandler(Socket socket, MessagingEngine messagingEngine, CredentialStore credentials) {
         this.socket = socket;
+        this.messagingEngine = messagingEngine;
+        this.credentials = credentials;
     }
 
     @Override
@@ -24,16 +38,22 @@ public class ClientHandler implements Runnable {
             in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
             out = new PrintWriter(socket.getOutputStream(), true);
 
-            // Request username from client
+            // Request username and password from client
             out.println("Enter your username:");
-            username = in.readLine();
+            String requested = in.readLine();
+            out.println("Enter your password:");
+            String password = in.readLine();
 
-            if (username == null || username.trim().isEmpty()) {
-                username = "Anonymous";
+            // Attaching hands over the user's session and mailbox, so the name must be proved
+            if (requested == null || requested.trim().isEmpty() || password == null
+                    || credentials.verify(requested.trim(), password) == CredentialStore.Result.REJECTED) {
+                out.println("Invalid username or password.");
+                return;
             }
+            username = requested.trim();
 
-            System.out.println(username + " has joined the chat");
-            ChatServer.broadcast(username + " has joined the chat", this);
+            log.info("{} has joined the chat", username);
+            messagingEngine.attach(username, this);
 
             // Read and broadcast messages
             String message;
@@ -41,16 +61,37 @@ public class ClientHandler implements Runnable {
                 if (message.trim().isEmpty()) {
                     continue;
                 }
-                System.out.println(username + ": " + message);
-                ChatServer.broadcast(username + ": " + message, this);
+                log.debug("{}: {}", username, message);
+                messagingEngine.publish(this, username, message);
             }
         } catch (IOException e) {
-            System.err.println("Client handler error: " + e.getMessage());
+            log.warn("Client handler error: {}", e.getMessage());
         } finally {
             cleanup();
         }
     }
 
+    @Override
+    public Kind getKind() {
+        return Kind.LINE;
+    }
+
+    @Override
+    public void deliver(ChatEvent event) {
+        switch (event.getKind()) {
+            case CHAT:
+                sendMessage(event.getSender() + ": " + event.getContent());
+                break;
+            case SYSTEM:
+            case ERROR:
+                sendMessage(event.getContent());
+                break;
+            case PRIVATE:
+                sendMessage("[Private from " + event.getSender() + "]: " + event.getContent());
+                break;
+        }
+    }
+
     /**
      * Send a message to this client
      * @param message The message to send
@@ -61,21 +102,24 @@ public class ClientHandler implements Runnable {
         }
     }
 
-    /**
-     * Clean up resources when client disconnects
-     */
-    private void cleanup() {
+    @Override
+    public void close() {
         try {
-            ChatServer.removeClient(this);
-            if (username != null) {
-                ChatServer.broadcast(username + " has left the chat", this);
-            }
             if (socket != null && !socket.isClosed()) {
                 socket.close();
             }
         } catch (IOException e) {
-            System.err.println("Cleanup error: " + e.getMessage());
+            log.warn("Cleanup error: {}", e.getMessage());
         }
     }
-}
 
+    /**
+     * Clean up resources when client disconnects
+     */
+    private void cleanup() {
+        if (username != null) {
+            messagingEngine.detach(username, this);
+        }
+        close();
+    }
+}
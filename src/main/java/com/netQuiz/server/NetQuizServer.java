@@ -1,12 +1,37 @@
 package com.netQuiz.server;
 
+import com.netQuiz.server.admission.AdmissionController;
+import com.netQuiz.server.admission.AdmissionServerSocket;
+import com.netQuiz.server.auth.Authenticator;
+import com.netQuiz.server.auth.CredentialStore;
+import com.netQuiz.server.auth.SessionTokens;
+import com.netQuiz.server.cluster.ClusterConfig;
+import com.netQuiz.server.cluster.ClusterNode;
 import com.netQuiz.server.handlers.*;
+import com.netQuiz.server.logging.Logger;
+import com.netQuiz.server.messaging.IdleTimerWheel;
+import com.netQuiz.server.messaging.MessagingEngine;
+import com.netQuiz.server.metrics.Counter;
+import com.netQuiz.server.metrics.MetricsRegistry;
+import com.netQuiz.server.metrics.MetricsServer;
+import com.netQuiz.server.notification.NotificationQueue;
 import com.netQuiz.server.notification.NotificationServer;
+import com.netQuiz.server.search.SearchIndex;
 import com.netQuiz.shared.Constants;
+import com.netQuiz.shared.Tls;
 
 import java.io.*;
-import java.net.ServerSocket;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Main Server Application - Single Port Architecture
@@ -14,30 +39,132 @@ import java.net.Socket;
  * Routes client requests to appropriate handler module
  */
 public class NetQuizServer {
-    private ServerSocket serverSocket;
-    private boolean running;
+    private static final Logger log = Logger.get("SERVER");
+
+    private AdmissionServerSocket serverSocket;
+    private volatile boolean running;
 
     // Handler instances
     private QuizHandler quizHandler;
     private FileHandler fileHandler;
     private ChatHandler chatHandler;
+    private ChatServer lineChatServer;
     private UserHandler userHandler;
+    private Authenticator authenticator;
+    private SearchHandler searchHandler;
     private NotificationServer notificationServer;
+    private SearchIndex searchIndex;
+    private MessagingEngine messagingEngine;
+    private IdleTimerWheel idleReaper;
+    private MetricsRegistry metrics;
+    private MetricsServer metricsServer;
+    private Counter connectionsAccepted;
+    private Map<String, Counter> requestCounters;
+    private AdmissionController admission;
+    private ThreadPoolExecutor routerPool;
+    private ClusterNode clusterNode;
+    private int port;
+    private int metricsPort;
 
     public NetQuizServer() {
+        this(ClusterConfig.fromSystemProperties());
+    }
+
+    /**
+     * @param cluster membership when running as one of several nodes, or null
+     */
+    public NetQuizServer(ClusterConfig cluster) {
         this.running = false;
+        this.port = cluster == null ? Constants.SERVER_PORT : cluster.getSelf().getClientPort();
+        this.metricsPort = Constants.METRICS_PORT + (cluster == null ? 0 : cluster.getSelfIndex());
 
-        // Initialize and start the notification server
         this.notificationServer = new NotificationServer();
+        this.searchIndex = new SearchIndex();
+        SessionTokens sessionTokens = new SessionTokens(Paths.get(Constants.AUTH_TOKEN_KEYS_FILE),
+                Constants.AUTH_TOKEN_TTL_MS, Constants.AUTH_TOKEN_KEY_ROTATION_MS);
+        this.quizHandler = new QuizHandler(notificationServer, sessionTokens);
+        this.fileHandler = new FileHandler(notificationServer, searchIndex, sessionTokens);
+        this.messagingEngine = new MessagingEngine(notificationServer, searchIndex);
+        this.idleReaper = new IdleTimerWheel(Constants.SESSION_IDLE_TIMEOUT_MS, Constants.SESSION_REAPER_TICK_MS);
+        this.chatHandler = new ChatHandler(messagingEngine, idleReaper, sessionTokens);
+        // A node registering names into a file of its own would let a user
+        // registered elsewhere be claimed here under any password
+        boolean register = Constants.AUTH_REGISTER_ON_FIRST_LOGIN && (cluster == null || Constants.CREDENTIALS_SHARED);
+        if (Constants.AUTH_REGISTER_ON_FIRST_LOGIN && !register) {
+            log.warn("No shared credentials file (-Dnetquiz.auth.credentials); new users cannot register on {}",
+                    cluster.getSelf().getId());
+        }
+        CredentialStore credentials = new CredentialStore(Paths.get(Constants.CREDENTIALS_FILE), register);
+        this.authenticator = new Authenticator(credentials, sessionTokens);
+        this.lineChatServer = new ChatServer(messagingEngine, credentials,
+                Constants.LINE_CHAT_PORT + (cluster == null ? 0 : cluster.getSelfIndex()));
+        this.userHandler = new UserHandler(messagingEngine, notificationServer, idleReaper, authenticator);
+        this.searchHandler = new SearchHandler(searchIndex);
+        if (cluster != null) {
+            this.clusterNode = new ClusterNode(cluster, messagingEngine, notificationServer, quizHandler);
+            clusterNode.addRingListener(quizHandler::rebalance);
+        }
+
+        // Start the notification server once it knows whether it is clustered
         Thread notificationThread = new Thread(notificationServer);
         notificationThread.setDaemon(true);
         notificationThread.start();
-        System.out.println("Notification server thread started");
+        log.info("Notification server thread started");
+
+        this.metrics = MetricsRegistry.getInstance();
+        this.metricsServer = new MetricsServer(metrics, metricsPort);
+        this.connectionsAccepted = metrics.counter("netquiz_connections_accepted_total",
+                "TCP connections accepted on the main port");
+        this.requestCounters = new HashMap<>();
+        // Fixed label set; unknown request types from clients all count as OTHER
+        for (String type : new String[]{Constants.QUIZ_REQUEST, Constants.FILE_REQUEST, Constants.CHAT_REQUEST,
+                Constants.USER_REQUEST, Constants.SEARCH_REQUEST, "OTHER"}) {
+            requestCounters.put(type, metrics.counter("netquiz_requests_total", "Requests routed by type",
+                    "type=\"" + type + "\""));
+        }
+        this.admission = new AdmissionController(Constants.ADMISSION_MAX_CONNECTIONS,
+                Constants.ADMISSION_MAX_CONNECTIONS_PER_ADDRESS, Constants.ADMISSION_RETRY_AFTER_MS, metrics);
+        // Routing only reads the request type and short requests; chat and user sessions
+        // move to their own threads, so a small pool with a bounded queue is enough
+        AtomicInteger routerThreads = new AtomicInteger();
+        this.routerPool = new ThreadPoolExecutor(Constants.ADMISSION_WORKER_THREADS,
+                Constants.ADMISSION_WORKER_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Constants.ADMISSION_PENDING_QUEUE), r -> {
+            Thread thread = new Thread(r, "Router-" + routerThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        routerPool.allowCoreThreadTimeOut(true);
+        registerGauges();
+    }
 
-        this.quizHandler = new QuizHandler(notificationServer);
-        this.fileHandler = new FileHandler(notificationServer);
-        this.chatHandler = new ChatHandler(notificationServer);
-        this.userHandler = new UserHandler();
+    /**
+     * Values sampled on each scrape
+     */
+    private void registerGauges() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        metrics.gauge("netquiz_users_online", "Users with at least one open session",
+                messagingEngine::getOnlineUserCount);
+        metrics.gauge("netquiz_threads", "Live JVM threads", threads::getThreadCount);
+        metrics.gauge("netquiz_notification_queue_depth", "Notifications waiting to be sent",
+                notificationServer::getQueueDepth);
+        for (NotificationQueue.Lane lane : NotificationQueue.Lane.values()) {
+            metrics.gauge("netquiz_notification_lane_depth", "Notifications waiting per priority lane",
+                    "lane=\"" + lane + "\"", () -> notificationServer.getQueueDepth(lane));
+        }
+        metrics.gauge("netquiz_notifications_dropped", "Notifications shed because the queue was full",
+                notificationServer::getDroppedCount);
+        metrics.gauge("netquiz_chat_throttled_user", "Chat messages rejected by the per-user rate limit",
+                () -> messagingEngine.getRateLimiter().getThrottledByUserCount());
+        metrics.gauge("netquiz_chat_throttled_room", "Chat messages rejected by the room rate limit",
+                () -> messagingEngine.getRateLimiter().getThrottledByRoomCount());
+        metrics.gauge("netquiz_mailbox_messages", "Offline messages waiting in all mailboxes",
+                () -> messagingEngine.getMailbox().getStoredCount());
+        metrics.gauge("netquiz_router_pending", "Accepted connections waiting for a router thread",
+                () -> routerPool.getQueue().size());
+        metrics.gauge("netquiz_quiz_replica_lag_ms", "How far the quiz replicas trail the other nodes",
+                quizHandler::getReplicaLagMs);
+        metrics.gauge("netquiz_search_documents", "Documents in the search index", searchIndex::getDocumentCount);
     }
 
     // Add a method to test notifications
@@ -49,51 +176,120 @@ public class NetQuizServer {
 
     public void start() {
         try {
-            serverSocket = new ServerSocket(Constants.SERVER_PORT);
+            if (Tls.isEnabled()) {
+                Tls.serverContext();
+            }
+            serverSocket = admission.bind(port, Constants.ADMISSION_ACCEPT_BACKLOG, Constants.SERVER_REUSE_PORT);
             running = true;
+            metricsServer.start();
+            if (clusterNode != null) {
+                clusterNode.start();
+            }
 
             // Start background services (chat, user management, notifications)
             new Thread(chatHandler, "ChatService").start();
+            new Thread(lineChatServer, "LineChatService").start();
             new Thread(userHandler, "UserService").start();
+            Thread reaperThread = new Thread(idleReaper, "IdleReaper");
+            reaperThread.setDaemon(true);
+            reaperThread.start();
 
             printStartupBanner();
 
             // Main server loop - accepts connections and routes requests
             while (running) {
                 try {
-                    Socket clientSocket = serverSocket.accept();
-                    System.out.println("[CONNECTION] Client connected: " +
-                            clientSocket.getInetAddress().getHostAddress());
-
-                    // Handle each client in a separate thread
-                    Thread clientThread = new Thread(new ClientRouter(clientSocket));
-                    clientThread.start();
+                    AdmissionServerSocket.AdmittedSocket clientSocket = serverSocket.accept();
+                    AdmissionController.Rejection rejection = admission.tryAdmit(clientSocket);
+                    if (rejection == null) {
+                        try {
+                            routerPool.execute(new ClientRouter(clientSocket));
+                        } catch (RejectedExecutionException e) {
+                            rejection = AdmissionController.Rejection.QUEUE_FULL;
+                        }
+                    }
+                    if (rejection != null) {
+                        log.debug("Rejected {}: {}", clientSocket.getInetAddress(), rejection);
+                        admission.reject(clientSocket, rejection);
+                        continue;
+                    }
+                    connectionsAccepted.increment();
+                    log.debug("Client connected: {}", clientSocket.getInetAddress());
                 } catch (IOException e) {
                     if (running) {
-                        System.err.println("[ERROR] Error accepting client: " + e.getMessage());
+                        log.error("Error accepting client: {}", e.getMessage());
                     }
                 }
             }
         } catch (IOException e) {
-            System.err.println("[FATAL] Server startup error: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Server startup error", e);
         }
     }
 
+    /**
+     * Shut down without cutting off work in progress. Stops accepting (a
+     * replacement process bound with SO_REUSEPORT takes new connections),
+     * waits up to the deadline for routed requests such as SUBMIT_ANSWERS
+     * and uploads, moves quizzes to the remaining cluster nodes, saves
+     * scores and offline messages, then tells chat and
+     * login sessions to reconnect and closes them.
+     */
+    public void drain(long deadlineMs) {
+        if (!running) {
+            return;
+        }
+        running = false;
+        log.info("Draining: accepting no new connections, {}ms for in-flight requests", deadlineMs);
+        try {
+            if (serverSocket != null && !serverSocket.isClosed()) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            log.error("Error closing listener: {}", e.getMessage());
+        }
+
+        routerPool.shutdown();
+        try {
+            if (!routerPool.awaitTermination(deadlineMs, TimeUnit.MILLISECONDS)) {
+                log.warn("{} requests still running at the drain deadline", routerPool.getActiveCount());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (clusterNode != null) {
+            // Hand this node's quizzes to their next owners before saving what is left
+            clusterNode.leave();
+        }
+        quizHandler.flushScores();
+        messagingEngine.flush();
+        messagingEngine.announceLocal("Server is restarting, please reconnect");
+        stop();
+    }
+
     public void stop() {
         running = false;
-        System.out.println("\n[SHUTDOWN] Stopping NetQuiz Server...");
+        log.info("Stopping NetQuiz Server...");
 
         try {
             if (serverSocket != null && !serverSocket.isClosed()) {
                 serverSocket.close();
             }
             chatHandler.stop();
+            lineChatServer.stop();
             userHandler.stop();
+            authenticator.stop();
+            idleReaper.stop();
+            if (clusterNode != null) {
+                clusterNode.stop();
+            }
+            routerPool.shutdown();
+            admission.stop();
+            metricsServer.stop();
 
-            System.out.println("[SHUTDOWN] Server stopped successfully.");
+            log.info("Server stopped successfully.");
         } catch (IOException e) {
-            System.err.println("[ERROR] Error during shutdown: " + e.getMessage());
+            log.error("Error during shutdown: {}", e.getMessage());
         }
     }
 
@@ -101,14 +297,21 @@ public class NetQuizServer {
         System.out.println("\n" + "=".repeat(70));
         System.out.println("               NetQuiz Multi-Module Server");
         System.out.println("=".repeat(70));
-        System.out.println("  Main Server Port (TCP):        " + Constants.SERVER_PORT);
+        System.out.println("  Main Server Port (TCP):        " + port);
         System.out.println("  Notifications Port (UDP):      " + Constants.UDP_NOTIFICATION_PORT);
+        System.out.println("  Line Chat Port (TCP):          " + lineChatServer.getPort());
+        System.out.println("  Metrics (HTTP, loopback):      " + metricsPort);
+        if (clusterNode != null) {
+            System.out.println("  Cluster node:                  " + clusterNode.getConfig().getSelf().getId()
+                    + " (bus port " + clusterNode.getConfig().getSelf().getBusPort() + ")");
+        }
         System.out.println("=".repeat(70));
         System.out.println("\n  ✓ Module 1: Quiz System          (TCP + Multi-threading)");
         System.out.println("  ✓ Module 2: File Sharing         (TCP + Buffered I/O)");
         System.out.println("  ✓ Module 3: Real-Time Chat       (TCP + Broadcasting)");
         System.out.println("  ✓ Module 4: User Management      (Request-based)");
         System.out.println("  ✓ Module 5: Notifications        (UDP Broadcasting)");
+        System.out.println("  ✓ Module 6: Search               (Inverted Index)");
         System.out.println("\n" + "=".repeat(70));
         System.out.println("  Server Status: ONLINE");
         System.out.println("  Waiting for client connections...");
@@ -132,13 +335,17 @@ public class NetQuizServer {
         @Override
         public void run() {
             try {
+                // A client that connects and goes quiet must not hold a router thread and its slot
+                socket.setSoTimeout(Constants.ROUTER_READ_TIMEOUT_MS);
+                // Handshake here rather than on the accept thread
+                socket = Tls.serverSide(socket);
                 DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
 
                 // Read request type to route to correct handler
                 String requestType = in.readUTF();
-                System.out.println("[REQUEST] " + requestType + " from " +
-                        socket.getInetAddress().getHostAddress());
+                log.debug("Request {} from {}", requestType, socket.getInetAddress());
+                requestCounters.getOrDefault(requestType, requestCounters.get("OTHER")).increment();
 
                 // Route to appropriate handler
                 switch (requestType) {
@@ -164,15 +371,20 @@ public class NetQuizServer {
                         // Don't close socket - user handler manages it
                         break;
 
+                    case Constants.SEARCH_REQUEST:
+                        searchHandler.handleRequest(socket, in, out);
+                        socket.close();
+                        break;
+
                     default:
-                        System.err.println("[ERROR] Unknown request type: " + requestType);
+                        log.warn("Unknown request type: {}", requestType);
                         out.writeUTF("ERROR");
                         out.flush();
                         socket.close();
                 }
 
             } catch (IOException e) {
-                System.err.println("[ERROR] Client router error: " + e.getMessage());
+                log.warn("Client router error: {}", e.getMessage());
                 try {
                     socket.close();
                 } catch (IOException ex) {
@@ -185,9 +397,9 @@ public class NetQuizServer {
     public static void main(String[] args) {
         NetQuizServer server = new NetQuizServer();
 
-        // Add shutdown hook for graceful shutdown
+        // SIGTERM drains; a replacement process can already be listening
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            server.stop();
+            server.drain(Constants.DRAIN_DEADLINE_MS);
         }));
 
         new Thread(() -> {
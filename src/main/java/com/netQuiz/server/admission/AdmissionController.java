@@ -0,0 +1,163 @@
+package com.netQuiz.server.admission;
+
+import com.netQuiz.server.metrics.Counter;
+import com.netQuiz.server.metrics.MetricsRegistry;
+import com.netQuiz.shared.Constants;
+import com.netQuiz.shared.Tls;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps concurrent connections globally and per client address.
+ * A connection holds its slot until its socket is closed, so long-lived
+ * chat and user sessions count against the limits for their whole life.
+ */
+public class AdmissionController {
+
+    public enum Rejection {
+        GLOBAL_LIMIT, PER_IP_LIMIT, QUEUE_FULL
+    }
+
+    private final int maxConnections;
+    private final int maxConnectionsPerAddress;
+    private final long retryAfterMs;
+    private final AtomicInteger open;
+    private final Map<InetAddress, Integer> openPerAddress;
+    private final Counter[] rejected;
+    // Rejections need a TLS handshake before the client can read them, too slow for the accept thread
+    private final ThreadPoolExecutor rejecters;
+
+    public AdmissionController(int maxConnections, int maxConnectionsPerAddress, long retryAfterMs,
+                               MetricsRegistry metrics) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+        this.retryAfterMs = retryAfterMs;
+        this.open = new AtomicInteger();
+        this.openPerAddress = new ConcurrentHashMap<>();
+        this.rejected = new Counter[Rejection.values().length];
+        for (Rejection reason : Rejection.values()) {
+            rejected[reason.ordinal()] = metrics.counter("netquiz_connections_rejected_total",
+                    "TCP connections turned away by admission control",
+                    "reason=\"" + reason.name().toLowerCase() + "\"");
+        }
+        AtomicInteger threads = new AtomicInteger();
+        this.rejecters = new ThreadPoolExecutor(Constants.ADMISSION_REJECT_THREADS,
+                Constants.ADMISSION_REJECT_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Constants.ADMISSION_REJECT_QUEUE), r -> {
+            Thread thread = new Thread(r, "Reject-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        rejecters.allowCoreThreadTimeOut(true);
+        metrics.gauge("netquiz_connections_open", "Admitted TCP connections still open", open::get);
+        metrics.gauge("netquiz_connection_addresses", "Client addresses with open connections",
+                openPerAddress::size);
+    }
+
+    /**
+     * Bind a listening socket whose accepted sockets release their slot on close
+     */
+    public AdmissionServerSocket bind(int port, int backlog, boolean reusePort) throws IOException {
+        return new AdmissionServerSocket(this, port, backlog, reusePort);
+    }
+
+    /**
+     * Take a slot for the socket, or return why it was refused
+     */
+    public Rejection tryAdmit(AdmissionServerSocket.AdmittedSocket socket) {
+        if (open.incrementAndGet() > maxConnections) {
+            open.decrementAndGet();
+            return Rejection.GLOBAL_LIMIT;
+        }
+        InetAddress address = socket.getInetAddress();
+        boolean[] admitted = {false};
+        openPerAddress.compute(address, (key, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= maxConnectionsPerAddress) {
+                return count;
+            }
+            admitted[0] = true;
+            return current + 1;
+        });
+        if (!admitted[0]) {
+            open.decrementAndGet();
+            return Rejection.PER_IP_LIMIT;
+        }
+        socket.markAdmitted();
+        return null;
+    }
+
+    void release(InetAddress address) {
+        open.decrementAndGet();
+        openPerAddress.computeIfPresent(address, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Tell the client to back off and close. Frame: [UTF SERVER_BUSY][long retryAfterMs],
+     * sent after the TLS handshake when TLS is on. If even the rejecters are
+     * backed up the socket is just closed.
+     */
+    public void reject(AdmissionServerSocket.AdmittedSocket socket, Rejection reason) {
+        rejected[reason.ordinal()].increment();
+        try {
+            rejecters.execute(() -> sendBusy(socket));
+        } catch (RejectedExecutionException e) {
+            closeQuietly(socket);
+        }
+    }
+
+    private void sendBusy(Socket plain) {
+        Socket socket = plain;
+        try {
+            plain.setSoTimeout(Constants.ADMISSION_REJECT_LINGER_MS);
+            socket = Tls.serverSide(plain);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeUTF(Constants.SERVER_BUSY);
+            out.writeLong(retryAfterMs);
+            out.flush();
+            // Closing with the request still unread would reset the connection and could
+            // discard the frame before the client reads it, so wait for the client to close
+            InputStream in = socket.getInputStream();
+            byte[] discard = new byte[4096];
+            while (in.read(discard) >= 0) {
+                // Until EOF or the linger timeout
+            }
+        } catch (IOException e) {
+            // Client already gone, or never read the frame
+        } finally {
+            closeQuietly(socket);
+            closeQuietly(plain);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    public void stop() {
+        rejecters.shutdownNow();
+    }
+
+    public int getOpenConnections() {
+        return open.get();
+    }
+
+    public long getRejectedCount(Rejection reason) {
+        return rejected[reason.ordinal()].get();
+    }
+}
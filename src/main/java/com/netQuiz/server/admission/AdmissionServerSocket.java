@@ -0,0 +1,56 @@
+package com.netQuiz.server.admission;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Listening socket that hands out sockets tied to an AdmissionController.
+ * Handlers keep calling close() as before; the first close gives the slot back.
+ */
+public class AdmissionServerSocket extends ServerSocket {
+    private final AdmissionController controller;
+
+    AdmissionServerSocket(AdmissionController controller, int port, int backlog, boolean reusePort)
+            throws IOException {
+        this.controller = controller;
+        setReuseAddress(true);
+        // Lets a replacement process listen on the same port while this one drains
+        if (reusePort && supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+            setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        bind(new InetSocketAddress(port), backlog);
+    }
+
+    @Override
+    public AdmittedSocket accept() throws IOException {
+        AdmittedSocket socket = new AdmittedSocket();
+        implAccept(socket);
+        return socket;
+    }
+
+    public class AdmittedSocket extends Socket {
+        private final AtomicBoolean holdsSlot = new AtomicBoolean();
+        private InetAddress address;
+
+        void markAdmitted() {
+            address = getInetAddress();
+            holdsSlot.set(true);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (holdsSlot.compareAndSet(true, false)) {
+                    controller.release(address);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.netQuiz.server.auth;
+
+import com.netQuiz.server.logging.Logger;
+import com.netQuiz.server.metrics.Counter;
+import com.netQuiz.server.metrics.LatencyHistogram;
+import com.netQuiz.server.metrics.MetricsRegistry;
+import com.netQuiz.shared.Constants;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Password checks and session tokens for logins. Hashing is deliberately
+ * slow, so it runs on a small pool of its own and the router threads only
+ * queue the work. A successful login gets a signed token that reconnects,
+ * quiz submissions and uploads present instead of the password.
+ */
+public class Authenticator {
+    private static final Logger log = Logger.get("AUTH");
+
+    private final CredentialStore credentials;
+    private final ThreadPoolExecutor verifiers;
+    private final SessionTokens tokens;
+    private final Map<CredentialStore.Result, Counter> results;
+    private final LatencyHistogram verifyLatency;
+
+    public Authenticator(CredentialStore credentials, SessionTokens tokens) {
+        this.credentials = credentials;
+        this.tokens = tokens;
+        AtomicInteger threads = new AtomicInteger();
+        this.verifiers = new ThreadPoolExecutor(Constants.AUTH_VERIFY_THREADS, Constants.AUTH_VERIFY_THREADS,
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Constants.AUTH_VERIFY_QUEUE), r -> {
+            Thread thread = new Thread(r, "Verify-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        verifiers.allowCoreThreadTimeOut(true);
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        this.results = new EnumMap<>(CredentialStore.Result.class);
+        for (CredentialStore.Result result : CredentialStore.Result.values()) {
+            results.put(result, metrics.counter("netquiz_auth_verifications_total", "Password checks by outcome",
+                    "result=\"" + result + "\""));
+        }
+        this.verifyLatency = metrics.commandLatency("VERIFY_PASSWORD");
+        metrics.gauge("netquiz_auth_verify_pending", "Password checks waiting for a verifier thread",
+                () -> verifiers.getQueue().size());
+    }
+
+    /**
+     * Check a password on the verifier pool and hand the result to the
+     * callback on that pool's thread.
+     *
+     * @return false if too many checks are already waiting
+     */
+    public boolean verify(String username, String password, Consumer<CredentialStore.Result> callback) {
+        try {
+            verifiers.execute(() -> {
+                long start = System.nanoTime();
+                CredentialStore.Result result;
+                try {
+                    result = credentials.verify(username, password);
+                } catch (RuntimeException e) {
+                    log.error("Verification failed for {}: {}", username, e.getMessage());
+                    result = CredentialStore.Result.REJECTED;
+                }
+                verifyLatency.recordSince(start);
+                results.get(result).increment();
+                callback.accept(result);
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.warn("Verifier queue full, turning away {}", username);
+            return false;
+        }
+    }
+
+    /**
+     * Signed token for a verified user
+     */
+    public String issueToken(String username) {
+        return tokens.issue(username);
+    }
+
+    /**
+     * The user a token was issued to, or null if forged or expired
+     */
+    public String verifyToken(String token) {
+        return tokens.verify(token);
+    }
+
+    /**
+     * How long a token lasts; sessions are sent a new one before then
+     */
+    public long getTokenTtlMs() {
+        return tokens.getTtlMs();
+    }
+
+    public void stop() {
+        verifiers.shutdownNow();
+    }
+}
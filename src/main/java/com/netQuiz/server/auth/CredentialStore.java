@@ -0,0 +1,211 @@
+package com.netQuiz.server.auth;
+
+import com.google.gson.Gson;
+import com.netQuiz.server.logging.Logger;
+import com.netQuiz.shared.Constants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Salted scrypt hashes of user passwords, cached in memory and appended to
+ * credentials.jsonl, one user per line. Without a sign-up step the first
+ * login under a new name may register it; see the constructor.
+ *
+ * Cluster nodes given the same file share one set of users. A name missing
+ * from memory is looked up in the file before anything else happens, and
+ * registering takes an exclusive lock on the file, so two nodes cannot both
+ * claim a name.
+ */
+public class CredentialStore {
+    private static final Logger log = Logger.get("AUTH");
+
+    public enum Result { OK, REGISTERED, REJECTED }
+
+    private final Path file;
+    private final boolean registerOnFirstLogin;
+    private final Map<String, Credential> credentials;
+    private final SecureRandom random;
+    private final Gson gson;
+    // How much of the file has been read into memory; guarded by this
+    private long readOffset;
+    // Hashed in place of a missing user's, so unknown names take as long as wrong passwords
+    private final Credential decoy;
+
+    /**
+     * @param registerOnFirstLogin whether an unknown name is registered with
+     *                             the password it first logs in with; only safe
+     *                             when every node that takes logins shares the file
+     */
+    public CredentialStore(Path file, boolean registerOnFirstLogin) {
+        this.file = file;
+        this.registerOnFirstLogin = registerOnFirstLogin;
+        this.credentials = new ConcurrentHashMap<>();
+        this.random = new SecureRandom();
+        this.gson = new Gson();
+        this.decoy = newCredential("decoy", "decoy");
+        refresh();
+        log.info("Loaded {} credentials", credentials.size());
+    }
+
+    /**
+     * Check a password, registering the user if unknown and allowed. Runs
+     * scrypt, so call it off the request threads.
+     */
+    public Result verify(String username, String password) {
+        if (password.isEmpty()) {
+            return Result.REJECTED;
+        }
+        Credential credential = credentials.get(username);
+        if (credential == null) {
+            // Another node sharing the file may have registered it
+            refresh();
+            credential = credentials.get(username);
+        }
+        if (credential == null) {
+            if (!registerOnFirstLogin) {
+                decoy.matches(password);
+                return Result.REJECTED;
+            }
+            // Hashed before taking the file lock, which other nodes may be waiting on
+            Credential created = newCredential(username, password);
+            credential = register(created);
+            if (credential == null) {
+                return Result.REJECTED;
+            }
+            if (credential == created) {
+                log.info("Registered {}", username);
+                return Result.REGISTERED;
+            }
+        }
+        return credential.matches(password) ? Result.OK : Result.REJECTED;
+    }
+
+    public boolean contains(String username) {
+        return credentials.containsKey(username);
+    }
+
+    public int size() {
+        return credentials.size();
+    }
+
+    private Credential newCredential(String username, String password) {
+        byte[] salt = new byte[Constants.AUTH_SALT_BYTES];
+        random.nextBytes(salt);
+        Credential credential = new Credential();
+        credential.user = username;
+        credential.n = Constants.AUTH_SCRYPT_N;
+        credential.r = Constants.AUTH_SCRYPT_R;
+        credential.p = Constants.AUTH_SCRYPT_P;
+        credential.salt = Base64.getEncoder().encodeToString(salt);
+        credential.hash = Base64.getEncoder().encodeToString(credential.compute(password));
+        return credential;
+    }
+
+    /**
+     * Read lines appended since the last look, by this node or another.
+     * File locks are released when their channel closes.
+     */
+    private synchronized void refresh() {
+        try (FileChannel channel = open()) {
+            channel.lock(0, Long.MAX_VALUE, true);
+            readNew(channel);
+        } catch (IOException e) {
+            log.error("Error loading credentials: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Append a new user unless the name was taken meanwhile, here or on
+     * another node. The file lock spans the check and the append.
+     *
+     * @return the credential now on file for the name, or null if it could not be saved
+     */
+    private synchronized Credential register(Credential created) {
+        try (FileChannel channel = open()) {
+            channel.lock();
+            readNew(channel);
+            Credential existing = credentials.get(created.user);
+            if (existing != null) {
+                return existing;
+            }
+            ByteBuffer line = ByteBuffer.wrap((gson.toJson(created) + "\n").getBytes(StandardCharsets.UTF_8));
+            long position = channel.size();
+            while (line.hasRemaining()) {
+                position += channel.write(line, position);
+            }
+            channel.force(false);
+            readOffset = position;
+            credentials.put(created.user, created);
+            return created;
+        } catch (IOException e) {
+            log.error("Error saving credentials: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private void readNew(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size <= readOffset) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) (size - readOffset));
+        while (buffer.hasRemaining() && channel.read(buffer, readOffset + buffer.position()) >= 0) {
+            // Read until full
+        }
+        String text = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+        // Appends happen under the lock, so only whole lines are ever seen
+        int start = 0;
+        for (int end = text.indexOf('\n'); end >= 0; start = end + 1, end = text.indexOf('\n', start)) {
+            String json = text.substring(start, end);
+            if (json.isBlank()) {
+                continue;
+            }
+            try {
+                Credential credential = gson.fromJson(json, Credential.class);
+                if (credential != null && credential.user != null) {
+                    // First line for a name wins, as it did when it was written
+                    credentials.putIfAbsent(credential.user, credential);
+                }
+            } catch (RuntimeException e) {
+                log.error("Skipping bad credentials line: {}", e.getMessage());
+            }
+        }
+        readOffset += text.substring(0, start).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Stored with its own cost parameters, so they can be raised without
+     * invalidating existing hashes
+     */
+    private static class Credential {
+        String user;
+        int n;
+        int r;
+        int p;
+        String salt;
+        String hash;
+
+        byte[] compute(String password) {
+            return Scrypt.hash(password, Base64.getDecoder().decode(salt), n, r, p, Constants.AUTH_HASH_BYTES);
+        }
+
+        boolean matches(String password) {
+            // Constant time, so response timing does not leak how much of the hash matched
+            return MessageDigest.isEqual(compute(password), Base64.getDecoder().decode(hash));
+        }
+    }
+}
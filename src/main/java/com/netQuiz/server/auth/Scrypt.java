@@ -0,0 +1,164 @@
+package com.netQuiz.server.auth;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+/**
+ * scrypt (RFC 7914), a password hash that needs 128 * r * n bytes of memory
+ * per computation, which makes guessing on GPUs and ASICs expensive. The
+ * JDK has no memory-hard hash, so this implements one on top of
+ * HMAC-SHA256.
+ */
+public final class Scrypt {
+
+    private Scrypt() {
+    }
+
+    /**
+     * @param n CPU/memory cost, a power of two
+     * @param r block size
+     * @param p parallelism (run sequentially here)
+     */
+    public static byte[] hash(String password, byte[] salt, int n, int r, int p, int length) {
+        if (n < 2 || (n & (n - 1)) != 0) {
+            throw new IllegalArgumentException("n must be a power of two above 1");
+        }
+        byte[] key = password.getBytes(StandardCharsets.UTF_8);
+        if (key.length == 0) {
+            throw new IllegalArgumentException("Empty password");
+        }
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            int blockSize = 128 * r;
+            byte[] blocks = pbkdf2(mac, salt, p * blockSize);
+            int[] x = new int[32 * r];
+            int[] y = new int[32 * r];
+            int[] v = new int[32 * r * n];
+            for (int i = 0; i < p; i++) {
+                roMix(blocks, i * blockSize, r, n, x, y, v);
+            }
+            return pbkdf2(mac, blocks, length);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    }
+
+    /**
+     * PBKDF2-HMAC-SHA256 with one iteration, which is all scrypt uses
+     */
+    private static byte[] pbkdf2(Mac mac, byte[] salt, int length) {
+        byte[] out = new byte[length];
+        byte[] counter = new byte[4];
+        for (int block = 1, offset = 0; offset < length; block++, offset += 32) {
+            counter[0] = (byte) (block >>> 24);
+            counter[1] = (byte) (block >>> 16);
+            counter[2] = (byte) (block >>> 8);
+            counter[3] = (byte) block;
+            mac.update(salt);
+            byte[] t = mac.doFinal(counter);
+            System.arraycopy(t, 0, out, offset, Math.min(32, length - offset));
+        }
+        return out;
+    }
+
+    private static void roMix(byte[] b, int offset, int r, int n, int[] x, int[] y, int[] v) {
+        int words = 32 * r;
+        for (int i = 0; i < words; i++) {
+            int at = offset + i * 4;
+            x[i] = (b[at] & 0xff) | (b[at + 1] & 0xff) << 8 | (b[at + 2] & 0xff) << 16 | (b[at + 3] & 0xff) << 24;
+        }
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(x, 0, v, i * words, words);
+            blockMix(x, y, r);
+        }
+        for (int i = 0; i < n; i++) {
+            int j = x[(2 * r - 1) * 16] & (n - 1);
+            for (int k = 0; k < words; k++) {
+                x[k] ^= v[j * words + k];
+            }
+            blockMix(x, y, r);
+        }
+        for (int i = 0; i < words; i++) {
+            int at = offset + i * 4;
+            b[at] = (byte) x[i];
+            b[at + 1] = (byte) (x[i] >>> 8);
+            b[at + 2] = (byte) (x[i] >>> 16);
+            b[at + 3] = (byte) (x[i] >>> 24);
+        }
+    }
+
+    private static void blockMix(int[] b, int[] y, int r) {
+        int[] x = new int[16];
+        System.arraycopy(b, (2 * r - 1) * 16, x, 0, 16);
+        for (int i = 0; i < 2 * r; i++) {
+            for (int k = 0; k < 16; k++) {
+                x[k] ^= b[i * 16 + k];
+            }
+            salsa8(x);
+            System.arraycopy(x, 0, y, i * 16, 16);
+        }
+        // Even blocks first, then odd
+        for (int i = 0; i < r; i++) {
+            System.arraycopy(y, 2 * i * 16, b, i * 16, 16);
+            System.arraycopy(y, (2 * i + 1) * 16, b, (r + i) * 16, 16);
+        }
+    }
+
+    private static void salsa8(int[] b) {
+        int x0 = b[0], x1 = b[1], x2 = b[2], x3 = b[3], x4 = b[4], x5 = b[5], x6 = b[6], x7 = b[7];
+        int x8 = b[8], x9 = b[9], x10 = b[10], x11 = b[11], x12 = b[12], x13 = b[13], x14 = b[14], x15 = b[15];
+        for (int i = 0; i < 8; i += 2) {
+            x4 ^= Integer.rotateLeft(x0 + x12, 7);
+            x8 ^= Integer.rotateLeft(x4 + x0, 9);
+            x12 ^= Integer.rotateLeft(x8 + x4, 13);
+            x0 ^= Integer.rotateLeft(x12 + x8, 18);
+            x9 ^= Integer.rotateLeft(x5 + x1, 7);
+            x13 ^= Integer.rotateLeft(x9 + x5, 9);
+            x1 ^= Integer.rotateLeft(x13 + x9, 13);
+            x5 ^= Integer.rotateLeft(x1 + x13, 18);
+            x14 ^= Integer.rotateLeft(x10 + x6, 7);
+            x2 ^= Integer.rotateLeft(x14 + x10, 9);
+            x6 ^= Integer.rotateLeft(x2 + x14, 13);
+            x10 ^= Integer.rotateLeft(x6 + x2, 18);
+            x3 ^= Integer.rotateLeft(x15 + x11, 7);
+            x7 ^= Integer.rotateLeft(x3 + x15, 9);
+            x11 ^= Integer.rotateLeft(x7 + x3, 13);
+            x15 ^= Integer.rotateLeft(x11 + x7, 18);
+            x1 ^= Integer.rotateLeft(x0 + x3, 7);
+            x2 ^= Integer.rotateLeft(x1 + x0, 9);
+            x3 ^= Integer.rotateLeft(x2 + x1, 13);
+            x0 ^= Integer.rotateLeft(x3 + x2, 18);
+            x6 ^= Integer.rotateLeft(x5 + x4, 7);
+            x7 ^= Integer.rotateLeft(x6 + x5, 9);
+            x4 ^= Integer.rotateLeft(x7 + x6, 13);
+            x5 ^= Integer.rotateLeft(x4 + x7, 18);
+            x11 ^= Integer.rotateLeft(x10 + x9, 7);
+            x8 ^= Integer.rotateLeft(x11 + x10, 9);
+            x9 ^= Integer.rotateLeft(x8 + x11, 13);
+            x10 ^= Integer.rotateLeft(x9 + x8, 18);
+            x12 ^= Integer.rotateLeft(x15 + x14, 7);
+            x13 ^= Integer.rotateLeft(x12 + x15, 9);
+            x14 ^= Integer.rotateLeft(x13 + x12, 13);
+            x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        }
+        b[0] += x0;
+        b[1] += x1;
+        b[2] += x2;
+        b[3] += x3;
+        b[4] += x4;
+        b[5] += x5;
+        b[6] += x6;
+        b[7] += x7;
+        b[8] += x8;
+        b[9] += x9;
+        b[10] += x10;
+        b[11] += x11;
+        b[12] += x12;
+        b[13] += x13;
+        b[14] += x14;
+        b[15] += x15;
+    }
+}
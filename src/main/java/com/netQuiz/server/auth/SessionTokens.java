@@ -0,0 +1,313 @@
+package com.netQuiz.server.auth;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.netQuiz.server.logging.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Signed session tokens. A token carries the user name and expiry and an
+ * HMAC-SHA256 over both, so a quiz or file request is authenticated by
+ * recomputing the MAC: no session table, no password check.
+ *
+ * Tokens name the key that signed them. A new key is made every rotation
+ * period and old ones are kept until the last token they signed expires.
+ * Keys are saved to a file readable by the owner only; cluster nodes that
+ * share the file accept each other's tokens. Rotation holds a lock on a
+ * .lock file beside it, so nodes rotating at the same moment take turns
+ * and the later one adopts the key the earlier one wrote.
+ */
+public class SessionTokens {
+    private static final Logger log = Logger.get("AUTH");
+
+    private static final int MAC_BYTES = 32;
+    // key id, expiry
+    private static final int HEADER_BYTES = 4 + 8;
+    private static final long RELOAD_INTERVAL_MS = 1_000;
+
+    private final Path file;
+    // The keys file is replaced on every save, so the lock lives beside it
+    private final Path lockFile;
+    private final long ttlMs;
+    private final long rotationMs;
+    private final SecureRandom random;
+    private final Gson gson;
+    // Newest last; replaced whole on rotation so verification never locks
+    private volatile List<SigningKey> keys;
+    private final ThreadLocal<Mac> macs;
+    private volatile long nextReload;
+
+    public SessionTokens(Path file, long ttlMs, long rotationMs) {
+        this.file = file;
+        this.lockFile = Paths.get(file + ".lock");
+        this.ttlMs = ttlMs;
+        this.rotationMs = rotationMs;
+        this.random = new SecureRandom();
+        this.gson = new Gson();
+        this.keys = new ArrayList<>();
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                return Mac.getInstance("HmacSHA256");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 unavailable", e);
+            }
+        });
+        rotate(System.currentTimeMillis());
+    }
+
+    /**
+     * Token for a user who has just proved their password
+     */
+    public String issue(String username) {
+        long now = System.currentTimeMillis();
+        List<SigningKey> current = keys;
+        SigningKey key = current.get(current.size() - 1);
+        if (now - key.created >= rotationMs) {
+            key = rotate(now);
+        }
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer token = ByteBuffer.allocate(HEADER_BYTES + name.length + MAC_BYTES);
+        token.putInt(key.id).putLong(now + ttlMs).put(name);
+        token.put(sign(key, token.array(), token.position()));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.array());
+    }
+
+    /**
+     * The user a token was issued to, or null if it is malformed, forged,
+     * signed by a retired key or expired
+     */
+    public String verify(String token) {
+        if (token == null) {
+            return null;
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (bytes.length < HEADER_BYTES + MAC_BYTES) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int keyId = buffer.getInt();
+        long expiresAt = buffer.getLong();
+        SigningKey key = find(keyId);
+        if (key == null && reload()) {
+            // Possibly a key another node has just rotated in
+            key = find(keyId);
+        }
+        if (key == null) {
+            return null;
+        }
+        int signed = bytes.length - MAC_BYTES;
+        byte[] mac = new byte[MAC_BYTES];
+        System.arraycopy(bytes, signed, mac, 0, MAC_BYTES);
+        // Constant time, so a forger cannot learn the MAC a byte at a time
+        if (!MessageDigest.isEqual(sign(key, bytes, signed), mac)) {
+            return null;
+        }
+        if (expiresAt <= System.currentTimeMillis()) {
+            return null;
+        }
+        return new String(bytes, HEADER_BYTES, signed - HEADER_BYTES, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * How long a token stays valid
+     */
+    public long getTtlMs() {
+        return ttlMs;
+    }
+
+    private SigningKey find(int id) {
+        return find(keys, id);
+    }
+
+    private static SigningKey find(List<SigningKey> current, int id) {
+        // A handful of keys at most, newest first as it signs nearly every token
+        for (int i = current.size() - 1; i >= 0; i--) {
+            if (current.get(i).id == id) {
+                return current.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Pick up keys other nodes added to the shared file, at most once a
+     * second so junk tokens cannot keep us reading it
+     */
+    private synchronized boolean reload() {
+        long now = System.currentTimeMillis();
+        if (now < nextReload) {
+            return false;
+        }
+        nextReload = now + RELOAD_INTERVAL_MS;
+        keys = merge(keys, load());
+        return true;
+    }
+
+    private byte[] sign(SigningKey key, byte[] data, int length) {
+        Mac mac = macs.get();
+        try {
+            mac.init(key.spec);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Bad session key", e);
+        }
+        mac.update(data, 0, length);
+        return mac.doFinal();
+    }
+
+    /**
+     * Make a new signing key unless the file already has a current one,
+     * which another node may have just written, and drop keys whose tokens
+     * have all expired
+     */
+    private synchronized SigningKey rotate(long now) {
+        try (FileChannel lock = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Released when the channel closes
+            lock.lock();
+            return rotateLocked(now);
+        } catch (IOException e) {
+            log.error("Could not lock session keys: {}", e.getMessage());
+            return rotateLocked(now);
+        }
+    }
+
+    private SigningKey rotateLocked(long now) {
+        List<SigningKey> next = merge(keys, load());
+        SigningKey newest = next.isEmpty() ? null : next.get(next.size() - 1);
+        if (newest == null || now - newest.created >= rotationMs) {
+            byte[] secret = new byte[MAC_BYTES];
+            random.nextBytes(secret);
+            // Random rather than sequential, so two nodes rotating at once cannot clash
+            int id;
+            do {
+                id = random.nextInt();
+            } while (find(next, id) != null);
+            newest = new SigningKey(id, now, secret);
+            next.add(newest);
+            log.info("New session signing key {}", Integer.toHexString(id));
+        }
+        // A key stops signing once rotated out; its tokens last one more TTL
+        next.removeIf(key -> now - key.created >= rotationMs + ttlMs);
+        keys = next;
+        save(next);
+        return newest;
+    }
+
+    /**
+     * Keys from both lists, oldest first
+     */
+    private static List<SigningKey> merge(List<SigningKey> ours, List<SigningKey> theirs) {
+        List<SigningKey> merged = new ArrayList<>(ours);
+        for (SigningKey key : theirs) {
+            if (find(merged, key.id) == null) {
+                merged.add(key);
+            }
+        }
+        merged.sort((a, b) -> Long.compare(a.created, b.created));
+        return merged;
+    }
+
+    private List<SigningKey> load() {
+        List<SigningKey> loaded = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return loaded;
+        }
+        try (Reader reader = Files.newBufferedReader(file)) {
+            List<StoredKey> stored = gson.fromJson(reader, new TypeToken<List<StoredKey>>() {
+            }.getType());
+            if (stored != null) {
+                for (StoredKey key : stored) {
+                    loaded.add(new SigningKey(key.id, key.created, Base64.getDecoder().decode(key.secret)));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Error loading session keys: {}", e.getMessage());
+        }
+        return loaded;
+    }
+
+    private void save(List<SigningKey> current) {
+        List<StoredKey> stored = new ArrayList<>();
+        for (SigningKey key : current) {
+            StoredKey entry = new StoredKey();
+            entry.id = key.id;
+            entry.created = key.created;
+            entry.secret = Base64.getEncoder().encodeToString(key.secret);
+            stored.add(entry);
+        }
+        Path temp = null;
+        try {
+            temp = createOwnerOnly(file.toAbsolutePath().getParent(), file.getFileName().toString());
+            try (Writer writer = Files.newBufferedWriter(temp)) {
+                gson.toJson(stored, writer);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Error saving session keys: {}", e.getMessage());
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // Left for the next save to overwrite
+                }
+            }
+        }
+    }
+
+    /**
+     * Empty temp file of a unique name that only this user can read, so
+     * the secrets are never briefly world-readable
+     */
+    private static Path createOwnerOnly(Path directory, String prefix) throws IOException {
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return Files.createTempFile(directory, prefix, ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        return Files.createTempFile(directory, prefix, ".tmp");
+    }
+
+    private static class SigningKey {
+        final int id;
+        final long created;
+        final byte[] secret;
+        final SecretKeySpec spec;
+
+        SigningKey(int id, long created, byte[] secret) {
+            this.id = id;
+            this.created = created;
+            this.secret = secret;
+            this.spec = new SecretKeySpec(secret, "HmacSHA256");
+        }
+    }
+
+    private static class StoredKey {
+        int id;
+        long created;
+        String secret;
+    }
+}
@@ -0,0 +1,89 @@
+package com.netQuiz.server.cluster;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * Shared-secret handshake between cluster nodes. Each side sends a random
+ * challenge and answers the other's with an HMAC-SHA256 keyed by the
+ * cluster secret, so the secret never crosses the wire and an answer
+ * recorded on one connection is no use on the next. Answers are labelled
+ * with the side that gives them, so a node cannot be made to answer its
+ * own challenge.
+ */
+public class ClusterAuth {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int CHALLENGE_BYTES = 16;
+    private static final int ANSWER_BYTES = 32;
+
+    private final SecretKeySpec key;
+    private final SecureRandom random;
+
+    public ClusterAuth(String secret) {
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.random = new SecureRandom();
+    }
+
+    /**
+     * Prove to the accepting node that we hold the secret, and check that it does
+     *
+     * @param purpose what the connection is for, e.g. the bus and our node ID; both sides must agree
+     * @throws IOException if the accepting node's answer is wrong
+     */
+    public void connect(DataInputStream in, DataOutputStream out, String purpose) throws IOException {
+        byte[] ours = challenge();
+        out.write(ours);
+        out.flush();
+        byte[] theirs = read(in, CHALLENGE_BYTES);
+        if (!MessageDigest.isEqual(read(in, ANSWER_BYTES), answer("accept", purpose, ours, theirs))) {
+            throw new IOException("Node failed cluster authentication");
+        }
+        out.write(answer("connect", purpose, theirs, ours));
+        out.flush();
+    }
+
+    /**
+     * Check that the connecting node holds the secret
+     *
+     * @return false if its answer is wrong
+     */
+    public boolean accept(DataInputStream in, DataOutputStream out, String purpose) throws IOException {
+        byte[] theirs = read(in, CHALLENGE_BYTES);
+        byte[] ours = challenge();
+        out.write(ours);
+        out.write(answer("accept", purpose, theirs, ours));
+        out.flush();
+        return MessageDigest.isEqual(read(in, ANSWER_BYTES), answer("connect", purpose, ours, theirs));
+    }
+
+    private byte[] challenge() {
+        byte[] challenge = new byte[CHALLENGE_BYTES];
+        random.nextBytes(challenge);
+        return challenge;
+    }
+
+    private byte[] answer(String side, String purpose, byte[] challenge, byte[] ownChallenge) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            mac.update((side + "\n" + purpose + "\n").getBytes(StandardCharsets.UTF_8));
+            mac.update(challenge);
+            return mac.doFinal(ownChallenge);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " unavailable", e);
+        }
+    }
+
+    private static byte[] read(DataInputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
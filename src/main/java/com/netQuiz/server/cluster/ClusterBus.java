@@ -0,0 +1,329 @@
+package com.netQuiz.server.cluster;
+
+import com.netQuiz.server.logging.Logger;
+import com.netQuiz.server.metrics.Counter;
+import com.netQuiz.server.metrics.MetricsRegistry;
+import com.netQuiz.shared.Constants;
+import com.netQuiz.shared.Tls;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full-mesh TCP event bus between cluster nodes. Every node keeps one
+ * outbound link per peer, drained by its own writer thread, and reads each
+ * peer's inbound link on a reader thread. Frames are length-prefixed byte
+ * arrays of at most {@link Constants#CLUSTER_MAX_FRAME_BYTES}; their meaning
+ * belongs to the Listener. A link carries nothing until the connecting node
+ * has proved it holds the cluster secret (see {@link ClusterAuth}).
+ *
+ * Frames sent while a link is down are dropped, not queued. When a link
+ * comes up, the listener supplies catch-up frames (such as a presence
+ * snapshot), which are sent ahead of anything else.
+ */
+public class ClusterBus {
+    private static final Logger log = Logger.get("CLUSTER");
+
+    public interface Listener {
+        /**
+         * Frames to send first on a new outbound link
+         */
+        List<byte[]> onPeerConnected(String peer);
+
+        /**
+         * The peer's inbound link closed or went silent
+         */
+        void onPeerLost(String peer);
+
+        void onMessage(String peer, byte[] frame);
+    }
+
+    private final ClusterConfig config;
+    private final Listener listener;
+    private final Map<String, PeerLink> links;
+    private final Map<String, Socket> inbound;
+    private final Counter sent;
+    private final Counter received;
+    private final Counter dropped;
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    public ClusterBus(ClusterConfig config, Listener listener) {
+        this.config = config;
+        this.listener = listener;
+        this.links = new ConcurrentHashMap<>();
+        this.inbound = new ConcurrentHashMap<>();
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        this.sent = metrics.counter("netquiz_cluster_frames_sent_total", "Frames written to peer nodes");
+        this.received = metrics.counter("netquiz_cluster_frames_received_total", "Frames read from peer nodes");
+        this.dropped = metrics.counter("netquiz_cluster_frames_dropped_total",
+                "Frames dropped because a peer link was down or backed up");
+        for (ClusterConfig.Node node : config.getNodes()) {
+            if (node != config.getSelf()) {
+                links.put(node.getId(), new PeerLink(node));
+            }
+        }
+        metrics.gauge("netquiz_cluster_peers_connected", "Peer nodes with a live outbound link", () -> {
+            int connected = 0;
+            for (PeerLink link : links.values()) {
+                connected += link.connected ? 1 : 0;
+            }
+            return connected;
+        });
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        // Only the address peers are configured to reach us on
+        serverSocket.bind(new InetSocketAddress(config.getSelf().getHost(), config.getSelf().getBusPort()));
+        running = true;
+
+        Thread acceptor = new Thread(this::acceptLoop, "ClusterAccept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        for (PeerLink link : links.values()) {
+            Thread writer = new Thread(link, "ClusterOut-" + link.node.getId());
+            writer.setDaemon(true);
+            writer.start();
+        }
+        log.info("Node {} on bus port {}, peers {}", config.getSelf().getId(), config.getSelf().getBusPort(),
+                links.keySet());
+    }
+
+    public void send(String peer, byte[] frame) {
+        PeerLink link = links.get(peer);
+        if (link == null || !link.offer(frame)) {
+            dropped.increment();
+        }
+    }
+
+    public void broadcast(byte[] frame) {
+        for (PeerLink link : links.values()) {
+            if (!link.offer(frame)) {
+                dropped.increment();
+            }
+        }
+    }
+
+    public boolean isConnected(String peer) {
+        PeerLink link = links.get(peer);
+        return link != null && link.connected;
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            // Ignore
+        }
+        for (PeerLink link : links.values()) {
+            link.close();
+        }
+        for (Socket socket : inbound.values()) {
+            closeQuietly(socket);
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread reader = new Thread(() -> {
+                    try {
+                        readPeer(Tls.serverSide(socket));
+                    } catch (IOException e) {
+                        log.warn("Bus handshake from {} failed: {}", socket.getInetAddress(), e.getMessage());
+                        closeQuietly(socket);
+                    }
+                }, "ClusterIn");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (running) {
+                    log.error("Bus accept error: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void readPeer(Socket socket) {
+        String peer = null;
+        try {
+            socket.setSoTimeout((int) (Constants.CLUSTER_HEARTBEAT_MS * 3));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            String claimed = in.readUTF();
+            if (!links.containsKey(claimed)) {
+                log.warn("Rejecting bus connection from unknown node {} at {}", claimed, socket.getInetAddress());
+                return;
+            }
+            if (!config.getAuth().accept(in, out, "bus " + claimed)) {
+                log.warn("Rejecting bus connection claiming to be {} from {}: wrong cluster secret", claimed,
+                        socket.getInetAddress());
+                return;
+            }
+            peer = claimed;
+            Socket previous = inbound.put(peer, socket);
+            if (previous != null) {
+                closeQuietly(previous);
+            }
+            log.info("Peer {} connected", peer);
+
+            while (running) {
+                int length = in.readInt();
+                if (length == 0) {
+                    continue; // Heartbeat
+                }
+                if (length < 0 || length > Constants.CLUSTER_MAX_FRAME_BYTES) {
+                    log.warn("Dropping link from {}: frame of {} bytes", peer, length);
+                    break;
+                }
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                received.increment();
+                try {
+                    listener.onMessage(peer, frame);
+                } catch (RuntimeException e) {
+                    log.error("Error handling frame from {}", peer, e);
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            log.warn("Peer {} went silent", peer);
+        } catch (IOException e) {
+            // Peer closed the link
+        } finally {
+            closeQuietly(socket);
+            // A reconnect may already have replaced this link; only report the live one
+            if (peer != null && inbound.remove(peer, socket)) {
+                log.info("Peer {} disconnected", peer);
+                listener.onPeerLost(peer);
+            }
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    /**
+     * Outbound link to one peer: reconnects forever, one writer thread
+     */
+    private class PeerLink implements Runnable {
+        private final ClusterConfig.Node node;
+        private final BlockingQueue<byte[]> queue;
+        private volatile boolean connected;
+        private volatile Socket socket;
+
+        PeerLink(ClusterConfig.Node node) {
+            this.node = node;
+            this.queue = new ArrayBlockingQueue<>(Constants.CLUSTER_PEER_QUEUE);
+        }
+
+        boolean offer(byte[] frame) {
+            if (frame.length > Constants.CLUSTER_MAX_FRAME_BYTES) {
+                // The peer would drop the link rather than read it
+                log.warn("Not sending a {} byte frame to {}", frame.length, node.getId());
+                return false;
+            }
+            return connected && queue.offer(frame);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    socket = new Socket();
+                    socket.connect(new InetSocketAddress(node.getHost(), node.getBusPort()),
+                            (int) Constants.CLUSTER_RECONNECT_MS);
+                    socket.setTcpNoDelay(true);
+                    socket = Tls.clientSide(socket, node.getHost(), node.getBusPort());
+                    socket.setSoTimeout((int) (Constants.CLUSTER_HEARTBEAT_MS * 3));
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    out.writeUTF(config.getSelf().getId());
+                    try {
+                        config.getAuth().connect(new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+                                out, "bus " + config.getSelf().getId());
+                    } catch (IOException e) {
+                        log.warn("Bus handshake with {} failed: {}", node.getId(), e.getMessage());
+                        throw e;
+                    }
+                    // Catch-up frames are computed after we start accepting new ones,
+                    // so nothing published in between is missed
+                    connected = true;
+                    for (byte[] frame : listener.onPeerConnected(node.getId())) {
+                        write(out, frame);
+                    }
+                    out.flush();
+                    log.info("Linked to {}", node);
+                    drain(out);
+                } catch (IOException e) {
+                    if (connected) {
+                        log.warn("Link to {} lost: {}", node.getId(), e.getMessage());
+                    }
+                } finally {
+                    connected = false;
+                    queue.clear();
+                    if (socket != null) {
+                        closeQuietly(socket);
+                    }
+                }
+                try {
+                    Thread.sleep(Constants.CLUSTER_RECONNECT_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void drain(DataOutputStream out) throws IOException {
+            while (running) {
+                byte[] frame;
+                try {
+                    frame = queue.poll(Constants.CLUSTER_HEARTBEAT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (frame == null) {
+                    out.writeInt(0);
+                    out.flush();
+                    continue;
+                }
+                write(out, frame);
+                while ((frame = queue.poll()) != null) {
+                    write(out, frame);
+                }
+                out.flush();
+            }
+        }
+
+        private void write(DataOutputStream out, byte[] frame) throws IOException {
+            out.writeInt(frame.length);
+            out.write(frame);
+            sent.increment();
+        }
+
+        void close() {
+            Socket current = socket;
+            if (current != null) {
+                closeQuietly(current);
+            }
+        }
+    }
+}
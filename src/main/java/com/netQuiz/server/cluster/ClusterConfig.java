@@ -0,0 +1,136 @@
+package com.netQuiz.server.cluster;
+
+import com.netQuiz.shared.Constants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cluster membership from system properties:
+ *   -Dnetquiz.cluster.nodes=n1=localhost:5002:7002,n2=localhost:5012:7012
+ *   -Dnetquiz.node.id=n1
+ * Each entry is id=host:clientPort:busPort. Without these the server runs
+ * as a single node. Nodes also need a shared secret, given in the
+ * NETQUIZ_CLUSTER_SECRET environment variable or -Dnetquiz.cluster.secret,
+ * to prove to each other that they belong to the cluster.
+ */
+public class ClusterConfig {
+    private final List<Node> nodes;
+    private final Node self;
+    private final ClusterAuth auth;
+
+    public ClusterConfig(List<Node> nodes, String selfId, String secret) {
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        this.self = find(selfId);
+        if (self == null) {
+            throw new IllegalArgumentException("Node " + selfId + " is not in the cluster list");
+        }
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalArgumentException(
+                    "Cluster nodes need a shared secret (NETQUIZ_CLUSTER_SECRET or -Dnetquiz.cluster.secret)");
+        }
+        this.auth = new ClusterAuth(secret);
+    }
+
+    /**
+     * Parse the system properties; null when not clustered
+     */
+    public static ClusterConfig fromSystemProperties() {
+        String spec = System.getProperty("netquiz.cluster.nodes");
+        String selfId = System.getProperty("netquiz.node.id");
+        if (spec == null || spec.isBlank() || selfId == null) {
+            return null;
+        }
+        List<Node> nodes = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            String[] idAndAddress = entry.trim().split("=", 2);
+            String[] address = idAndAddress.length == 2 ? idAndAddress[1].split(":") : new String[0];
+            if (address.length != 3) {
+                throw new IllegalArgumentException("Bad cluster node '" + entry + "', expected id=host:clientPort:busPort");
+            }
+            nodes.add(new Node(idAndAddress[0], address[0], Integer.parseInt(address[1]),
+                    Integer.parseInt(address[2])));
+        }
+        return new ClusterConfig(nodes, selfId, Constants.CLUSTER_SECRET);
+    }
+
+    public Node find(String id) {
+        for (Node node : nodes) {
+            if (node.getId().equals(id)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    public List<String> getNodeIds() {
+        List<String> ids = new ArrayList<>();
+        for (Node node : nodes) {
+            ids.add(node.getId());
+        }
+        return ids;
+    }
+
+    public Node getSelf() {
+        return self;
+    }
+
+    public ClusterAuth getAuth() {
+        return auth;
+    }
+
+    /**
+     * Position of this node in the list, used to offset per-node ports such as metrics
+     */
+    public int getSelfIndex() {
+        return nodes.indexOf(self);
+    }
+
+    /**
+     * The first node in the list sends UDP notifications for the whole
+     * cluster, so clients see a single sequence per topic
+     */
+    public boolean ownsUdpNotifications() {
+        return getSelfIndex() == 0;
+    }
+
+    public static class Node {
+        private final String id;
+        private final String host;
+        private final int clientPort;
+        private final int busPort;
+
+        public Node(String id, String host, int clientPort, int busPort) {
+            this.id = id;
+            this.host = host;
+            this.clientPort = clientPort;
+            this.busPort = busPort;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public int getClientPort() {
+            return clientPort;
+        }
+
+        public int getBusPort() {
+            return busPort;
+        }
+
+        @Override
+        public String toString() {
+            return id + "@" + host + ":" + clientPort;
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package com.netQuiz.server.cluster;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.netQuiz.server.handlers.QuizDelta;
+import com.netQuiz.server.handlers.QuizHandler;
+import com.netQuiz.server.handlers.QuizPlacement;
+import com.netQuiz.server.handlers.QuizReplication;
+import com.netQuiz.server.logging.Logger;
+import com.netQuiz.server.messaging.ChatEvent;
+import com.netQuiz.server.messaging.ChatRelay;
+import com.netQuiz.server.messaging.MessagingEngine;
+import com.netQuiz.server.notification.NotificationRelay;
+import com.netQuiz.server.notification.NotificationServer;
+import com.netQuiz.shared.Constants;
+import com.netQuiz.shared.NotificationEvent;
+import com.netQuiz.shared.NotificationProtocol;
+import com.netQuiz.shared.Quiz;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This server's membership in a cluster. Translates chat, presence and
+ * notification traffic to and from bus frames, and keeps the hash ring of
+ * live nodes that decides each user's home node (where their offline
+ * mailbox lives) and which node holds each quiz. Each node streams its
+ * quizzes to read replicas on the others.
+ */
+public class ClusterNode implements ClusterBus.Listener, ChatRelay, NotificationRelay, QuizPlacement,
+        QuizReplication {
+    private static final Logger log = Logger.get("CLUSTER");
+
+    // Frame types
+    private static final byte BROADCAST = 1;
+    private static final byte PRIVATE = 2;
+    private static final byte PRESENCE = 3;
+    private static final byte PRESENCE_SNAPSHOT = 4;
+    private static final byte MAILBOX_REQUEST = 5;
+    private static final byte MAILBOX = 6;
+    private static final byte NOTIFY = 7;
+    private static final byte QUIZ_DELTA = 8;
+    private static final byte QUIZ_SNAPSHOT_REQUEST = 9;
+
+    // Handshake label for quiz requests forwarded over the client port
+    private static final String FORWARD_PURPOSE = "forward";
+
+    private static final Gson gson = new Gson();
+    private static final Type QUIZ_LIST = new TypeToken<List<Quiz>>() {
+    }.getType();
+
+    private final ClusterConfig config;
+    private final String selfId;
+    private final HashRing ring;
+    private final ClusterBus bus;
+    private final MessagingEngine messagingEngine;
+    private final NotificationServer notificationServer;
+    private final QuizHandler quizHandler;
+    private final List<Runnable> ringListeners;
+    private final ScheduledExecutorService events;
+
+    public ClusterNode(ClusterConfig config, MessagingEngine messagingEngine, NotificationServer notificationServer,
+                       QuizHandler quizHandler) {
+        this.config = config;
+        this.selfId = config.getSelf().getId();
+        // Peers join the ring as their links come up
+        this.ring = new HashRing(List.of(selfId), Constants.CLUSTER_VIRTUAL_NODES);
+        this.bus = new ClusterBus(config, this);
+        this.messagingEngine = messagingEngine;
+        this.notificationServer = notificationServer;
+        this.quizHandler = quizHandler;
+        this.ringListeners = new CopyOnWriteArrayList<>();
+        // One thread, so listeners see membership changes in order and off the bus threads
+        this.events = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ClusterEvents");
+            thread.setDaemon(true);
+            return thread;
+        });
+        messagingEngine.setRelay(this);
+        notificationServer.setRelay(this, config.ownsUdpNotifications());
+        quizHandler.setPlacement(this);
+        quizHandler.setReplication(this);
+    }
+
+    public void start() throws IOException {
+        bus.start();
+        events.scheduleAtFixedRate(() -> publish(quizHandler.watermark()), Constants.CLUSTER_HEARTBEAT_MS,
+                Constants.CLUSTER_HEARTBEAT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        bus.stop();
+        events.shutdownNow();
+    }
+
+    /**
+     * Run after each change to the ring, e.g. to move state to new owners
+     */
+    public void addRingListener(Runnable listener) {
+        ringListeners.add(listener);
+    }
+
+    /**
+     * Take this node off the ring ahead of shutdown, so ring listeners hand
+     * its state to the remaining nodes. Returns once they have run.
+     */
+    public void leave() {
+        ring.removeNode(selfId);
+        log.info("Left the ring: {}", ring.getNodes());
+        for (Runnable listener : ringListeners) {
+            listener.run();
+        }
+    }
+
+    private void ringChanged() {
+        for (Runnable listener : ringListeners) {
+            events.execute(listener);
+        }
+    }
+
+    public ClusterConfig getConfig() {
+        return config;
+    }
+
+    public HashRing getRing() {
+        return ring;
+    }
+
+    public ClusterBus getBus() {
+        return bus;
+    }
+
+    // ---- ClusterBus.Listener ----
+
+    @Override
+    public List<byte[]> onPeerConnected(String peer) {
+        if (!ring.contains(peer)) {
+            ring.addNode(peer);
+            log.info("{} joined the ring: {}", peer, ring.getNodes());
+            ringChanged();
+        }
+        quizHandler.replicaConnected(peer);
+        return List.of(encode(PRESENCE_SNAPSHOT, out -> writeNames(out, messagingEngine.getLocalUsers())),
+                encode(QUIZ_DELTA, out -> writeDelta(out, quizHandler.snapshot())));
+    }
+
+    @Override
+    public void onPeerLost(String peer) {
+        ring.removeNode(peer);
+        log.info("{} left the ring: {}", peer, ring.getNodes());
+        messagingEngine.removeNode(peer);
+        quizHandler.replicaLost(peer);
+        ringChanged();
+    }
+
+    @Override
+    public void onMessage(String peer, byte[] frame) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+            byte type = in.readByte();
+            switch (type) {
+                case BROADCAST:
+                    ChatEvent event = readEvent(in);
+                    messagingEngine.receiveBroadcast(event, emptyToNull(in.readUTF()));
+                    break;
+                case PRIVATE:
+                    messagingEngine.receivePrivate(readEvent(in));
+                    break;
+                case PRESENCE:
+                    messagingEngine.receivePresence(peer, in.readUTF(), in.readBoolean());
+                    break;
+                case PRESENCE_SNAPSHOT:
+                    messagingEngine.receivePresenceSnapshot(peer, readNames(in));
+                    break;
+                case MAILBOX_REQUEST:
+                    String username = in.readUTF();
+                    List<ChatEvent> queued = messagingEngine.takeMailbox(username);
+                    if (!queued.isEmpty()) {
+                        bus.send(peer, encode(MAILBOX, out -> {
+                            out.writeUTF(username);
+                            out.writeInt(queued.size());
+                            for (ChatEvent queuedEvent : queued) {
+                                writeEvent(out, queuedEvent);
+                            }
+                        }));
+                    }
+                    break;
+                case MAILBOX:
+                    String recipient = in.readUTF();
+                    int count = in.readInt();
+                    List<ChatEvent> events = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        events.add(readEvent(in));
+                    }
+                    messagingEngine.receiveMailbox(recipient, events);
+                    break;
+                case NOTIFY:
+                    in.readUTF(); // Frame type written by encodeEventBatch
+                    notificationServer.receiveRelayed(peer, NotificationProtocol.readEventBatch(in));
+                    break;
+                case QUIZ_DELTA:
+                    quizHandler.receiveDelta(peer, readDelta(in));
+                    break;
+                case QUIZ_SNAPSHOT_REQUEST:
+                    bus.send(peer, encode(QUIZ_DELTA, out -> writeDelta(out, quizHandler.snapshot())));
+                    break;
+                default:
+                    log.warn("Unknown frame type {} from {}", type, peer);
+            }
+        } catch (IOException e) {
+            log.error("Malformed frame from {}: {}", peer, e.getMessage());
+        }
+    }
+
+    // ---- ChatRelay ----
+
+    @Override
+    public void broadcast(ChatEvent event, String excludeUser) {
+        bus.broadcast(encode(BROADCAST, out -> {
+            writeEvent(out, event);
+            out.writeUTF(excludeUser == null ? "" : excludeUser);
+        }));
+    }
+
+    @Override
+    public void forward(String node, ChatEvent event) {
+        bus.send(node, encode(PRIVATE, out -> writeEvent(out, event)));
+    }
+
+    @Override
+    public void presence(String username, boolean online) {
+        bus.broadcast(encode(PRESENCE, out -> {
+            out.writeUTF(username);
+            out.writeBoolean(online);
+        }));
+    }
+
+    @Override
+    public String homeNode(String username) {
+        String home = ring.nodeFor(username);
+        return selfId.equals(home) ? null : home;
+    }
+
+    @Override
+    public void requestMailbox(String node, String username) {
+        bus.send(node, encode(MAILBOX_REQUEST, out -> out.writeUTF(username)));
+    }
+
+    // ---- QuizPlacement ----
+
+    @Override
+    public InetSocketAddress ownerOf(String quizId) {
+        String owner = ring.nodeFor(quizId);
+        return owner == null || selfId.equals(owner) ? null : clientAddress(owner);
+    }
+
+    @Override
+    public List<InetSocketAddress> peers() {
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (String node : ring.getNodes()) {
+            if (!selfId.equals(node)) {
+                peers.add(clientAddress(node));
+            }
+        }
+        return peers;
+    }
+
+    @Override
+    public void authenticate(DataInputStream in, DataOutputStream out) throws IOException {
+        config.getAuth().connect(in, out, FORWARD_PURPOSE);
+    }
+
+    @Override
+    public boolean verifyForwarder(DataInputStream in, DataOutputStream out) throws IOException {
+        return config.getAuth().accept(in, out, FORWARD_PURPOSE);
+    }
+
+    private InetSocketAddress clientAddress(String nodeId) {
+        ClusterConfig.Node node = config.find(nodeId);
+        return new InetSocketAddress(node.getHost(), node.getClientPort());
+    }
+
+    // ---- QuizReplication ----
+
+    @Override
+    public void publish(QuizDelta delta) {
+        bus.broadcast(encode(QUIZ_DELTA, out -> writeDelta(out, delta)));
+    }
+
+    @Override
+    public void requestSnapshot(String node) {
+        bus.send(node, encode(QUIZ_SNAPSHOT_REQUEST, out -> {
+        }));
+    }
+
+    // ---- NotificationRelay ----
+
+    @Override
+    public void forward(List<NotificationEvent> events) {
+        byte[] batch = NotificationProtocol.encodeEventBatch(events);
+        bus.broadcast(encode(NOTIFY, out -> out.write(batch)));
+    }
+
+    // ---- Encoding ----
+
+    private interface FrameWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] encode(byte type, FrameWriter body) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            body.write(out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeEvent(DataOutputStream out, ChatEvent event) throws IOException {
+        out.writeByte(event.getKind().ordinal());
+        out.writeUTF(event.getSender());
+        out.writeUTF(event.getRecipient() == null ? "" : event.getRecipient());
+        out.writeUTF(event.getContent());
+        out.writeLong(event.getTimestamp());
+    }
+
+    private static ChatEvent readEvent(DataInputStream in) throws IOException {
+        ChatEvent.Kind kind = ChatEvent.Kind.values()[in.readByte()];
+        return new ChatEvent(kind, in.readUTF(), emptyToNull(in.readUTF()), in.readUTF(), in.readLong());
+    }
+
+    private static void writeDelta(DataOutputStream out, QuizDelta delta) throws IOException {
+        out.writeBoolean(delta.isSnapshot());
+        out.writeLong(delta.getPreviousVersion());
+        out.writeLong(delta.getVersion());
+        out.writeLong(delta.getWatermark());
+        // Quizzes can exceed writeUTF's 64KB limit
+        byte[] upserts = gson.toJson(delta.getUpserts(), QUIZ_LIST).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(upserts.length);
+        out.write(upserts);
+        writeNames(out, delta.getRemoved());
+    }
+
+    private static QuizDelta readDelta(DataInputStream in) throws IOException {
+        boolean snapshot = in.readBoolean();
+        long previousVersion = in.readLong();
+        long version = in.readLong();
+        long watermark = in.readLong();
+        byte[] upserts = new byte[in.readInt()];
+        in.readFully(upserts);
+        List<Quiz> quizzes = gson.fromJson(new String(upserts, StandardCharsets.UTF_8), QUIZ_LIST);
+        return new QuizDelta(snapshot, previousVersion, version, watermark, quizzes, readNames(in));
+    }
+
+    private static void writeNames(DataOutputStream out, List<String> names) throws IOException {
+        out.writeInt(names.size());
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    private static List<String> readNames(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(in.readUTF());
+        }
+        return names;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
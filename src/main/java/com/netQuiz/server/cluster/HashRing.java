@@ -0,0 +1,87 @@
+package com.netQuiz.server.cluster;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring over node ids. Each node is placed at many virtual
+ * points so keys spread evenly, and adding or removing a node only moves
+ * the keys between its points and their predecessors.
+ */
+public class HashRing {
+    private final int virtualNodes;
+    private volatile TreeMap<Long, String> points;
+
+    public HashRing(Collection<String> nodes, int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+        this.points = new TreeMap<>();
+        for (String node : nodes) {
+            place(points, node);
+        }
+    }
+
+    /**
+     * Node that owns the key
+     */
+    public String nodeFor(String key) {
+        TreeMap<Long, String> ring = points;
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    // Copy-on-write: membership changes are rare, lookups are on every request
+    public synchronized void addNode(String node) {
+        TreeMap<Long, String> next = new TreeMap<>(points);
+        place(next, node);
+        points = next;
+    }
+
+    public synchronized void removeNode(String node) {
+        TreeMap<Long, String> next = new TreeMap<>(points);
+        next.values().removeIf(node::equals);
+        points = next;
+    }
+
+    public boolean contains(String node) {
+        return points.containsValue(node);
+    }
+
+    public List<String> getNodes() {
+        List<String> nodes = new ArrayList<>();
+        for (String node : points.values()) {
+            if (!nodes.contains(node)) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    private void place(TreeMap<Long, String> ring, String node) {
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.put(hash(node + "#" + i), node);
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a with a murmur finalizer; String.hashCode clusters too much for a ring
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,28 +1,39 @@
 package com.netQuiz.server.handlers;
 
-import com.netQuiz.server.notification.NotificationServer;
-import com.netQuiz.shared.Message;
+import com.netQuiz.server.auth.SessionTokens;
+import com.netQuiz.server.logging.Logger;
+import com.netQuiz.server.messaging.ChatEvent;
+import com.netQuiz.server.messaging.ChatTransport;
+import com.netQuiz.server.messaging.IdleTimerWheel;
+import com.netQuiz.server.messaging.MessagingEngine;
 
 import java.io.*;
 import java.net.Socket;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Framed chat protocol used by ChatService (CHAT_REQUEST).
+ * Sessions, fan-out and notifications live in the MessagingEngine;
+ * this class only decodes commands and encodes outgoing frames.
+ */
 public class ChatHandler implements Runnable {
-    private Set<ChatClientHandler> clients;
-    private boolean running;
-    private NotificationServer notificationServer;
+    private static final Logger log = Logger.get("CHAT");
 
-    public ChatHandler(NotificationServer notificationServer) {
-        this.notificationServer = notificationServer;
-        this.clients = ConcurrentHashMap.newKeySet();
+    private boolean running;
+    private MessagingEngine messagingEngine;
+    private IdleTimerWheel idleReaper;
+    private SessionTokens sessionTokens;
+
+    public ChatHandler(MessagingEngine messagingEngine, IdleTimerWheel idleReaper, SessionTokens sessionTokens) {
+        this.messagingEngine = messagingEngine;
+        this.idleReaper = idleReaper;
+        this.sessionTokens = sessionTokens;
         this.running = false;
     }
 
     @Override
     public void run() {
         running = true;
-        System.out.println("[CHAT] Service started");
+        log.info("Service started");
 
         // Keep service running
         while (running) {
@@ -36,8 +47,6 @@ public class ChatHandler implements Runnable {
 
     public void addClient(Socket socket, DataInputStream in, DataOutputStream out) {
         ChatClientHandler handler = new ChatClientHandler(socket, in, out);
-        clients.add(handler);
-        System.out.println("[CHAT] Added new client. Total clients now: " + clients.size());
         Thread thread = new Thread(handler);
         thread.setDaemon(true);
         thread.start();
@@ -45,26 +54,15 @@ public class ChatHandler implements Runnable {
 
     public void stop() {
         running = false;
-        for (ChatClientHandler client : clients) {
-            client.close();
-        }
+        messagingEngine.closeAll(ChatTransport.Kind.CHAT);
     }
 
-    private void broadcast(Message message, ChatClientHandler sender) {
-        System.out.println("[CHAT] Broadcasting from " + message.getSender() + ": " + message.getContent());
-        System.out.println("[CHAT] Broadcasting to " + clients.size() + " clients");
-        for (ChatClientHandler client : clients) {
-            // Send to all clients including sender (client can filter if needed)
-            System.out.println("[CHAT] Sending to client: " + client.username);
-            client.sendMessage(message);
-        }
-    }
-
-    private class ChatClientHandler implements Runnable {
+    private class ChatClientHandler implements Runnable, ChatTransport {
         private Socket socket;
         private DataOutputStream out;
         private DataInputStream in;
         private String username;
+        private IdleTimerWheel.Session idle;
 
         public ChatClientHandler(Socket socket, DataInputStream dataIn, DataOutputStream dataOut) {
             this.socket = socket;
@@ -75,41 +73,42 @@ public class ChatHandler implements Runnable {
         @Override
         public void run() {
             try {
-                // Read initial CONNECT command and username
+                socket.setKeepAlive(true);
+                // Read initial CONNECT command, username and session token
                 String command = in.readUTF();
                 if ("CONNECT".equals(command)) {
-                    username = in.readUTF();
-                    System.out.println("[CHAT] User joined: " + username);
-
-                    // UDP Notification for JOIN event
-                    if (notificationServer != null) {
-                        notificationServer.sendNotification(username + " has joined the chat.");
+                    String requested = in.readUTF();
+                    String token = in.readUTF();
+                    // The session holds private messages and the mailbox, so only its owner may attach
+                    if (!requested.equals(sessionTokens.verify(token))) {
+                        log.warn("Rejected chat connect for {}: bad session token", requested);
+                        sendMessage("Server", "Session expired, please log in again.", System.currentTimeMillis());
+                        return;
                     }
-
-                    // Broadcast join message
-                    Message joinMessage = new Message(username + " has joined the chat", "Server",
-                            System.currentTimeMillis());
-                    broadcast(joinMessage, this);
+                    username = requested.intern();
+                    // Long-lived from here; the idle reaper closes sessions that stop sending heartbeats
+                    socket.setSoTimeout(0);
+                    log.info("User joined: {}", username);
+                    messagingEngine.attach(username, this);
+                    idle = idleReaper.register(username, this::close);
                 }
 
                 // Listen for messages
-                while (running && !socket.isClosed()) {
+                while (running && username != null && !socket.isClosed()) {
                     try {
                         String msgCommand = in.readUTF();
-                        System.out.println("[CHAT] Received command from " + username + ": " + msgCommand);
-
-                        if ("MESSAGE".equals(msgCommand)) {
-                            String sender = in.readUTF();
+                        idle.touch();
+                        log.debug("Received command from {}: {}", username, msgCommand);
+
+                        if ("PING".equals(msgCommand)) {
+                            // Heartbeat; the touch above is all it needs
+                            continue;
+                        } else if ("MESSAGE".equals(msgCommand)) {
+                            // The declared sender is read for compatibility; the session name is authoritative
+                            in.readUTF();
                             String content = in.readUTF();
-                            System.out.println("[CHAT] Message from " + sender + ": " + content);
-
-                            // Send UDP notification
-                            if (notificationServer != null) {
-                                notificationServer.sendNotification(sender + " has sent a message.");
-                            }
-
-                            Message message = new Message(sender, content, System.currentTimeMillis());
-                            broadcast(message, this);
+                            log.debug("Message from {}: {}", username, content);
+                            messagingEngine.publish(this, username, content);
 
                         } else if ("DISCONNECT".equals(msgCommand)) {
                             break;
@@ -121,37 +120,57 @@ public class ChatHandler implements Runnable {
 
             } catch (IOException e) {
                 if (running) {
-                    System.err.println("[CHAT] Client error: " + e.getMessage());
+                    log.error("Client error: {}", e.getMessage());
                 }
             } finally {
                 cleanup();
             }
         }
 
-        public void sendMessage(Message message) {
+        @Override
+        public Kind getKind() {
+            return Kind.CHAT;
+        }
+
+        @Override
+        public void deliver(ChatEvent event) {
+            switch (event.getKind()) {
+                case CHAT:
+                    sendMessage(event.getSender(), event.getContent(), event.getTimestamp());
+                    break;
+                case SYSTEM:
+                case ERROR:
+                    sendMessage("Server", event.getContent(), event.getTimestamp());
+                    break;
+                case PRIVATE:
+                    String label = username.equals(event.getSender())
+                            ? "[Private to " + event.getRecipient() + "]"
+                            : "[Private from " + event.getSender() + "]";
+                    sendMessage(label, event.getContent(), event.getTimestamp());
+                    break;
+            }
+        }
+
+        private void sendMessage(String sender, String content, long timestamp) {
             try {
-                if (out == null) {
-                    System.err.println("[CHAT] ERROR: Output stream is null for " + username);
-                    return;
-                }
                 if (socket == null || socket.isClosed()) {
-                    System.err.println("[CHAT] ERROR: Socket is closed for " + username);
+                    log.warn("Socket is closed for {}", username);
                     return;
                 }
 
                 synchronized (out) {
-                    out.writeUTF(message.getSender());
-                    out.writeUTF(message.getContent());
-                    out.writeLong(message.getTimestamp());
+                    out.writeUTF(sender);
+                    out.writeUTF(content);
+                    out.writeLong(timestamp);
                     out.flush();
-                    System.out.println("[CHAT] Successfully sent message to " + username);
+                    log.debug("Sent message to {}", username);
                 }
             } catch (IOException e) {
-                System.err.println("[CHAT] Error sending to " + username + ": " + e.getMessage());
-                e.printStackTrace();
+                log.warn("Error sending to {}: {}", username, e.getMessage());
             }
         }
 
+        @Override
         public void close() {
             try {
                 if (socket != null && !socket.isClosed()) {
@@ -163,19 +182,14 @@ public class ChatHandler implements Runnable {
         }
 
         private void cleanup() {
-            clients.remove(this);
+            if (idle != null) {
+                idle.cancel();
+            }
             if (username != null) {
-                System.out.println("[CHAT] User left: " + username);
-
-                if (notificationServer != null) {
-                    notificationServer.sendNotification(username + " has left the chat.");
-                }
-
-                Message leaveMessage = new Message("Server", username + " has left the chat",
-                        System.currentTimeMillis());
-                broadcast(leaveMessage, this);
+                log.info("User left: {}", username);
+                messagingEngine.detach(username, this);
             }
             close();
         }
     }
-}
\ No newline at end of file
+}
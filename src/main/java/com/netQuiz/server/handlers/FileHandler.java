@@ -1,8 +1,14 @@
 package com.netQuiz.server.handlers;
 
+import com.netQuiz.server.auth.SessionTokens;
+import com.netQuiz.server.logging.Logger;
+import com.netQuiz.server.metrics.LatencyHistogram;
+import com.netQuiz.server.metrics.MetricsRegistry;
 import com.netQuiz.server.notification.NotificationServer;
+import com.netQuiz.server.search.SearchIndex;
 import com.netQuiz.shared.Constants;
 import com.netQuiz.shared.FileInfo;
+import com.netQuiz.shared.Tls;
 
 import java.io.*;
 import java.net.Socket;
@@ -13,13 +19,44 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class FileHandler {
+    private static final Logger log = Logger.get("FILE");
+
     private Path filesDirectory;
     private NotificationServer notificationServer;
+    private SearchIndex searchIndex;
+    private SessionTokens sessionTokens;
+    private LatencyHistogram uploadLatency;
+    private LatencyHistogram downloadLatency;
 
-    public FileHandler(NotificationServer notificationServer) {
+    public FileHandler(NotificationServer notificationServer, SearchIndex searchIndex,
+                       SessionTokens sessionTokens) {
         this.notificationServer = notificationServer;
+        this.searchIndex = searchIndex;
+        this.sessionTokens = sessionTokens;
+        this.uploadLatency = MetricsRegistry.getInstance().commandLatency("UPLOAD");
+        this.downloadLatency = MetricsRegistry.getInstance().commandLatency("DOWNLOAD");
         this.filesDirectory = Paths.get(Constants.FILES_DIRECTORY);
         createFilesDirectory();
+        indexExistingFiles();
+    }
+
+    /**
+     * Seed the search index with files already on disk from earlier runs
+     */
+    private void indexExistingFiles() {
+        if (searchIndex == null) {
+            return;
+        }
+        File[] files = filesDirectory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile()) {
+                    FileInfo fileInfo = new FileInfo(file.getName(), file.length(), "Unknown");
+                    fileInfo.setUploadTime(file.lastModified());
+                    searchIndex.indexFile(fileInfo);
+                }
+            }
+        }
     }
 
     private void createFilesDirectory() {
@@ -28,21 +65,25 @@ public class FileHandler {
                 Files.createDirectories(filesDirectory);
             }
         } catch (IOException e) {
-            System.err.println("[FILE] Error creating files directory: " + e.getMessage());
+            log.error("Error creating files directory: {}", e.getMessage());
         }
     }
 
     public void handleRequest(Socket socket, DataInputStream in, DataOutputStream out) {
         try {
             String command = in.readUTF();
-            System.out.println("[FILE] Command: " + command);
+            log.debug("Command: {}", command);
 
             switch (command) {
                 case "UPLOAD":
+                    long uploadStart = System.nanoTime();
                     handleUpload(in, out);
+                    uploadLatency.recordSince(uploadStart);
                     break;
                 case "DOWNLOAD":
+                    long downloadStart = System.nanoTime();
                     handleDownload(in, out);
+                    downloadLatency.recordSince(downloadStart);
                     break;
                 case "LIST":
                     handleList(out);
@@ -50,18 +91,26 @@ public class FileHandler {
             }
 
         } catch (IOException e) {
-            System.err.println("[FILE] Handler error: " + e.getMessage());
+            log.error("Handler error: {}", e.getMessage());
         }
     }
 
     private void handleUpload(DataInputStream in, DataOutputStream out) throws IOException {
         String fileName = in.readUTF();
-        String uploader = in.readUTF();
+        String uploader = sessionTokens.verify(in.readUTF());
         long fileSize = in.readLong();
 
+        if (uploader == null) {
+            // Refuse before reading the body; the client sees the reply or a reset
+            log.warn("Upload of {} rejected: invalid or expired session token", fileName);
+            out.writeUTF("UNAUTHORIZED");
+            out.flush();
+            return;
+        }
+
         // Notification
         if (notificationServer != null) {
-            notificationServer.sendNotification(fileName + " is uploaded by " + uploader);
+            notificationServer.notifyNewFile(fileName, uploader);
         }
 
         File file = filesDirectory.resolve(fileName).toFile();
@@ -80,13 +129,16 @@ public class FileHandler {
             }
 
             bos.flush();
-            System.out.println("[FILE] Uploaded: " + fileName + " by " + uploader +
-                    " (" + fileSize + " bytes)");
+            log.info("Uploaded: {} by {} ({} bytes)", fileName, uploader, fileSize);
+
+            if (searchIndex != null) {
+                searchIndex.indexFile(new FileInfo(fileName, fileSize, uploader));
+            }
 
             out.writeUTF("SUCCESS");
             out.flush();
         } catch (IOException e) {
-            System.err.println("[FILE] Upload error: " + e.getMessage());
+            log.error("Upload error: {}", e.getMessage());
             out.writeUTF("ERROR");
             out.flush();
         }
@@ -110,7 +162,8 @@ public class FileHandler {
         try (FileInputStream fis = new FileInputStream(file);
                 BufferedInputStream bis = new BufferedInputStream(fis)) {
 
-            byte[] buffer = new byte[Constants.BUFFER_SIZE];
+            // Chunks larger than out's buffer bypass it; with TLS each becomes one full record
+            byte[] buffer = new byte[Tls.isEnabled() ? Constants.TLS_RECORD_SIZE : Constants.BUFFER_SIZE];
             int bytesRead;
 
             while ((bytesRead = bis.read(buffer)) != -1) {
@@ -118,7 +171,7 @@ public class FileHandler {
             }
 
             out.flush();
-            System.out.println("[FILE] Downloaded: " + fileName);
+            log.info("Downloaded: {}", fileName);
         }
     }
 
@@ -0,0 +1,63 @@
+package com.netQuiz.server.handlers;
+
+import com.netQuiz.shared.Quiz;
+
+import java.util.List;
+
+/**
+ * A change to the quizzes one node holds, as published to the replicas on
+ * other nodes. A snapshot replaces the replica's copy outright; a delta with
+ * no changes only advances the watermark.
+ *
+ * Versions come from the primary's clock (milliseconds, bumped to stay
+ * unique), so they keep increasing across restarts and are roughly
+ * comparable between nodes.
+ */
+public class QuizDelta {
+    private final boolean snapshot;
+    private final long previousVersion;
+    private final long version;
+    private final long watermark;
+    private final List<Quiz> upserts;
+    private final List<String> removed;
+
+    public QuizDelta(boolean snapshot, long previousVersion, long version, long watermark,
+                     List<Quiz> upserts, List<String> removed) {
+        this.snapshot = snapshot;
+        this.previousVersion = previousVersion;
+        this.version = version;
+        this.watermark = watermark;
+        this.upserts = upserts;
+        this.removed = removed;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Version the replica must already be at for this delta to apply
+     */
+    public long getPreviousVersion() {
+        return previousVersion;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Primary's clock when sent: a replica that applied this is current up to here
+     */
+    public long getWatermark() {
+        return watermark;
+    }
+
+    public List<Quiz> getUpserts() {
+        return upserts;
+    }
+
+    public List<String> getRemoved() {
+        return removed;
+    }
+}
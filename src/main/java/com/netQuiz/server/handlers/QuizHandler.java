@@ -1,29 +1,75 @@
 package com.netQuiz.server.handlers;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
+import com.netQuiz.server.auth.SessionTokens;
+import com.netQuiz.server.logging.Logger;
+import com.netQuiz.server.metrics.LatencyHistogram;
+import com.netQuiz.server.metrics.MetricsRegistry;
 import com.netQuiz.server.notification.NotificationServer;
 import com.netQuiz.shared.Constants;
 import com.netQuiz.shared.Quiz;
+import com.netQuiz.shared.Tls;
 
 import java.io.*;
+import java.lang.reflect.Type;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class QuizHandler {
+    private static final Logger log = Logger.get("QUIZ");
+
+    private static final String FORWARDED = "FORWARDED";
+    private static final String IMPORT_SHARD = "IMPORT_SHARD";
+    private static final String UNKNOWN_QUIZ = "";
+    private static final Type SCORES_TYPE = new TypeToken<Map<String, Integer>>() {
+    }.getType();
+
     private Map<String, Quiz> quizzes;
-    private Map<String, Integer> scores;
+    // quizId -> (userId -> score), so a quiz's scores move with it between nodes
+    private Map<String, Map<String, Integer>> scores;
+    private Set<String> handedOff;
+    private volatile QuizPlacement placement;
+    private final Object rebalanceLock = new Object();
+    // Read-only copies of the quizzes held by other nodes, by node ID
+    private Map<String, QuizReplica> replicas;
+    private volatile QuizReplication replication;
+    private final Object versionLock = new Object();
+    private long shardVersion;
+    private volatile long clock;
     private Gson gson;
     private NotificationServer notificationServer;
+    private SessionTokens sessionTokens;
+    private LatencyHistogram getQuizLatency;
+    private LatencyHistogram submitLatency;
 
-    public QuizHandler(NotificationServer notificationServer) {
+    public QuizHandler(NotificationServer notificationServer, SessionTokens sessionTokens) {
         this.notificationServer = notificationServer;
+        this.sessionTokens = sessionTokens;
+        this.getQuizLatency = MetricsRegistry.getInstance().commandLatency("GET_QUIZ");
+        this.submitLatency = MetricsRegistry.getInstance().commandLatency("SUBMIT_ANSWERS");
         this.quizzes = new ConcurrentHashMap<>();
         this.scores = new ConcurrentHashMap<>();
+        this.handedOff = ConcurrentHashMap.newKeySet();
+        this.replicas = new ConcurrentHashMap<>();
         this.gson = new Gson();
         initializeQuizzes();
+        // Save after loading, so quizzes taken over from other nodes survive a restart
         loadQuizzes();
+        saveQuizzes();
+        loadScores();
+        synchronized (versionLock) {
+            shardVersion = tick();
+        }
     }
 
     private void initializeQuizzes() {
@@ -48,15 +94,13 @@ public class QuizHandler {
 
         quizzes.put("QUIZ001", new Quiz("QUIZ001", "General Knowledge Quiz", questions1));
         quizzes.put("QUIZ002", new Quiz("QUIZ002", "Basic Quiz", questions2));
-
-        saveQuizzes();
     }
 
-    private void saveQuizzes() {
+    private synchronized void saveQuizzes() {
         try (FileWriter writer = new FileWriter(Constants.QUIZZES_FILE)) {
             gson.toJson(quizzes, writer);
         } catch (IOException e) {
-            System.err.println("[QUIZ] Error saving quizzes: " + e.getMessage());
+            log.error("Error saving quizzes: {}", e.getMessage());
         }
     }
 
@@ -71,68 +115,553 @@ public class QuizHandler {
                     quizzes.putAll(loadedQuizzes);
                 }
             } catch (IOException e) {
-                System.err.println("[QUIZ] Error loading quizzes: " + e.getMessage());
+                log.error("Error loading quizzes: {}", e.getMessage());
             }
         }
     }
 
+    private void loadScores() {
+        Map<String, Map<String, Integer>> saved = readScoresFile();
+        if (!saved.isEmpty()) {
+            mergeScores(saved);
+            log.info("Restored scores for {} quizzes", saved.size());
+        }
+    }
+
+    private Map<String, Map<String, Integer>> readScoresFile() {
+        Map<String, Map<String, Integer>> saved = new HashMap<>();
+        File file = new File(Constants.SCORES_FILE);
+        if (file.exists()) {
+            try (FileReader reader = new FileReader(file)) {
+                JsonElement root = JsonParser.parseReader(reader);
+                if (root.isJsonObject()) {
+                    for (Map.Entry<String, JsonElement> entry : root.getAsJsonObject().entrySet()) {
+                        if (entry.getValue().isJsonObject()) {
+                            saved.put(entry.getKey(), gson.fromJson(entry.getValue(), SCORES_TYPE));
+                        } else {
+                            // Older files were userId -> score with no quiz
+                            saved.computeIfAbsent(UNKNOWN_QUIZ, id -> new HashMap<>())
+                                    .put(entry.getKey(), entry.getValue().getAsInt());
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Error loading scores: {}", e.getMessage());
+            }
+        }
+        return saved;
+    }
+
+    private void mergeScores(Map<String, Map<String, Integer>> more) {
+        for (Map.Entry<String, Map<String, Integer>> entry : more.entrySet()) {
+            scores.computeIfAbsent(entry.getKey(), id -> new ConcurrentHashMap<>()).putAll(entry.getValue());
+        }
+    }
+
+    /**
+     * Write scores to disk, merged over what is there: during a hot restart
+     * the old and new process both flush, and neither may lose the other's.
+     * Quizzes handed to another node are dropped from the file.
+     */
+    public synchronized void flushScores() {
+        Map<String, Map<String, Integer>> merged = readScoresFile();
+        merged.keySet().removeAll(handedOff);
+        for (Map.Entry<String, Map<String, Integer>> entry : scores.entrySet()) {
+            merged.computeIfAbsent(entry.getKey(), id -> new HashMap<>()).putAll(entry.getValue());
+        }
+        Path target = Paths.get(Constants.SCORES_FILE);
+        Path temp = Paths.get(Constants.SCORES_FILE + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp)) {
+            gson.toJson(merged, writer);
+        } catch (IOException e) {
+            log.error("Error saving scores: {}", e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Saved scores for {} quizzes", merged.size());
+        } catch (IOException e) {
+            log.error("Error saving scores: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Shard quizzes across a cluster. Until this is set every quiz is local.
+     */
+    public void setPlacement(QuizPlacement placement) {
+        this.placement = placement;
+    }
+
+    /**
+     * Publish changes to the quizzes held here to replicas on other nodes
+     */
+    public void setReplication(QuizReplication replication) {
+        this.replication = replication;
+    }
+
     public void handleRequest(Socket socket, DataInputStream in, DataOutputStream out) {
         try {
             String command = in.readUTF();
-            System.out.println("[QUIZ] Command: " + command);
+            // Requests forwarded by another node are answered from local state only.
+            // They arrive on the client port, so the sender must first prove it is a node.
+            boolean forwarded = FORWARDED.equals(command);
+            if (forwarded) {
+                QuizPlacement current = placement;
+                if (current == null || !current.verifyForwarder(in, out)) {
+                    log.warn("Forwarded quiz request from {} rejected: not a cluster node", socket.getInetAddress());
+                    return;
+                }
+                command = in.readUTF();
+            }
+            log.debug("Command: {}", command);
 
             switch (command) {
                 case "LIST_QUIZZES":
-                    sendQuizList(out);
+                    // Other nodes' quizzes come from the local replicas, which may lag slightly
+                    sendQuizList(out, quizTitles(!forwarded, false));
+                    break;
+                case "LIST_QUIZZES_AT":
+                    long minListVersion = in.readLong();
+                    long listVersion = readVersion();
+                    boolean replicasCurrent = listVersion >= minListVersion;
+                    if (!replicasCurrent) {
+                        // Every node answers for its own quizzes as of now
+                        listVersion = Math.max(clock, minListVersion);
+                    }
+                    Map<String, String> titles = quizTitles(true, !replicasCurrent);
+                    out.writeLong(listVersion);
+                    sendQuizList(out, titles);
                     break;
                 case "GET_QUIZ":
+                case "GET_QUIZ_AT":
+                    long getStart = System.nanoTime();
                     String quizId = in.readUTF();
-                    sendQuiz(quizId, out);
+                    long minVersion = command.equals("GET_QUIZ_AT") ? in.readLong() : 0;
+                    VersionedQuiz result = forwarded ? new VersionedQuiz(clock, quizzes.get(quizId))
+                            : findQuiz(quizId, minVersion);
+                    if (command.equals("GET_QUIZ_AT")) {
+                        out.writeLong(result.version);
+                    }
+                    new ObjectOutputStream(out).writeObject(result.quiz);
+                    out.flush();
+                    getQuizLatency.recordSince(getStart);
                     break;
                 case "SUBMIT_ANSWERS":
-                    String userId = in.readUTF();
+                    long submitStart = System.nanoTime();
+                    String token = in.readUTF();
                     String submittedQuizId = in.readUTF();
+
+                    // The score is filed under the user the token was signed for. Checked
+                    // before the answers are deserialized, so strangers never reach readObject.
+                    String userId = sessionTokens.verify(token);
+                    if (userId == null) {
+                        log.warn("SUBMIT_ANSWERS {} rejected: invalid or expired session token", submittedQuizId);
+                        out.writeInt(Constants.SCORE_UNAUTHORIZED);
+                        out.flush();
+                        break;
+                    }
+
                     // Read answers - ObjectInputStream reads from same underlying stream
                     ObjectInputStream ois = new ObjectInputStream(in);
                     int[] answers = (int[]) ois.readObject();
-                    int score = calculateScore(submittedQuizId, answers);
 
-                    // Notification
-                    if (notificationServer != null) {
-                        notificationServer.sendNotification("QUIZ: " + submittedQuizId + "Score: " + score);
-                    }
+                    // A quiz still held here is scored here; its scores travel with it on rebalance
+                    InetSocketAddress submitOwner = forwarded || quizzes.containsKey(submittedQuizId)
+                            ? null : ownerOf(submittedQuizId);
+                    Integer forwardedScore = submitOwner == null ? null
+                            : forwardSubmit(submitOwner, token, submittedQuizId, answers);
+                    int score;
+                    if (forwardedScore != null) {
+                        score = forwardedScore;
+                    } else {
+                        // The owner could not be asked, or the ring has just moved the quiz here
+                        // ahead of its shard; the replica is then the copy to score against
+                        Quiz submittedQuiz = quizzes.get(submittedQuizId);
+                        if (submittedQuiz == null) {
+                            submittedQuiz = replicaQuiz(submittedQuizId);
+                        }
+                        if (submittedQuiz == null) {
+                            // Never file a 0 for a quiz this node cannot see
+                            log.warn("SUBMIT_ANSWERS {} from {} refused: quiz not available here", submittedQuizId,
+                                    userId);
+                            out.writeInt(Constants.SCORE_UNAVAILABLE);
+                            out.flush();
+                            break;
+                        }
+                        score = score(submittedQuiz, answers);
 
-                    scores.put(userId, score);
+                        // Notification
+                        if (notificationServer != null) {
+                            notificationServer.notifyQuizResult(submittedQuizId, userId, score);
+                        }
+
+                        scores.computeIfAbsent(submittedQuizId, id -> new ConcurrentHashMap<>()).put(userId, score);
+                        log.info("User {} scored {}", userId, score);
+                    }
                     out.writeInt(score);
                     out.flush();
-                    System.out.println("[QUIZ] User " + userId + " scored " + score);
+                    submitLatency.recordSince(submitStart);
+                    break;
+                case IMPORT_SHARD:
+                    if (!forwarded) {
+                        log.warn("IMPORT_SHARD from {} rejected: not forwarded by a node", socket.getInetAddress());
+                        break;
+                    }
+                    importShard(in, out);
                     break;
             }
         } catch (IOException | ClassNotFoundException e) {
-            System.err.println("[QUIZ] Handler error: " + e.getMessage());
+            log.error("Handler error: {}", e.getMessage());
         }
     }
 
-    private void sendQuizList(DataOutputStream out) throws IOException {
-        List<String> quizTitles = new ArrayList<>();
+    /**
+     * ID to "id:title" for this node's quizzes, plus either the replicas or
+     * (when they are too stale) a fresh list from every other node
+     */
+    private Map<String, String> quizTitles(boolean wholeCluster, boolean fromPrimaries) {
+        Map<String, String> titles = new TreeMap<>();
         for (Quiz quiz : quizzes.values()) {
-            quizTitles.add(quiz.getId() + ":" + quiz.getTitle());
+            titles.put(quiz.getId(), quiz.getId() + ":" + quiz.getTitle());
         }
-        new ObjectOutputStream(out).writeObject(quizTitles);
+        if (!wholeCluster) {
+            return titles;
+        }
+        QuizPlacement current = placement;
+        if (fromPrimaries && current != null) {
+            for (InetSocketAddress peer : current.peers()) {
+                for (String entry : forwardListQuizzes(peer)) {
+                    titles.putIfAbsent(entry.substring(0, Math.max(entry.indexOf(':'), 0)), entry);
+                }
+            }
+        } else {
+            for (QuizReplica replica : replicas.values()) {
+                for (Quiz quiz : replica.getQuizzes()) {
+                    titles.putIfAbsent(quiz.getId(), quiz.getId() + ":" + quiz.getTitle());
+                }
+            }
+        }
+        return titles;
+    }
+
+    private void sendQuizList(DataOutputStream out, Map<String, String> titles) throws IOException {
+        new ObjectOutputStream(out).writeObject(new ArrayList<>(titles.values()));
         out.flush();
     }
 
-    private void sendQuiz(String quizId, DataOutputStream out) throws IOException {
+    /**
+     * A quiz held here, else a replica's copy if the replicas are at least
+     * minVersion, else the owner's copy
+     */
+    private VersionedQuiz findQuiz(String quizId, long minVersion) {
         Quiz quiz = quizzes.get(quizId);
-        new ObjectOutputStream(out).writeObject(quiz);
+        if (quiz != null) {
+            return new VersionedQuiz(clock, quiz);
+        }
+        long replicaVersion = readVersion();
+        Quiz replicated = replicaQuiz(quizId);
+        if (replicaVersion >= minVersion && replicated != null) {
+            return new VersionedQuiz(replicaVersion, replicated);
+        }
+        InetSocketAddress owner = ownerOf(quizId);
+        VersionedQuiz fromOwner = owner == null ? null : forwardGetQuiz(owner, quizId, minVersion);
+        if (fromOwner != null) {
+            return fromOwner;
+        }
+        // Owner unreachable: the replica is the best we have, and its version says how old it is
+        return new VersionedQuiz(owner == null ? clock : replicaVersion, replicated);
+    }
+
+    private Quiz replicaQuiz(String quizId) {
+        for (QuizReplica replica : replicas.values()) {
+            Quiz quiz = replica.get(quizId);
+            if (quiz != null) {
+                return quiz;
+            }
+        }
+        return null;
+    }
+
+    private static class VersionedQuiz {
+        final long version;
+        final Quiz quiz;
+
+        VersionedQuiz(long version, Quiz quiz) {
+            this.version = version;
+            this.quiz = quiz;
+        }
+    }
+
+    private InetSocketAddress ownerOf(String quizId) {
+        QuizPlacement current = placement;
+        return current == null ? null : current.ownerOf(quizId);
+    }
+
+    // ---- Forwarding to the owning node ----
+
+    private Socket connect(InetSocketAddress node, String command) throws IOException {
+        Socket socket = Tls.connect(node, Constants.CLUSTER_FORWARD_TIMEOUT_MS);
+        try {
+            socket.setSoTimeout(Constants.CLUSTER_FORWARD_TIMEOUT_MS);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeUTF(Constants.QUIZ_REQUEST);
+            out.writeUTF(FORWARDED);
+            QuizPlacement current = placement;
+            if (current == null) {
+                throw new IOException("Not in a cluster");
+            }
+            current.authenticate(new DataInputStream(socket.getInputStream()), out);
+            out.writeUTF(command);
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The quiz from its owner, or null when the owner cannot be reached
+     */
+    private VersionedQuiz forwardGetQuiz(InetSocketAddress owner, String quizId, long minVersion) {
+        try (Socket socket = connect(owner, "GET_QUIZ_AT")) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeUTF(quizId);
+            out.writeLong(minVersion);
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            long version = in.readLong();
+            return new VersionedQuiz(version, (Quiz) new ObjectInputStream(in).readObject());
+        } catch (IOException | ClassNotFoundException e) {
+            log.warn("GET_QUIZ {} could not reach {}: {}", quizId, owner, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The owner's score, or null to score locally because the owner cannot be reached
+     */
+    private Integer forwardSubmit(InetSocketAddress owner, String token, String quizId, int[] answers) {
+        try (Socket socket = connect(owner, "SUBMIT_ANSWERS")) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            // The owner checks the token again rather than trusting this node
+            out.writeUTF(token);
+            out.writeUTF(quizId);
+            ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeObject(answers);
+            oos.flush();
+            return new DataInputStream(socket.getInputStream()).readInt();
+        } catch (IOException e) {
+            log.warn("SUBMIT_ANSWERS {} could not reach {}: {}", quizId, owner, e.getMessage());
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> forwardListQuizzes(InetSocketAddress peer) {
+        try (Socket socket = connect(peer, "LIST_QUIZZES")) {
+            socket.getOutputStream().flush();
+            return (List<String>) new ObjectInputStream(socket.getInputStream()).readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            log.warn("LIST_QUIZZES could not reach {}: {}", peer, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    // ---- Rebalancing ----
+
+    /**
+     * Hand every local quiz that the ring now places on another node, with
+     * its scores, to that node. Called whenever cluster membership changes.
+     * A quiz whose transfer fails stays here and is retried on the next change.
+     */
+    public void rebalance() {
+        if (placement == null) {
+            return;
+        }
+        // Not the handler lock: two nodes rebalancing towards each other must still accept imports
+        synchronized (rebalanceLock) {
+            moveShards();
+        }
+    }
+
+    private void moveShards() {
+        Map<InetSocketAddress, Shard> moves = new HashMap<>();
+        for (Quiz quiz : quizzes.values()) {
+            InetSocketAddress owner = ownerOf(quiz.getId());
+            if (owner != null) {
+                Shard shard = moves.computeIfAbsent(owner, node -> new Shard());
+                shard.quizzes.put(quiz.getId(), quiz);
+                Map<String, Integer> quizScores = scores.get(quiz.getId());
+                if (quizScores != null) {
+                    shard.scores.put(quiz.getId(), new HashMap<>(quizScores));
+                }
+            }
+        }
+        if (moves.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<InetSocketAddress, Shard> move : moves.entrySet()) {
+            Shard shard = move.getValue();
+            if (sendShard(move.getKey(), shard)) {
+                commit(Collections.emptyList(), new ArrayList<>(shard.quizzes.keySet()));
+                for (String quizId : shard.quizzes.keySet()) {
+                    scores.remove(quizId);
+                    handedOff.add(quizId);
+                }
+                log.info("Moved {} quizzes to {}", shard.quizzes.size(), move.getKey());
+            }
+        }
+        saveQuizzes();
+    }
+
+    private boolean sendShard(InetSocketAddress owner, Shard shard) {
+        try (Socket socket = connect(owner, IMPORT_SHARD)) {
+            byte[] json = gson.toJson(shard).getBytes(StandardCharsets.UTF_8);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(json.length);
+            out.write(json);
+            out.flush();
+            return new DataInputStream(socket.getInputStream()).readBoolean();
+        } catch (IOException e) {
+            log.warn("Could not move {} quizzes to {}: {}", shard.quizzes.size(), owner, e.getMessage());
+            return false;
+        }
+    }
+
+    private void importShard(DataInputStream in, DataOutputStream out) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > Constants.CLUSTER_MAX_SHARD_BYTES) {
+            throw new IOException("Shard of " + length + " bytes refused");
+        }
+        byte[] json = new byte[length];
+        in.readFully(json);
+        Shard shard = gson.fromJson(new String(json, StandardCharsets.UTF_8), Shard.class);
+        synchronized (versionLock) {
+            List<Quiz> added = new ArrayList<>();
+            for (Quiz quiz : shard.quizzes.values()) {
+                if (!quizzes.containsKey(quiz.getId())) {
+                    added.add(quiz);
+                }
+                handedOff.remove(quiz.getId());
+            }
+            commit(added, Collections.emptyList());
+        }
+        mergeScores(shard.scores);
+        saveQuizzes();
+        out.writeBoolean(true);
         out.flush();
+        log.info("Took over {} quizzes", shard.quizzes.size());
+    }
+
+    /**
+     * Quizzes and their scores in transit between nodes
+     */
+    private static class Shard {
+        Map<String, Quiz> quizzes = new HashMap<>();
+        Map<String, Map<String, Integer>> scores = new HashMap<>();
+    }
+
+    // ---- Replication ----
+
+    // Caller holds versionLock
+    private long tick() {
+        clock = Math.max(System.currentTimeMillis(), clock + 1);
+        return clock;
+    }
+
+    /**
+     * Change the quizzes held here and publish the change to the replicas
+     */
+    private void commit(List<Quiz> upserts, List<String> removed) {
+        synchronized (versionLock) {
+            for (Quiz quiz : upserts) {
+                quizzes.put(quiz.getId(), quiz);
+            }
+            for (String quizId : removed) {
+                quizzes.remove(quizId);
+            }
+            long previous = shardVersion;
+            shardVersion = tick();
+            QuizReplication current = replication;
+            if (current != null) {
+                current.publish(new QuizDelta(false, previous, shardVersion, shardVersion, upserts, removed));
+            }
+        }
+    }
+
+    /**
+     * Everything held here, for a replica that is new or has missed a delta
+     */
+    public QuizDelta snapshot() {
+        synchronized (versionLock) {
+            return new QuizDelta(true, 0, shardVersion, tick(), new ArrayList<>(quizzes.values()),
+                    Collections.emptyList());
+        }
+    }
+
+    /**
+     * No changes since the last delta; lets replicas advance their watermark
+     */
+    public QuizDelta watermark() {
+        synchronized (versionLock) {
+            return new QuizDelta(false, shardVersion, shardVersion, tick(), Collections.emptyList(),
+                    Collections.emptyList());
+        }
+    }
+
+    public void receiveDelta(String node, QuizDelta delta) {
+        synchronized (versionLock) {
+            // Keep our clock ahead of every node we have heard from, so versions compare across nodes
+            clock = Math.max(clock, delta.getWatermark());
+        }
+        QuizReplica replica = replicas.computeIfAbsent(node, id -> new QuizReplica());
+        QuizReplication current = replication;
+        if (replica.apply(delta) == QuizReplica.Result.GAP && current != null) {
+            log.debug("Missed a quiz delta from {}, requesting a snapshot", node);
+            current.requestSnapshot(node);
+        }
+    }
+
+    public void replicaConnected(String node) {
+        replicas.computeIfAbsent(node, id -> new QuizReplica()).setConnected(true);
+    }
+
+    /**
+     * The node's quizzes stay readable; they just stop counting towards the read version
+     */
+    public void replicaLost(String node) {
+        QuizReplica replica = replicas.get(node);
+        if (replica != null) {
+            replica.setConnected(false);
+        }
     }
 
-    private int calculateScore(String quizId, int[] answers) {
+    /**
+     * Version up to which the replicas of every connected node are known current
+     */
+    public long readVersion() {
+        long version = clock;
+        for (QuizReplica replica : replicas.values()) {
+            if (replica.isConnected()) {
+                version = Math.min(version, replica.getWatermark());
+            }
+        }
+        return version;
+    }
+
+    public long getReplicaLagMs() {
+        return Math.max(0, System.currentTimeMillis() - readVersion());
+    }
+
+    // Package-private for the scoring benchmark
+    int calculateScore(String quizId, int[] answers) {
         Quiz quiz = quizzes.get(quizId);
         if (quiz == null)
             return 0;
+        return score(quiz, answers);
+    }
 
+    private static int score(Quiz quiz, int[] answers) {
         int score = 0;
         List<Quiz.Question> questions = quiz.getQuestions();
         for (int i = 0; i < Math.min(answers.length, questions.size()); i++) {
@@ -0,0 +1,39 @@
+package com.netQuiz.server.handlers;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * Which node holds each quiz and its scores when running as a cluster.
+ * Requests for a quiz held elsewhere are forwarded over that node's
+ * client port, after the forwarding node has proved it is in the cluster.
+ */
+public interface QuizPlacement {
+
+    /**
+     * Client address of the node that owns the quiz; null for this node
+     */
+    InetSocketAddress ownerOf(String quizId);
+
+    /**
+     * Client addresses of the other live nodes
+     */
+    List<InetSocketAddress> peers();
+
+    /**
+     * Prove to the node at the other end that this one is in the cluster
+     *
+     * @throws IOException if the handshake fails or the other end is not in the cluster
+     */
+    void authenticate(DataInputStream in, DataOutputStream out) throws IOException;
+
+    /**
+     * Check that the node forwarding a request is in the cluster
+     *
+     * @return false if it could not prove it
+     */
+    boolean verifyForwarder(DataInputStream in, DataOutputStream out) throws IOException;
+}
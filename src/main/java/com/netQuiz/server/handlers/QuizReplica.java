@@ -0,0 +1,68 @@
+package com.netQuiz.server.handlers;
+
+import com.netQuiz.shared.Quiz;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only copy of the quizzes held by one other node. Kept while that
+ * node is down, so its quizzes can still be listed and read.
+ */
+class QuizReplica {
+    enum Result { APPLIED, STALE, GAP }
+
+    // Replaced whole on each change; deltas are rare and reads never lock
+    private volatile Map<String, Quiz> quizzes = new HashMap<>();
+    private long version;
+    private volatile long watermark;
+    private volatile boolean connected;
+
+    synchronized Result apply(QuizDelta delta) {
+        Map<String, Quiz> next;
+        if (delta.isSnapshot()) {
+            next = new HashMap<>();
+        } else if (delta.getVersion() == version) {
+            // Nothing changed since the last delta
+            watermark = Math.max(watermark, delta.getWatermark());
+            return Result.STALE;
+        } else if (delta.getVersion() < version) {
+            return Result.STALE;
+        } else if (delta.getPreviousVersion() != version) {
+            return Result.GAP;
+        } else {
+            next = new HashMap<>(quizzes);
+        }
+        for (Quiz quiz : delta.getUpserts()) {
+            next.put(quiz.getId(), quiz);
+        }
+        for (String quizId : delta.getRemoved()) {
+            next.remove(quizId);
+        }
+        quizzes = next;
+        version = delta.getVersion();
+        watermark = delta.getWatermark();
+        return Result.APPLIED;
+    }
+
+    Quiz get(String quizId) {
+        return quizzes.get(quizId);
+    }
+
+    Collection<Quiz> getQuizzes() {
+        return quizzes.values();
+    }
+
+    long getWatermark() {
+        return watermark;
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    void setConnected(boolean connected) {
+        this.connected = connected;
+    }
+}
@@ -0,0 +1,18 @@
+package com.netQuiz.server.handlers;
+
+/**
+ * Where a node sends changes to the quizzes it holds. Replicas on other
+ * nodes apply them through QuizHandler.receiveDelta.
+ */
+public interface QuizReplication {
+
+    /**
+     * A change, snapshot or watermark for every other node, in version order
+     */
+    void publish(QuizDelta delta);
+
+    /**
+     * Ask a node for a full snapshot after missing one of its deltas
+     */
+    void requestSnapshot(String node);
+}
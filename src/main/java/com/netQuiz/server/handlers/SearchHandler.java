@@ -0,0 +1,61 @@
+package com.netQuiz.server.handlers;
+
+import com.netQuiz.server.logging.Logger;
+import com.netQuiz.server.search.SearchIndex;
+import com.netQuiz.shared.SearchHit;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * Serves full-text queries over chat history and shared files
+ */
+public class SearchHandler {
+    private static final Logger log = Logger.get("SEARCH");
+
+    private static final int MAX_RESULTS = 100;
+
+    private SearchIndex searchIndex;
+
+    public SearchHandler(SearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    public void handleRequest(Socket socket, DataInputStream in, DataOutputStream out) {
+        try {
+            String command = in.readUTF();
+            log.debug("Command: {}", command);
+
+            switch (command) {
+                case "QUERY":
+                    String query = in.readUTF();
+                    int limit = Math.max(0, Math.min(in.readInt(), MAX_RESULTS));
+                    handleQuery(query, limit, out);
+                    break;
+            }
+
+        } catch (IOException e) {
+            log.error("Handler error: {}", e.getMessage());
+        }
+    }
+
+    private void handleQuery(String query, int limit, DataOutputStream out) throws IOException {
+        long start = System.nanoTime();
+        List<SearchHit> hits = searchIndex.search(query, limit);
+        long elapsedMicros = (System.nanoTime() - start) / 1000;
+
+        out.writeInt(hits.size());
+        for (SearchHit hit : hits) {
+            out.writeUTF(hit.getType().name());
+            out.writeUTF(hit.getTitle());
+            out.writeUTF(hit.getText());
+            out.writeLong(hit.getTimestamp());
+            out.writeFloat(hit.getScore());
+        }
+        out.flush();
+        if (log.isDebugEnabled()) {
+            log.debug("\"{}\" -> {} hits in {} us", query, hits.size(), elapsedMicros);
+        }
+    }
+}
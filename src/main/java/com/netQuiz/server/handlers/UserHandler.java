@@ -1,31 +1,56 @@
 package com.netQuiz.server.handlers;
 
+import com.netQuiz.server.auth.Authenticator;
+import com.netQuiz.server.auth.CredentialStore;
+import com.netQuiz.server.logging.Logger;
+import com.netQuiz.server.messaging.ChatEvent;
+import com.netQuiz.server.messaging.ChatTransport;
+import com.netQuiz.server.messaging.IdleTimerWheel;
+import com.netQuiz.server.messaging.MessagingEngine;
+import com.netQuiz.server.messaging.PresenceUpdate;
+import com.netQuiz.server.metrics.LatencyHistogram;
+import com.netQuiz.server.metrics.MetricsRegistry;
+import com.netQuiz.server.notification.NotificationServer;
+import com.netQuiz.server.notification.NotificationSubscriber;
+import com.netQuiz.shared.NotificationTopic;
+
 import java.io.*;
 import java.net.Socket;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Member 4 – User Management Handler
  * Handles user login/logout, presence tracking, and chat messaging
  * Phase 2: Enhanced with private messaging and chat features
+ * Presence and message fan-out are delegated to the shared MessagingEngine
  */
 public class UserHandler implements Runnable {
-    private Map<String, UserConnection> onlineUsers;
-    private Map<Socket, String> socketToUsername;
-    private boolean running;
+    private static final Logger log = Logger.get("USER");
+    private static final Logger privateLog = Logger.get("PRIVATE");
+    private static final Logger chatLog = Logger.get("CHAT");
 
-    public UserHandler() {
-        this.onlineUsers = new ConcurrentHashMap<>();
-        this.socketToUsername = new ConcurrentHashMap<>();
+    private boolean running;
+    private MessagingEngine messagingEngine;
+    private NotificationServer notificationServer;
+    private LatencyHistogram loginLatency;
+    private IdleTimerWheel idleReaper;
+    private Authenticator authenticator;
+
+    public UserHandler(MessagingEngine messagingEngine, NotificationServer notificationServer,
+                       IdleTimerWheel idleReaper, Authenticator authenticator) {
+        this.messagingEngine = messagingEngine;
+        this.notificationServer = notificationServer;
+        this.idleReaper = idleReaper;
+        this.authenticator = authenticator;
+        this.loginLatency = MetricsRegistry.getInstance().commandLatency("LOGIN");
         this.running = false;
     }
 
     @Override
     public void run() {
         running = true;
-        System.out.println("[USER] Service started with Phase 2 chat features");
-        System.out.println("[USER] Features: Private messaging, user list, join/leave notifications");
+        log.info("Service started with Phase 2 chat features");
+        log.info("Features: Private messaging, user list, join/leave notifications");
 
         while (running) {
             try {
@@ -42,81 +67,154 @@ public class UserHandler implements Runnable {
     public void handleRequest(Socket socket, DataInputStream in, DataOutputStream out) {
         try {
             String command = in.readUTF();
-            System.out.println("[USER] Command received: " + command);
+            log.debug("Command received: {}", command);
 
             switch (command) {
                 case "LOGIN":
+                    // Latency is recorded when the password check completes
                     handleLogin(socket, in, out);
                     break;
+                case "LOGIN_TOKEN":
+                    long loginStart = System.nanoTime();
+                    handleTokenLogin(socket, in, out);
+                    loginLatency.recordSince(loginStart);
+                    break;
                 case "GET_USERS":
                     sendOnlineUsersList(out);
+                    // One-shot; the socket holds an admission slot until closed
+                    closeSocket(socket);
                     break;
                 case "LOGOUT":
-                    handleLogout(socket);
+                    closeSocket(socket);
                     break;
                 default:
-                    System.out.println("[USER] Unknown command: " + command);
+                    log.warn("Unknown command: {}", command);
+                    closeSocket(socket);
                     break;
             }
 
         } catch (IOException e) {
-            System.err.println("[USER] Request handler error: " + e.getMessage());
-            handleDisconnect(socket);
+            log.error("Request handler error: {}", e.getMessage());
+            closeSocket(socket);
         }
     }
 
     /**
-     * Handle user login with duplicate username check
+     * Handle user login with duplicate username check. The password is
+     * checked on the authenticator's pool, which finishes the login, so this
+     * thread returns as soon as the check is queued.
      */
     private void handleLogin(Socket socket, DataInputStream in, DataOutputStream out) throws IOException {
+        long loginStart = System.nanoTime();
         String username = in.readUTF();
         String password = in.readUTF();
 
-        System.out.println("[USER] Login attempt - Username: " + username);
+        log.debug("Login attempt - Username: {}", username);
+
+        // Check for duplicate username before paying for the hash
+        if (rejectDuplicate(username, socket, out)) {
+            return;
+        }
+
+        boolean queued = authenticator.verify(username, password, result -> {
+            try {
+                if (result == CredentialStore.Result.REJECTED) {
+                    log.info("Login rejected - Wrong password: {}", username);
+                    reject(out, "Invalid username or password.");
+                    closeSocket(socket);
+                } else {
+                    acceptLogin(username, socket, in, out);
+                }
+            } catch (IOException e) {
+                log.warn("Login failed for {}: {}", username, e.getMessage());
+                closeSocket(socket);
+            }
+            loginLatency.recordSince(loginStart);
+        });
+        if (!queued) {
+            reject(out, "Server is busy, please try again shortly.");
+            closeSocket(socket);
+        }
+    }
+
+    /**
+     * Log in again with the token from an earlier login instead of the password
+     */
+    private void handleTokenLogin(Socket socket, DataInputStream in, DataOutputStream out) throws IOException {
+        String token = in.readUTF();
+        String username = authenticator.verifyToken(token);
+        if (username == null) {
+            log.debug("Token login rejected: unknown or expired token");
+            reject(out, "Session expired, please log in again.");
+            closeSocket(socket);
+            return;
+        }
+        if (rejectDuplicate(username, socket, out)) {
+            return;
+        }
+        acceptLogin(username, socket, in, out);
+    }
+
+    /**
+     * Turn the login away and close its socket if the user already has a login session
+     */
+    private boolean rejectDuplicate(String username, Socket socket, DataOutputStream out) throws IOException {
+        if (messagingEngine.hasTransport(username, ChatTransport.Kind.LOGIN)) {
+            log.info("Login rejected - Username already taken: {}", username);
+            reject(out, "Username '" + username + "' is already taken. Please choose another.");
+            closeSocket(socket);
+            return true;
+        }
+        return false;
+    }
+
+    private static void reject(DataOutputStream out, String reason) throws IOException {
+        out.writeBoolean(false);
+        out.writeUTF(reason);
+        out.flush();
+    }
 
-        // Check for duplicate username
-        if (onlineUsers.containsKey(username)) {
-            System.out.println("[USER] Login rejected - Username already taken: " + username);
-            out.writeBoolean(false);
-            out.writeUTF("Username '" + username + "' is already taken. Please choose another.");
-            out.flush();
+    /**
+     * Reply with the welcome message and a fresh session token, then attach
+     */
+    private void acceptLogin(String username, Socket socket, DataInputStream in, DataOutputStream out)
+            throws IOException {
+        // Another login for the name may have finished while the password was being checked
+        if (rejectDuplicate(username, socket, out)) {
             return;
         }
 
         // Accept login
-        System.out.println("[USER] Login successful: " + username);
+        log.info("Login successful: {}", username);
         out.writeBoolean(true);
         out.writeUTF("Welcome to NetQuiz Chat, " + username + "!");
+        out.writeUTF(authenticator.issueToken(username));
         out.flush();
 
-        // Create user connection
-        UserConnection userConn = new UserConnection(username, socket, in, out);
-        onlineUsers.put(username, userConn);
-        socketToUsername.put(socket, username);
-
-        System.out.println("[USER] Total online users: " + onlineUsers.size());
-
-        // Broadcast join notification to all other users
-        broadcastSystemMessage(username + " has joined the chat", username);
+        // Attach to the user's session; the engine announces the join and sends user lists
+        socket.setKeepAlive(true);
+        // Long-lived from here; the idle reaper closes sessions that stop sending heartbeats
+        socket.setSoTimeout(0);
+        // Interned: the session registry and presence frames share this one copy
+        UserConnection userConn = new UserConnection(username.intern(), socket, in, out);
+        userConn.tokenRefreshAt = System.currentTimeMillis() + authenticator.getTokenTtlMs() / 2;
+        messagingEngine.attach(userConn.username, userConn);
+        userConn.idle = idleReaper.register(userConn.username, userConn::close);
 
-        // Send current user list to new user
-        sendUserListToUser(out);
-
-        // Broadcast updated user list to everyone
-        broadcastUserList();
+        log.debug("Total online users: {}", messagingEngine.getOnlineUserCount());
 
         // Start message listener thread for this user
-        startMessageListener(socket, username);
+        startMessageListener(userConn);
     }
 
     /**
      * Start a dedicated thread to listen for messages from this user
      */
-    private void startMessageListener(Socket socket, String username) {
+    private void startMessageListener(UserConnection conn) {
         Thread listenerThread = new Thread(() -> {
-            System.out.println("[USER] Message listener started for: " + username);
-            listenForMessages(socket, username);
-        }, "Listener-" + username);
+            log.debug("Message listener started for: {}", conn.username);
+            listenForMessages(conn);
+        }, "Listener-" + conn.username);
         listenerThread.setDaemon(true);
         listenerThread.start();
     }
@@ -124,31 +222,43 @@ public class UserHandler implements Runnable {
     /**
      * Listen for incoming messages and commands from a user
      */
-    private void listenForMessages(Socket socket, String username) {
-        UserConnection conn = onlineUsers.get(username);
-        if (conn == null) {
-            System.err.println("[USER] Connection not found for: " + username);
-            return;
-        }
+    private void listenForMessages(UserConnection conn) {
+        String username = conn.username;
 
         try {
-            while (running && !socket.isClosed()) {
+            while (running && !conn.socket.isClosed()) {
                 String message = conn.in.readUTF();
+                conn.idle.touch();
 
-                System.out.println("[USER] Received from " + username + ": " + message);
+                log.debug("Received from {}: {}", username, message);
 
-                if (message.equals("LOGOUT")) {
-                    System.out.println("[USER] Logout request from: " + username);
-                    handleLogout(socket);
+                if (message.equals("PING")) {
+                    // Heartbeat; also keeps the session token from running out
+                    refreshToken(conn);
+
+                } else if (message.equals("LOGOUT")) {
+                    log.debug("Logout request from: {}", username);
                     break;
 
+                } else if (message.equals("TYPING")) {
+                    // Typing indicator, coalesced into the next presence delta
+                    messagingEngine.setTyping(username);
+
+                } else if (message.equals("SYNC_PRESENCE")) {
+                    // Client saw a version gap and needs a full snapshot
+                    conn.deliverPresence(messagingEngine.presenceSnapshot());
+
+                } else if (message.startsWith("SUBSCRIBE")) {
+                    // Typed notifications pushed over this connection
+                    handleSubscribe(message, conn);
+
                 } else if (message.startsWith("/msg ")) {
                     // Private message command
-                    handlePrivateMessage(message, username, conn.out);
+                    handlePrivateMessage(message, conn);
 
                 } else if (message.equals("/users")) {
                     // Show user list command
-                    sendUserListToUser(conn.out);
+                    conn.deliverUserList(messagingEngine.getOnlineUsers());
 
                 } else if (message.equals("/help")) {
                     // Help command
@@ -156,45 +266,73 @@ public class UserHandler implements Runnable {
 
                 } else {
                     // Regular chat message - broadcast to all
-                    System.out.println("[CHAT] Broadcasting from " + username + ": " + message);
-                    broadcastChatMessage(username + ": " + message, username);
+                    chatLog.debug("Broadcasting from {}: {}", username, message);
+                    messagingEngine.publish(conn, username, message);
                 }
             }
         } catch (IOException e) {
-            System.err.println("[USER] Listener error for " + username + ": " + e.getMessage());
-            handleDisconnect(socket);
+            log.warn("Listener error for {}: {}", username, e.getMessage());
+        } finally {
+            handleDisconnect(conn);
+        }
+    }
+
+    /**
+     * Send a new session token once the current one is half used, so quiz
+     * and file requests never present an expired one
+     */
+    private void refreshToken(UserConnection conn) {
+        long now = System.currentTimeMillis();
+        if (now < conn.tokenRefreshAt) {
+            return;
         }
+        conn.tokenRefreshAt = now + authenticator.getTokenTtlMs() / 2;
+        sendDirectMessage(conn.out, "SESSION_TOKEN", authenticator.issueToken(conn.username));
     }
 
     /**
      * Handle private message command: /msg username message
      */
-    private void handlePrivateMessage(String command, String sender, DataOutputStream senderOut) {
+    private void handlePrivateMessage(String command, UserConnection sender) {
         String[] parts = command.split(" ", 3);
 
         if (parts.length < 3) {
-            sendDirectMessage(senderOut, "ERROR", "Usage: /msg <username> <message>");
+            sendDirectMessage(sender.out, "ERROR", "Usage: /msg <username> <message>");
             return;
         }
 
         String targetUsername = parts[1];
         String privateMsg = parts[2];
 
-        UserConnection target = onlineUsers.get(targetUsername);
-
-        if (target != null) {
-            // Send to recipient
-            String formattedMsg = "[Private from " + sender + "]: " + privateMsg;
-            sendDirectMessage(target.out, "PRIVATE_MSG", formattedMsg);
-
-            // Confirm to sender
-            String confirmation = "[Private to " + targetUsername + "]: " + privateMsg;
-            sendDirectMessage(senderOut, "PRIVATE_MSG", confirmation);
-
-            System.out.println("[PRIVATE] " + sender + " -> " + targetUsername + ": " + privateMsg);
+        if (messagingEngine.sendPrivate(sender, sender.username, targetUsername, privateMsg)) {
+            if (privateLog.isDebugEnabled()) {
+                privateLog.debug(sender.username + " -> " + targetUsername + ": " + privateMsg);
+            }
         } else {
-            sendDirectMessage(senderOut, "ERROR", "User '" + targetUsername + "' not found");
+            sendDirectMessage(sender.out, "ERROR", "Could not deliver to '" + targetUsername + "': mailbox is full");
+        }
+    }
+
+    /**
+     * Handle SUBSCRIBE [TOPIC,TOPIC...]; no topics unsubscribes
+     */
+    private void handleSubscribe(String command, UserConnection conn) {
+        if (notificationServer == null) {
+            return;
+        }
+        Set<NotificationTopic> topics = EnumSet.noneOf(NotificationTopic.class);
+        String[] parts = command.split(" ", 2);
+        if (parts.length == 2) {
+            for (String name : parts[1].split(",")) {
+                try {
+                    topics.add(NotificationTopic.valueOf(name.trim()));
+                } catch (IllegalArgumentException e) {
+                    sendDirectMessage(conn.out, "ERROR", "Unknown notification topic: " + name.trim());
+                }
+            }
         }
+        notificationServer.subscribe(conn, topics);
+        log.debug("{} subscribed to {}", conn.username, topics);
     }
 
     /**
@@ -212,27 +350,7 @@ public class UserHandler implements Runnable {
                 out.flush();
             }
         } catch (IOException e) {
-            System.err.println("[USER] Error sending help: " + e.getMessage());
-        }
-    }
-
-    /**
-     * Send user list to a specific user
-     */
-    private void sendUserListToUser(DataOutputStream out) {
-        try {
-            List<String> users = new ArrayList<>(onlineUsers.keySet());
-            synchronized (out) {
-                out.writeUTF("USER_LIST");
-                out.writeInt(users.size());
-                for (String user : users) {
-                    out.writeUTF(user);
-                }
-                out.flush();
-            }
-            System.out.println("[USER] Sent user list (" + users.size() + " users)");
-        } catch (IOException e) {
-            System.err.println("[USER] Error sending user list: " + e.getMessage());
+            log.error("Error sending help: {}", e.getMessage());
         }
     }
 
@@ -240,7 +358,7 @@ public class UserHandler implements Runnable {
      * Send online users list (for GET_USERS command)
      */
     private void sendOnlineUsersList(DataOutputStream out) throws IOException {
-        List<String> users = new ArrayList<>(onlineUsers.keySet());
+        List<String> users = messagingEngine.getOnlineUsers();
         out.writeInt(users.size());
         for (String user : users) {
             out.writeUTF(user);
@@ -248,59 +366,10 @@ public class UserHandler implements Runnable {
         out.flush();
     }
 
-    /**
-     * Broadcast chat message to all users except sender
-     */
-    private void broadcastChatMessage(String message, String sender) {
-        int sentCount = 0;
-        for (Map.Entry<String, UserConnection> entry : onlineUsers.entrySet()) {
-            if (!entry.getKey().equals(sender)) {
-                sendDirectMessage(entry.getValue().out, "CHAT_MSG", message);
-                sentCount++;
-            }
-        }
-        System.out.println("[CHAT] Broadcast to " + sentCount + " users");
-    }
-
-    /**
-     * Broadcast system message (join/leave notifications)
-     */
-    private void broadcastSystemMessage(String message, String excludeUser) {
-        System.out.println("[SYSTEM] Broadcasting: " + message);
-        for (Map.Entry<String, UserConnection> entry : onlineUsers.entrySet()) {
-            if (!entry.getKey().equals(excludeUser)) {
-                sendDirectMessage(entry.getValue().out, "SYSTEM_MSG", message);
-            }
-        }
-    }
-
-    /**
-     * Broadcast updated user list to all connected users
-     */
-    private void broadcastUserList() {
-        List<String> users = new ArrayList<>(onlineUsers.keySet());
-        System.out.println("[USER] Broadcasting user list to all (" + users.size() + " users)");
-
-        for (UserConnection conn : onlineUsers.values()) {
-            try {
-                synchronized (conn.out) {
-                    conn.out.writeUTF("USER_LIST");
-                    conn.out.writeInt(users.size());
-                    for (String user : users) {
-                        conn.out.writeUTF(user);
-                    }
-                    conn.out.flush();
-                }
-            } catch (IOException e) {
-                // Connection lost, will be handled by listener
-            }
-        }
-    }
-
     /**
      * Send a direct message to a specific user
      */
-    private void sendDirectMessage(DataOutputStream out, String messageType, String message) {
+    private static void sendDirectMessage(DataOutputStream out, String messageType, String message) {
         try {
             synchronized (out) {
                 out.writeUTF(messageType);
@@ -313,33 +382,54 @@ public class UserHandler implements Runnable {
     }
 
     /**
-     * Handle user logout
+     * Handle user disconnect (logout or connection lost)
      */
-    private void handleLogout(Socket socket) {
-        handleDisconnect(socket);
+    private void handleDisconnect(UserConnection conn) {
+        log.info("{} disconnected", conn.username);
+        conn.idle.cancel();
+        messagingEngine.detach(conn.username, conn);
+        if (notificationServer != null) {
+            notificationServer.unsubscribe(conn);
+        }
+        conn.close();
     }
 
     /**
-     * Handle user disconnect (logout or connection lost)
+     * Encode a presence frame:
+     * PRESENCE_SNAPSHOT version count users...
+     * PRESENCE_DELTA baseVersion version joined... left... typing...
      */
-    private void handleDisconnect(Socket socket) {
-        String username = socketToUsername.remove(socket);
-
-        if (username != null) {
-            UserConnection conn = onlineUsers.remove(username);
-
-            if (conn != null) {
-                System.out.println("[USER] " + username + " has left the chat");
-                System.out.println("[USER] Total online users: " + onlineUsers.size());
-
-                // Broadcast leave notification
-                broadcastSystemMessage(username + " has left the chat", username);
-
-                // Broadcast updated user list
-                broadcastUserList();
+    private static byte[] encodePresence(PresenceUpdate update) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream frame = new DataOutputStream(bytes);
+            if (update.isSnapshot()) {
+                frame.writeUTF("PRESENCE_SNAPSHOT");
+                frame.writeLong(update.getVersion());
+                writeNames(frame, update.getJoined());
+            } else {
+                frame.writeUTF("PRESENCE_DELTA");
+                frame.writeLong(update.getBaseVersion());
+                frame.writeLong(update.getVersion());
+                writeNames(frame, update.getJoined());
+                writeNames(frame, update.getLeft());
+                writeNames(frame, update.getTyping());
             }
+            frame.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
+
+    private static void writeNames(DataOutputStream out, List<String> names) throws IOException {
+        out.writeInt(names.size());
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
 
+    private static void closeSocket(Socket socket) {
         try {
             socket.close();
         } catch (IOException e) {
@@ -351,44 +441,36 @@ public class UserHandler implements Runnable {
      * Stop the handler and disconnect all users
      */
     public void stop() {
-        System.out.println("[USER] Stopping user handler...");
+        log.info("Stopping user handler...");
         running = false;
-
-        for (UserConnection conn : onlineUsers.values()) {
-            try {
-                conn.socket.close();
-            } catch (IOException e) {
-                // Ignore
-            }
-        }
-
-        onlineUsers.clear();
-        socketToUsername.clear();
-        System.out.println("[USER] All users disconnected");
+        messagingEngine.closeAll(ChatTransport.Kind.LOGIN);
+        log.info("All users disconnected");
     }
 
     /**
      * Get set of currently online usernames
      */
     public Set<String> getOnlineUsers() {
-        return new HashSet<>(onlineUsers.keySet());
+        return new HashSet<>(messagingEngine.getOnlineUsers());
     }
 
     /**
      * Get number of online users
      */
     public int getOnlineUserCount() {
-        return onlineUsers.size();
+        return messagingEngine.getOnlineUserCount();
     }
 
     /**
-     * Inner class to store user connection details
+     * Login connection, attached to the user's session as a LOGIN transport
      */
-    private static class UserConnection {
+    private static class UserConnection implements ChatTransport, NotificationSubscriber {
         final String username;
         final Socket socket;
         final DataInputStream in;
         final DataOutputStream out;
+        volatile IdleTimerWheel.Session idle;
+        long tokenRefreshAt; // Only touched by the listener thread
 
         UserConnection(String username, Socket socket, DataInputStream in, DataOutputStream out) {
             this.username = username;
@@ -396,6 +478,95 @@ public class UserHandler implements Runnable {
             this.in = in;
             this.out = out;
         }
+
+        @Override
+        public Kind getKind() {
+            return Kind.LOGIN;
+        }
+
+        @Override
+        public void deliver(ChatEvent event) {
+            switch (event.getKind()) {
+                case CHAT:
+                    sendDirectMessage(out, "CHAT_MSG", event.getSender() + ": " + event.getContent());
+                    break;
+                case SYSTEM:
+                    sendDirectMessage(out, "SYSTEM_MSG", event.getContent());
+                    break;
+                case PRIVATE:
+                    String formatted = username.equals(event.getSender())
+                            ? "[Private to " + event.getRecipient() + "]: " + event.getContent()
+                            : "[Private from " + event.getSender() + "]: " + event.getContent();
+                    sendDirectMessage(out, "PRIVATE_MSG", formatted);
+                    break;
+                case ERROR:
+                    sendDirectMessage(out, "ERROR", event.getContent());
+                    break;
+            }
+        }
+
+        @Override
+        public void deliverPresence(PresenceUpdate update) {
+            byte[] frame = update.getEncoded(UserHandler::encodePresence);
+            try {
+                synchronized (out) {
+                    out.write(frame);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // Connection lost, will be handled by listener
+            }
+        }
+
+        /**
+         * Queued offline messages go out as one PRIVATE_BATCH frame
+         */
+        @Override
+        public void deliverBatch(List<ChatEvent> events) {
+            try {
+                synchronized (out) {
+                    out.writeUTF("PRIVATE_BATCH");
+                    out.writeInt(events.size());
+                    for (ChatEvent event : events) {
+                        out.writeUTF("[Offline message from " + event.getSender() + "]: " + event.getContent());
+                    }
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // Connection lost, will be handled by listener
+            }
+        }
+
+        @Override
+        public void deliverNotifications(byte[] frame) {
+            try {
+                synchronized (out) {
+                    out.write(frame);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // Connection lost, will be handled by listener
+            }
+        }
+
+        void deliverUserList(List<String> users) {
+            try {
+                synchronized (out) {
+                    out.writeUTF("USER_LIST");
+                    out.writeInt(users.size());
+                    for (String user : users) {
+                        out.writeUTF(user);
+                    }
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // Connection lost, will be handled by listener
+            }
+        }
+
+        @Override
+        public void close() {
+            closeSocket(socket);
+        }
     }
 }
-
@@ -0,0 +1,189 @@
+package com.netQuiz.server.logging;
+
+import com.netQuiz.shared.Constants;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ring buffer between logging threads and one writer thread.
+ * Callers claim a slot with a CAS and return immediately; they never block
+ * on I/O or on the console lock. When the ring is full the record is
+ * dropped and counted. The writer formats records as key=value lines into a
+ * rotating file and, if enabled, echoes them to the console in the usual
+ * "[TAG] message" form.
+ */
+public class AsyncLogAppender {
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final DateTimeFormatter TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private static volatile AsyncLogAppender instance;
+
+    private final AtomicReferenceArray<LogRecord> ring;
+    private final int mask;
+    private final AtomicLong head;
+    private volatile long tail;
+    private final LongAdder dropped;
+    private final Thread writerThread;
+    private volatile boolean running;
+    private RotatingFileWriter file;
+
+    private AsyncLogAppender(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.head = new AtomicLong();
+        this.tail = 0;
+        this.dropped = new LongAdder();
+        this.running = true;
+        try {
+            this.file = new RotatingFileWriter(Paths.get(Constants.LOG_DIRECTORY, Constants.LOG_FILE),
+                    Constants.LOG_MAX_FILE_BYTES, Constants.LOG_MAX_FILES);
+        } catch (IOException e) {
+            System.err.println("[LOG] Cannot open log file, console only: " + e.getMessage());
+        }
+        this.writerThread = new Thread(this::drainLoop, "LogWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "LogFlush"));
+    }
+
+    public static AsyncLogAppender getInstance() {
+        AsyncLogAppender appender = instance;
+        if (appender == null) {
+            synchronized (AsyncLogAppender.class) {
+                appender = instance;
+                if (appender == null) {
+                    appender = new AsyncLogAppender(Constants.LOG_RING_BUFFER_SIZE);
+                    instance = appender;
+                }
+            }
+        }
+        return appender;
+    }
+
+    void append(LogRecord record) {
+        if (!running) {
+            writeNow(record);
+            return;
+        }
+        long slot;
+        do {
+            slot = head.get();
+            if (slot - tail >= ring.length()) {
+                dropped.increment();
+                return;
+            }
+        } while (!head.compareAndSet(slot, slot + 1));
+        ring.set((int) (slot & mask), record);
+    }
+
+    /**
+     * After close, e.g. from another shutdown hook, records skip the ring
+     */
+    private synchronized void writeNow(LogRecord record) {
+        drain();
+        write(record);
+        flush();
+    }
+
+    /**
+     * Records lost because the ring was full
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    private void drainLoop() {
+        while (running) {
+            if (drain() == 0) {
+                flush();
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Write every published record in order; a claimed slot whose record
+     * is not set yet ends the pass so ordering is kept
+     */
+    private synchronized int drain() {
+        int written = 0;
+        long position = tail;
+        while (position < head.get()) {
+            int index = (int) (position & mask);
+            LogRecord record = ring.get(index);
+            if (record == null) {
+                break;
+            }
+            ring.set(index, null);
+            position++;
+            tail = position;
+            write(record);
+            written++;
+        }
+        return written;
+    }
+
+    private void write(LogRecord record) {
+        String message = record.formatMessage();
+        if (record.error != null) {
+            StringWriter trace = new StringWriter();
+            record.error.printStackTrace(new PrintWriter(trace));
+            message = message + ": " + trace;
+        }
+        if (Constants.LOG_TO_CONSOLE) {
+            String line = "[" + record.logger + "] " + message;
+            if (record.level.ordinal() >= LogLevel.WARN.ordinal()) {
+                System.err.println(line);
+            } else {
+                System.out.println(line);
+            }
+        }
+        if (file != null) {
+            try {
+                file.write("ts=" + TIMESTAMP.format(Instant.ofEpochMilli(record.timestamp))
+                        + " level=" + record.level
+                        + " logger=" + record.logger
+                        + " thread=\"" + record.thread + "\""
+                        + " msg=\"" + message.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"");
+            } catch (IOException e) {
+                System.err.println("[LOG] Write failed, console only: " + e.getMessage());
+                file = null;
+            }
+        }
+    }
+
+    private void flush() {
+        if (file != null) {
+            try {
+                file.flush();
+            } catch (IOException e) {
+                // Reported on the next write
+            }
+        }
+    }
+
+    /**
+     * Stop the writer and write out whatever is still in the ring. The file
+     * stays open: other shutdown hooks may still log, and those records are
+     * then written synchronously.
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(writerThread);
+        drain();
+        flush();
+    }
+}
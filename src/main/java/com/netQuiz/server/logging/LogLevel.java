@@ -0,0 +1,19 @@
+package com.netQuiz.server.logging;
+
+/**
+ * Log levels from most to least verbose
+ */
+public enum LogLevel {
+    DEBUG, INFO, WARN, ERROR, OFF;
+
+    public static LogLevel parse(String name, LogLevel fallback) {
+        if (name != null) {
+            for (LogLevel level : values()) {
+                if (level.name().equalsIgnoreCase(name.trim())) {
+                    return level;
+                }
+            }
+        }
+        return fallback;
+    }
+}
@@ -0,0 +1,50 @@
+package com.netQuiz.server.logging;
+
+/**
+ * One log call as captured on the calling thread. The message is kept as a
+ * template plus arguments and only formatted by the writer thread.
+ */
+class LogRecord {
+    final long timestamp;
+    final LogLevel level;
+    final String logger;
+    final String thread;
+    final String template;
+    final Object arg1;
+    final Object arg2;
+    final Object arg3;
+    final Throwable error;
+
+    LogRecord(LogLevel level, String logger, String template, Object arg1, Object arg2, Object arg3,
+              Throwable error) {
+        this.timestamp = System.currentTimeMillis();
+        this.level = level;
+        this.logger = logger;
+        this.thread = Thread.currentThread().getName();
+        this.template = template;
+        this.arg1 = arg1;
+        this.arg2 = arg2;
+        this.arg3 = arg3;
+        this.error = error;
+    }
+
+    /**
+     * Substitute up to three {} placeholders
+     */
+    String formatMessage() {
+        if (arg1 == null && arg2 == null && arg3 == null) {
+            return template;
+        }
+        StringBuilder message = new StringBuilder(template.length() + 32);
+        Object[] args = {arg1, arg2, arg3};
+        int argIndex = 0;
+        int from = 0;
+        int at;
+        while (argIndex < args.length && (at = template.indexOf("{}", from)) >= 0) {
+            message.append(template, from, at).append(args[argIndex++]);
+            from = at + 2;
+        }
+        message.append(template, from, template.length());
+        return message.toString();
+    }
+}
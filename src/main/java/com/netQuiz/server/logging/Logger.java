@@ -0,0 +1,130 @@
+package com.netQuiz.server.logging;
+
+import com.netQuiz.shared.Constants;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Level-filtered logger that hands records to the {@link AsyncLogAppender}.
+ * A disabled call costs one comparison: templates with {} placeholders and
+ * suppliers are only formatted, on the writer thread, when the level is on.
+ * Loggers are named by the same tags the console output has always used,
+ * e.g. Logger.get("CHAT") prints as [CHAT].
+ */
+public class Logger {
+    private static final Map<String, Logger> loggers = new ConcurrentHashMap<>();
+    private static volatile LogLevel threshold =
+            LogLevel.parse(System.getProperty("netquiz.log.level"), LogLevel.parse(Constants.LOG_LEVEL, LogLevel.INFO));
+
+    private final String name;
+
+    private Logger(String name) {
+        this.name = name;
+    }
+
+    public static Logger get(String name) {
+        return loggers.computeIfAbsent(name, Logger::new);
+    }
+
+    public static void setLevel(LogLevel level) {
+        threshold = level;
+    }
+
+    public static LogLevel getLevel() {
+        return threshold;
+    }
+
+    public boolean isEnabled(LogLevel level) {
+        return level.ordinal() >= threshold.ordinal();
+    }
+
+    public boolean isDebugEnabled() {
+        return isEnabled(LogLevel.DEBUG);
+    }
+
+    public void debug(String message) {
+        log(LogLevel.DEBUG, message, null, null, null, null);
+    }
+
+    public void debug(String template, Object arg) {
+        log(LogLevel.DEBUG, template, arg, null, null, null);
+    }
+
+    public void debug(String template, Object arg1, Object arg2) {
+        log(LogLevel.DEBUG, template, arg1, arg2, null, null);
+    }
+
+    public void debug(String template, Object arg1, Object arg2, Object arg3) {
+        log(LogLevel.DEBUG, template, arg1, arg2, arg3, null);
+    }
+
+    public void debug(Supplier<String> message) {
+        if (isDebugEnabled()) {
+            log(LogLevel.DEBUG, message.get(), null, null, null, null);
+        }
+    }
+
+    public void info(String message) {
+        log(LogLevel.INFO, message, null, null, null, null);
+    }
+
+    public void info(String template, Object arg) {
+        log(LogLevel.INFO, template, arg, null, null, null);
+    }
+
+    public void info(String template, Object arg1, Object arg2) {
+        log(LogLevel.INFO, template, arg1, arg2, null, null);
+    }
+
+    public void info(String template, Object arg1, Object arg2, Object arg3) {
+        log(LogLevel.INFO, template, arg1, arg2, arg3, null);
+    }
+
+    public void warn(String message) {
+        log(LogLevel.WARN, message, null, null, null, null);
+    }
+
+    public void warn(String template, Object arg) {
+        log(LogLevel.WARN, template, arg, null, null, null);
+    }
+
+    public void warn(String template, Object arg1, Object arg2) {
+        log(LogLevel.WARN, template, arg1, arg2, null, null);
+    }
+
+    public void warn(String template, Object arg1, Object arg2, Object arg3) {
+        log(LogLevel.WARN, template, arg1, arg2, arg3, null);
+    }
+
+    public void error(String message) {
+        log(LogLevel.ERROR, message, null, null, null, null);
+    }
+
+    public void error(String template, Object arg) {
+        log(LogLevel.ERROR, template, arg, null, null, null);
+    }
+
+    public void error(String template, Object arg1, Object arg2) {
+        log(LogLevel.ERROR, template, arg1, arg2, null, null);
+    }
+
+    public void error(String template, Object arg1, Object arg2, Object arg3) {
+        log(LogLevel.ERROR, template, arg1, arg2, arg3, null);
+    }
+
+    public void error(String message, Throwable error) {
+        log(LogLevel.ERROR, message, null, null, null, error);
+    }
+
+    public void error(String template, Object arg, Throwable error) {
+        log(LogLevel.ERROR, template, arg, null, null, error);
+    }
+
+    private void log(LogLevel level, String template, Object arg1, Object arg2, Object arg3, Throwable error) {
+        if (isEnabled(level)) {
+            AsyncLogAppender.getInstance().append(new LogRecord(level, name, template, arg1, arg2, arg3, error));
+        }
+    }
+}
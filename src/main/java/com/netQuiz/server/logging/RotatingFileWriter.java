@@ -0,0 +1,73 @@
+package com.netQuiz.server.logging;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends to netquiz.log and rolls it to netquiz.log.1 .. .N once it grows
+ * past the size limit. Only used by the log writer thread.
+ */
+class RotatingFileWriter {
+    private final Path file;
+    private final long maxBytes;
+    private final int maxFiles;
+    private Writer writer;
+    private long size;
+
+    RotatingFileWriter(Path file, long maxBytes, int maxFiles) throws IOException {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        open();
+    }
+
+    private void open() throws IOException {
+        this.size = Files.exists(file) ? Files.size(file) : 0;
+        this.writer = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+    }
+
+    void write(String line) throws IOException {
+        if (size >= maxBytes) {
+            rotate();
+        }
+        writer.write(line);
+        writer.write('\n');
+        // Close enough for rotation; exact byte counts would need encoding twice
+        size += line.length() + 1;
+    }
+
+    void flush() throws IOException {
+        writer.flush();
+    }
+
+    private void rotate() throws IOException {
+        writer.close();
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path older = rolled(i);
+            if (Files.exists(older)) {
+                Files.move(older, rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+        open();
+    }
+
+    private Path rolled(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    void close() throws IOException {
+        writer.close();
+    }
+}
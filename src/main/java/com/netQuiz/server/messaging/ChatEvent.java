@@ -0,0 +1,45 @@
+package com.netQuiz.server.messaging;
+
+/**
+ * A chat event produced once by the messaging engine and rendered by each
+ * transport into its own wire format.
+ */
+public class ChatEvent {
+    private final Kind kind;
+    private final String sender;
+    private final String recipient;
+    private final String content;
+    private final long timestamp;
+
+    public enum Kind {
+        CHAT, SYSTEM, PRIVATE, ERROR
+    }
+
+    public ChatEvent(Kind kind, String sender, String recipient, String content, long timestamp) {
+        this.kind = kind;
+        this.sender = sender;
+        this.recipient = recipient;
+        this.content = content;
+        this.timestamp = timestamp;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
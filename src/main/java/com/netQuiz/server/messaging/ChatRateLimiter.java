@@ -0,0 +1,65 @@
+package com.netQuiz.server.messaging;
+
+import com.netQuiz.shared.Constants;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-user and per-room message rate limits, checked before fan-out.
+ * There is a single public room today, so the room bucket caps the
+ * total public chat rate across all users.
+ */
+public class ChatRateLimiter {
+    private final double userRate;
+    private final int userBurst;
+    private final TokenBucket roomBucket;
+    private final LongAdder allowed;
+    private final LongAdder throttledByUser;
+    private final LongAdder throttledByRoom;
+
+    public ChatRateLimiter() {
+        this(Constants.CHAT_USER_RATE_PER_SECOND, Constants.CHAT_USER_BURST,
+                Constants.CHAT_ROOM_RATE_PER_SECOND, Constants.CHAT_ROOM_BURST);
+    }
+
+    public ChatRateLimiter(double userRate, int userBurst, double roomRate, int roomBurst) {
+        this.userRate = userRate;
+        this.userBurst = userBurst;
+        this.roomBucket = new TokenBucket(roomRate, roomBurst);
+        this.allowed = new LongAdder();
+        this.throttledByUser = new LongAdder();
+        this.throttledByRoom = new LongAdder();
+    }
+
+    /**
+     * Create the bucket a new session uses for its own messages
+     */
+    TokenBucket newUserBucket() {
+        return new TokenBucket(userRate, userBurst);
+    }
+
+    boolean tryAcquire(TokenBucket userBucket, boolean publicRoom) {
+        if (!userBucket.tryAcquire()) {
+            throttledByUser.increment();
+            return false;
+        }
+        if (publicRoom && !roomBucket.tryAcquire()) {
+            throttledByRoom.increment();
+            return false;
+        }
+        allowed.increment();
+        return true;
+    }
+
+    public long getAllowedCount() {
+        return allowed.sum();
+    }
+
+    public long getThrottledByUserCount() {
+        return throttledByUser.sum();
+    }
+
+    public long getThrottledByRoomCount() {
+        return throttledByRoom.sum();
+    }
+}
@@ -0,0 +1,34 @@
+package com.netQuiz.server.messaging;
+
+/**
+ * Where the engine sends chat traffic for users on other cluster nodes.
+ * Events arriving from other nodes come back in through the engine's
+ * receive methods, which deliver locally only.
+ */
+public interface ChatRelay {
+
+    /**
+     * Public chat or system message for every other node
+     */
+    void broadcast(ChatEvent event, String excludeUser);
+
+    /**
+     * Private message for a user connected to, or homed on, the given node
+     */
+    void forward(String node, ChatEvent event);
+
+    /**
+     * A user's last local connection opened or closed
+     */
+    void presence(String username, boolean online);
+
+    /**
+     * Node that keeps the user's offline mailbox; null for this node
+     */
+    String homeNode(String username);
+
+    /**
+     * Ask a user's home node for messages queued while they were offline
+     */
+    void requestMailbox(String node, String username);
+}
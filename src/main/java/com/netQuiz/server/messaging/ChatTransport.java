@@ -0,0 +1,43 @@
+package com.netQuiz.server.messaging;
+
+import java.util.List;
+
+/**
+ * A client connection attached to a session in the messaging engine.
+ * Each protocol (framed chat, login session, line-based chat) provides
+ * its own implementation and only handles encoding.
+ */
+public interface ChatTransport {
+
+    /**
+     * Connection kinds in order of preference for chat delivery.
+     * A user holding several connections receives each chat event once,
+     * on the most preferred one.
+     */
+    enum Kind {
+        CHAT, LINE, LOGIN
+    }
+
+    Kind getKind();
+
+    void deliver(ChatEvent event);
+
+    /**
+     * Deliver several events at once, e.g. queued offline messages.
+     * Protocols with a batch frame should override this to write once.
+     */
+    default void deliverBatch(List<ChatEvent> events) {
+        for (ChatEvent event : events) {
+            deliver(event);
+        }
+    }
+
+    /**
+     * Receive a presence snapshot or delta. Protocols without a presence
+     * frame ignore it.
+     */
+    default void deliverPresence(PresenceUpdate update) {
+    }
+
+    void close();
+}
@@ -0,0 +1,161 @@
+package com.netQuiz.server.messaging;
+
+import com.netQuiz.server.logging.Logger;
+import com.netQuiz.server.metrics.Counter;
+import com.netQuiz.server.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timer wheel that closes sessions with no inbound traffic.
+ * Reading a frame only stamps the session's last-activity time; the
+ * wheel re-files a session when its slot comes up and it turns out to
+ * have been active since. One thread serves every session, and expired
+ * sessions are closed together once per tick.
+ */
+public class IdleTimerWheel implements Runnable {
+    private static final Logger log = Logger.get("REAPER");
+
+    private final long timeoutNanos;
+    private final long tickNanos;
+    private final List<List<Session>> slots;
+    private final AtomicInteger tracked;
+    private final Counter reaped;
+    private long currentTick;
+    private volatile boolean running;
+
+    public IdleTimerWheel(long timeoutMs, long tickMs) {
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        // One spare slot so a full timeout never lands back on the current slot
+        int size = (int) ((timeoutMs + tickMs - 1) / tickMs) + 1;
+        this.slots = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.tracked = new AtomicInteger();
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        this.reaped = metrics.counter("netquiz_sessions_reaped_total",
+                "Sessions closed for missing heartbeats");
+        metrics.gauge("netquiz_sessions_tracked", "Sessions watched for idle timeout", tracked::get);
+    }
+
+    /**
+     * Start watching a session; onExpire runs on the reaper thread
+     */
+    public Session register(String name, Runnable onExpire) {
+        Session session = new Session(name, onExpire);
+        synchronized (this) {
+            slots.get(slotAfter(timeoutNanos)).add(session);
+        }
+        tracked.incrementAndGet();
+        return session;
+    }
+
+    private int slotAfter(long delayNanos) {
+        long ticks = Math.max(1, Math.min((delayNanos + tickNanos - 1) / tickNanos, slots.size() - 1));
+        return (int) ((currentTick + ticks) % slots.size());
+    }
+
+    @Override
+    public void run() {
+        running = true;
+        log.info("Reaping sessions idle for {}s", TimeUnit.NANOSECONDS.toSeconds(timeoutNanos));
+        long nextTick = System.nanoTime() + tickNanos;
+        while (running) {
+            try {
+                long wait = nextTick - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                nextTick += tickNanos;
+                expire(tick(System.nanoTime()));
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Advance one slot; returns the sessions whose deadline has passed
+     */
+    synchronized List<Session> tick(long now) {
+        currentTick++;
+        int index = (int) (currentTick % slots.size());
+        List<Session> due = slots.set(index, new ArrayList<>());
+
+        List<Session> expired = new ArrayList<>();
+        for (Session session : due) {
+            if (session.cancelled.get()) {
+                continue;
+            }
+            long idle = now - session.lastActivity;
+            if (idle >= timeoutNanos) {
+                expired.add(session);
+            } else {
+                slots.get(slotAfter(timeoutNanos - idle)).add(session);
+            }
+        }
+        return expired;
+    }
+
+    private void expire(List<Session> expired) {
+        if (expired.isEmpty()) {
+            return;
+        }
+        for (Session session : expired) {
+            session.cancel();
+            try {
+                session.onExpire.run();
+            } catch (RuntimeException e) {
+                log.warn("Error closing idle session {}: {}", session.name, e.getMessage());
+            }
+        }
+        reaped.add(expired.size());
+        log.info("Closed {} idle sessions", expired.size());
+    }
+
+    public int getTrackedCount() {
+        return tracked.get();
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Registration handle held by the connection
+     */
+    public class Session {
+        private final String name;
+        private final Runnable onExpire;
+        private volatile long lastActivity;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        private Session(String name, Runnable onExpire) {
+            this.name = name;
+            this.onExpire = onExpire;
+            this.lastActivity = System.nanoTime();
+        }
+
+        /**
+         * Record inbound traffic; called for every frame read
+         */
+        public void touch() {
+            lastActivity = System.nanoTime();
+        }
+
+        /**
+         * Stop watching; the wheel drops the entry when its slot comes up
+         */
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                tracked.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,535 @@
+package com.netQuiz.server.messaging;
+
+import com.netQuiz.server.logging.Logger;
+import com.netQuiz.server.metrics.Counter;
+import com.netQuiz.server.metrics.LatencyHistogram;
+import com.netQuiz.server.metrics.MetricsRegistry;
+import com.netQuiz.server.notification.NotificationServer;
+import com.netQuiz.server.search.SearchIndex;
+import com.netQuiz.shared.Constants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single messaging core shared by every chat protocol.
+ * Owns the one session registry and the one fan-out path; ChatHandler,
+ * UserHandler and the line-based ChatServer are thin transports on top.
+ */
+public class MessagingEngine {
+    private static final Logger log = Logger.get("ENGINE");
+
+    private final SessionRegistry sessions;
+    private final Object registryLock;
+    private final ChatRateLimiter rateLimiter;
+    private final PresenceTracker presence;
+    private final ScheduledExecutorService presenceFlusher;
+    private final OfflineMailbox mailbox;
+    private final LatencyHistogram messageLatency;
+    private final Counter deliveries;
+    private NotificationServer notificationServer;
+    private SearchIndex searchIndex;
+    // Users connected to other cluster nodes, by node id
+    private final Map<String, String> remoteUsers;
+    private volatile ChatRelay relay;
+    // Bumped on every join or leave, local or remote; the cached lists below are rebuilt when it moves
+    private final AtomicLong membership;
+    private volatile UserList onlineUsers;
+    private volatile PresenceUpdate snapshot;
+
+    public MessagingEngine(NotificationServer notificationServer, SearchIndex searchIndex) {
+        this(notificationServer, searchIndex, new ChatRateLimiter(), new OfflineMailbox());
+    }
+
+    public MessagingEngine(NotificationServer notificationServer, SearchIndex searchIndex,
+                           ChatRateLimiter rateLimiter, OfflineMailbox mailbox) {
+        this.notificationServer = notificationServer;
+        this.searchIndex = searchIndex;
+        this.rateLimiter = rateLimiter;
+        this.mailbox = mailbox;
+        this.sessions = new SessionRegistry();
+        this.membership = new AtomicLong();
+        this.remoteUsers = new ConcurrentHashMap<>();
+        this.registryLock = new Object();
+        this.presence = new PresenceTracker();
+        this.messageLatency = MetricsRegistry.getInstance().commandLatency("MESSAGE");
+        this.deliveries = MetricsRegistry.getInstance().counter("netquiz_chat_deliveries_total",
+                "Chat events written to client sessions");
+        this.presenceFlusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "PresenceFlusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        presenceFlusher.scheduleWithFixedDelay(this::flushPresence, Constants.PRESENCE_FLUSH_INTERVAL_MS,
+                Constants.PRESENCE_FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Join a cluster: traffic for remote users goes through the relay
+     */
+    public void setRelay(ChatRelay relay) {
+        this.relay = relay;
+    }
+
+    /**
+     * Attach a connection to the user's session, creating the session on
+     * first connect. A connection of the same kind already held by the user
+     * is replaced and closed.
+     */
+    public void attach(String username, ChatTransport transport) {
+        Session session;
+        ChatTransport replaced;
+        boolean joined;
+
+        synchronized (registryLock) {
+            session = sessions.get(username);
+            joined = session == null;
+            if (joined) {
+                // One copy of each name, shared by the session, presence frames and transports
+                session = new Session(username.intern(), rateLimiter.newUserBucket());
+                sessions.add(session);
+                membership.incrementAndGet();
+            }
+            replaced = session.addTransport(transport);
+        }
+
+        if (replaced != null) {
+            replaced.close();
+        }
+
+        // Every new connection starts from a full snapshot, later changes arrive as deltas
+        transport.deliverPresence(presenceSnapshot());
+
+        if (joined) {
+            log.info("{} joined. Online users: {}", username, sessions.size());
+            onJoin(username);
+        }
+
+        deliverMailbox(username, transport);
+    }
+
+    /**
+     * Detach a connection. The user leaves once their last connection is gone.
+     */
+    public void detach(String username, ChatTransport transport) {
+        boolean left = false;
+
+        synchronized (registryLock) {
+            Session session = sessions.get(username);
+            if (session == null || !session.removeTransport(transport)) {
+                return;
+            }
+            if (session.isEmpty()) {
+                sessions.remove(session);
+                membership.incrementAndGet();
+                left = true;
+            }
+        }
+
+        if (left) {
+            log.info("{} left. Online users: {}", username, sessions.size());
+            onLeave(username);
+        }
+    }
+
+    /**
+     * Publish a public chat message to everyone except the sender.
+     * Messages over the sender's or the room's rate limit are dropped and
+     * an error is returned on the connection they arrived on.
+     */
+    public void publish(ChatTransport origin, String sender, String content) {
+        long start = System.nanoTime();
+        if (!admit(origin, sender, true)) {
+            return;
+        }
+
+        ChatEvent event = new ChatEvent(ChatEvent.Kind.CHAT, sender, null, content, System.currentTimeMillis());
+
+        if (searchIndex != null) {
+            searchIndex.indexChatMessage(sender, content, event.getTimestamp());
+        }
+        if (notificationServer != null) {
+            notificationServer.notifyChatActivity(sender);
+        }
+
+        fanOut(event, sender);
+        if (relay != null) {
+            relay.broadcast(event, sender);
+        }
+        messageLatency.recordSince(start);
+    }
+
+    /**
+     * Send a private message and echo it back to the sender. Messages to
+     * offline users are queued in their mailbox until they connect.
+     * Returns false if the recipient's mailbox is full.
+     */
+    public boolean sendPrivate(ChatTransport origin, String sender, String recipient, String content) {
+        if (!admit(origin, sender, false)) {
+            return true;
+        }
+
+        ChatEvent event = new ChatEvent(ChatEvent.Kind.PRIVATE, sender, recipient, content,
+                System.currentTimeMillis());
+
+        Session target = sessions.get(recipient);
+        if (target == null && relay != null) {
+            String node = remoteUsers.get(recipient);
+            if (node != null) {
+                relay.forward(node, event);
+                Session senderSession = sessions.get(sender);
+                if (senderSession != null) {
+                    senderSession.deliver(event);
+                }
+                return true;
+            }
+        }
+        if (target == null) {
+            String home = relay != null ? relay.homeNode(recipient) : null;
+            if (home != null) {
+                // The recipient's home node keeps their mailbox
+                relay.forward(home, event);
+            } else if (!mailbox.store(recipient, event)) {
+                return false;
+            }
+            origin.deliver(new ChatEvent(ChatEvent.Kind.SYSTEM, "Server", sender,
+                    recipient + " is offline. Your message will be delivered when they log in.",
+                    event.getTimestamp()));
+            // The recipient may have connected while the message was being stored
+            Session arrived = sessions.get(recipient);
+            if (arrived != null) {
+                ChatTransport transport = arrived.getPrimary();
+                if (transport != null) {
+                    deliverMailbox(recipient, transport);
+                }
+            }
+            return true;
+        }
+
+        target.deliver(event);
+
+        Session senderSession = sessions.get(sender);
+        if (senderSession != null && senderSession != target) {
+            senderSession.deliver(event);
+        }
+        return true;
+    }
+
+    /**
+     * Broadcast a server message to everyone except {@code excludeUser}
+     */
+    public void sendSystem(String content, String excludeUser) {
+        ChatEvent event = new ChatEvent(ChatEvent.Kind.SYSTEM, "Server", null, content, System.currentTimeMillis());
+        fanOut(event, excludeUser);
+        if (relay != null) {
+            relay.broadcast(event, excludeUser);
+        }
+    }
+
+    /**
+     * Tell this node's users only, e.g. that it is restarting
+     */
+    public void announceLocal(String content) {
+        fanOut(new ChatEvent(ChatEvent.Kind.SYSTEM, "Server", null, content, System.currentTimeMillis()), null);
+    }
+
+    /**
+     * Public chat or system message published on another node
+     */
+    public void receiveBroadcast(ChatEvent event, String excludeUser) {
+        fanOut(event, excludeUser);
+    }
+
+    /**
+     * Private message forwarded from another node: deliver it, or keep it
+     * in the mailbox if the recipient is not connected here
+     */
+    public void receivePrivate(ChatEvent event) {
+        Session target = sessions.get(event.getRecipient());
+        if (target != null) {
+            target.deliver(event);
+        } else if (!mailbox.store(event.getRecipient(), event)) {
+            log.warn("Mailbox full, dropped forwarded message for {}", event.getRecipient());
+        }
+    }
+
+    /**
+     * Hand a user's queued messages to the node they connected to
+     */
+    public List<ChatEvent> takeMailbox(String username) {
+        return mailbox.drain(username);
+    }
+
+    /**
+     * Queued messages fetched from the user's home node
+     */
+    public void receiveMailbox(String username, List<ChatEvent> events) {
+        Session session = sessions.get(username);
+        ChatTransport transport = session != null ? session.getPrimary() : null;
+        if (transport != null) {
+            log.info("Delivering {} offline messages to {}", events.size(), username);
+            transport.deliverBatch(events);
+        } else {
+            for (ChatEvent event : events) {
+                mailbox.store(username, event);
+            }
+        }
+    }
+
+    /**
+     * A user connected to or disconnected from another node
+     */
+    public void receivePresence(String node, String username, boolean online) {
+        if (online) {
+            if (remoteUsers.put(username.intern(), node) == null) {
+                membership.incrementAndGet();
+                if (!sessions.contains(username)) {
+                    presence.recordJoin(username);
+                }
+            }
+        } else if (remoteUsers.remove(username, node)) {
+            membership.incrementAndGet();
+            if (!sessions.contains(username)) {
+                presence.recordLeave(username);
+            }
+        }
+    }
+
+    /**
+     * Replace everything known about a node's users, e.g. after it reconnects
+     */
+    public void receivePresenceSnapshot(String node, List<String> users) {
+        for (Map.Entry<String, String> entry : remoteUsers.entrySet()) {
+            if (entry.getValue().equals(node) && !users.contains(entry.getKey())) {
+                receivePresence(node, entry.getKey(), false);
+            }
+        }
+        for (String username : users) {
+            receivePresence(node, username, true);
+        }
+    }
+
+    /**
+     * A node left the cluster; its users are gone
+     */
+    public void removeNode(String node) {
+        receivePresenceSnapshot(node, List.of());
+    }
+
+    /**
+     * Users with a connection on this node
+     */
+    public List<String> getLocalUsers() {
+        List<String> users = new ArrayList<>(sessions.size());
+        for (int id = 0, limit = sessions.limit(); id < limit; id++) {
+            Session session = sessions.at(id);
+            if (session != null) {
+                users.add(session.getUsername());
+            }
+        }
+        return users;
+    }
+
+    public ChatRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public OfflineMailbox getMailbox() {
+        return mailbox;
+    }
+
+    /**
+     * Mark a user as typing; the indicator goes out with the next presence delta
+     */
+    public void setTyping(String username) {
+        if (sessions.contains(username)) {
+            presence.recordTyping(username);
+        }
+    }
+
+    /**
+     * Full presence state, for new connections and clients that detected a version gap
+     */
+    public PresenceUpdate presenceSnapshot() {
+        // Read the version first: anything flushed up to it is already in the registry
+        long version = presence.getVersion();
+        List<String> users = getOnlineUsers();
+        PresenceUpdate cached = snapshot;
+        if (cached != null && cached.getVersion() == version && cached.getJoined() == users) {
+            // Connections arriving between changes share one frame, encoded once
+            return cached;
+        }
+        cached = PresenceUpdate.snapshot(version, users);
+        snapshot = cached;
+        return cached;
+    }
+
+    public boolean isOnline(String username) {
+        return sessions.contains(username) || remoteUsers.containsKey(username);
+    }
+
+    public boolean hasTransport(String username, ChatTransport.Kind kind) {
+        Session session = sessions.get(username);
+        return session != null && session.hasTransport(kind);
+    }
+
+    /**
+     * Everyone online in the cluster, as an unmodifiable list. Built once
+     * per change in membership and shared until the next one.
+     */
+    public List<String> getOnlineUsers() {
+        UserList cached = onlineUsers;
+        long current = membership.get();
+        if (cached != null && cached.membership == current) {
+            return cached.users;
+        }
+        List<String> users = new ArrayList<>(sessions.size() + remoteUsers.size());
+        for (int id = 0, limit = sessions.limit(); id < limit; id++) {
+            Session session = sessions.at(id);
+            if (session != null) {
+                users.add(session.getUsername());
+            }
+        }
+        for (String username : remoteUsers.keySet()) {
+            if (!sessions.contains(username)) {
+                users.add(username);
+            }
+        }
+        // Tagged with the count read before building, so a change made meanwhile forces a rebuild
+        cached = new UserList(current, Collections.unmodifiableList(users));
+        onlineUsers = cached;
+        return cached.users;
+    }
+
+    /**
+     * Users connected to this node
+     */
+    public int getOnlineUserCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Close every connection of the given kind (used when a protocol shuts down)
+     */
+    public void closeAll(ChatTransport.Kind kind) {
+        for (int id = 0, limit = sessions.limit(); id < limit; id++) {
+            Session session = sessions.at(id);
+            ChatTransport transport = session != null ? session.getTransport(kind) : null;
+            if (transport != null) {
+                transport.close();
+            }
+        }
+    }
+
+    /**
+     * Persist queued offline messages; called while draining for a restart
+     */
+    public void flush() {
+        mailbox.flush();
+    }
+
+    public void stop() {
+        presenceFlusher.shutdownNow();
+        for (int id = 0, limit = sessions.limit(); id < limit; id++) {
+            Session session = sessions.at(id);
+            if (session != null) {
+                session.closeAll();
+            }
+        }
+    }
+
+    private void deliverMailbox(String username, ChatTransport transport) {
+        String home = relay != null ? relay.homeNode(username) : null;
+        if (home != null) {
+            relay.requestMailbox(home, username);
+        }
+        List<ChatEvent> queued = mailbox.drain(username);
+        if (!queued.isEmpty()) {
+            log.info("Delivering {} offline messages to {}", queued.size(), username);
+            transport.deliverBatch(queued);
+        }
+    }
+
+    private boolean admit(ChatTransport origin, String sender, boolean publicRoom) {
+        Session session = sessions.get(sender);
+        if (session == null || rateLimiter.tryAcquire(session.getRateLimit(), publicRoom)) {
+            return true;
+        }
+        origin.deliver(new ChatEvent(ChatEvent.Kind.ERROR, "Server", sender,
+                "Rate limit exceeded, message not delivered. Please slow down.", System.currentTimeMillis()));
+        return false;
+    }
+
+    private void fanOut(ChatEvent event, String excludeUser) {
+        int delivered = 0;
+        for (int id = 0, limit = sessions.limit(); id < limit; id++) {
+            Session session = sessions.at(id);
+            if (session != null && !session.getUsername().equals(excludeUser)) {
+                session.deliver(event);
+                delivered++;
+            }
+        }
+        deliveries.add(delivered);
+    }
+
+    private void onJoin(String username) {
+        if (notificationServer != null) {
+            notificationServer.notifyUserLogin(username);
+        }
+        sendSystem(username + " has joined the chat", username);
+        if (relay != null) {
+            relay.presence(username, true);
+        }
+        if (!remoteUsers.containsKey(username)) {
+            presence.recordJoin(username);
+        }
+    }
+
+    private void onLeave(String username) {
+        if (notificationServer != null) {
+            notificationServer.notifyUserLogout(username);
+        }
+        sendSystem(username + " has left the chat", username);
+        if (relay != null) {
+            relay.presence(username, false);
+        }
+        if (!remoteUsers.containsKey(username)) {
+            presence.recordLeave(username);
+        }
+    }
+
+    private void flushPresence() {
+        try {
+            PresenceUpdate delta = presence.drain();
+            if (delta == null) {
+                return;
+            }
+            for (int id = 0, limit = sessions.limit(); id < limit; id++) {
+                Session session = sessions.at(id);
+                if (session != null) {
+                    session.deliverPresence(delta);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Keep the scheduled task alive
+            log.error("Presence flush error: {}", e.getMessage());
+        }
+    }
+
+    private static class UserList {
+        final long membership;
+        final List<String> users;
+
+        UserList(long membership, List<String> users) {
+            this.membership = membership;
+            this.users = users;
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package com.netQuiz.server.messaging;
+
+import com.netQuiz.server.logging.Logger;
+import com.netQuiz.shared.Constants;
+
+import java.io.*;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Store-and-forward mailboxes for private messages to offline users.
+ * Recent messages are kept in memory up to a per-user and a global limit;
+ * past that a mailbox spills to an append-only file. Mailboxes are keyed
+ * by recipient, so delivering at login touches only that user's data.
+ * Each mailbox spills to a file of its own, named for the recipient and a
+ * counter, so one created while another is being drained never shares it.
+ *
+ * Each process spills into a directory of its own, named for its start
+ * time and PID, so two processes overlapping in a hot restart never write
+ * or delete each other's files. Once a process has exited, the next store
+ * or drain here takes over everything it left on disk.
+ */
+public class OfflineMailbox {
+    private static final Logger log = Logger.get("MAILBOX");
+    private static final long HANDOVER_CHECK_INTERVAL_MS = 1_000;
+
+    private final Map<String, Mailbox> mailboxes;
+    private final AtomicInteger inMemoryTotal;
+    // Messages held in memory and on disk, across every mailbox
+    private final AtomicInteger storedTotal;
+    // Numbers each mailbox's spill file
+    private final AtomicLong fileCounter;
+    private final Path directory;
+    // This process's spill files
+    private final Path ownDirectory;
+    // Spill directories of other processes, still running when last checked
+    private final Set<Path> handedOver;
+    private volatile long nextHandoverCheck;
+    private final int memoryLimitPerUser;
+    private final int memoryLimitTotal;
+    private final int maxMessagesPerUser;
+    private final int maxMessagesTotal;
+
+    public OfflineMailbox() {
+        this(Paths.get(Constants.MAILBOX_DIRECTORY), Constants.MAILBOX_MEMORY_LIMIT_PER_USER,
+                Constants.MAILBOX_MEMORY_LIMIT_TOTAL, Constants.MAILBOX_MAX_MESSAGES_PER_USER,
+                Constants.MAILBOX_MAX_MESSAGES_TOTAL);
+    }
+
+    public OfflineMailbox(Path directory, int memoryLimitPerUser, int memoryLimitTotal, int maxMessagesPerUser,
+                          int maxMessagesTotal) {
+        this.mailboxes = new ConcurrentHashMap<>();
+        this.inMemoryTotal = new AtomicInteger();
+        this.storedTotal = new AtomicInteger();
+        this.fileCounter = new AtomicLong();
+        this.directory = directory;
+        ProcessHandle self = ProcessHandle.current();
+        long started = self.info().startInstant().map(instant -> instant.toEpochMilli())
+                .orElse(System.currentTimeMillis());
+        // Zero-padded so directories sort oldest first
+        this.ownDirectory = directory.resolve(String.format("%013d-%d", started, self.pid()));
+        this.handedOver = ConcurrentHashMap.newKeySet();
+        this.memoryLimitPerUser = memoryLimitPerUser;
+        this.memoryLimitTotal = memoryLimitTotal;
+        this.maxMessagesPerUser = maxMessagesPerUser;
+        this.maxMessagesTotal = maxMessagesTotal;
+        findHandedOver();
+        adoptHandedOver();
+    }
+
+    /**
+     * Queue a message for an offline recipient. Returns false if their
+     * mailbox, or the server's total for all mailboxes, is full.
+     */
+    public boolean store(String recipient, ChatEvent event) {
+        adoptHandedOver();
+        return append(recipient, event);
+    }
+
+    private boolean append(String recipient, ChatEvent event) {
+        while (true) {
+            Mailbox mailbox = mailboxes.computeIfAbsent(recipient, Mailbox::new);
+            synchronized (mailbox) {
+                // A mailbox drained concurrently is discarded; retry with a fresh one
+                if (mailbox.drained) {
+                    continue;
+                }
+                if (mailbox.size() >= maxMessagesPerUser) {
+                    return false;
+                }
+                if (storedTotal.incrementAndGet() > maxMessagesTotal) {
+                    storedTotal.decrementAndGet();
+                    return false;
+                }
+                // Once spilled, keep appending to disk so delivery order is preserved
+                if (!mailbox.spilled && mailbox.memory.size() < memoryLimitPerUser) {
+                    if (inMemoryTotal.incrementAndGet() <= memoryLimitTotal) {
+                        mailbox.memory.add(event);
+                        return true;
+                    }
+                    // Global memory budget exhausted; release the reservation and spill
+                    inMemoryTotal.decrementAndGet();
+                }
+                try {
+                    mailbox.spill(event);
+                    return true;
+                } catch (IOException e) {
+                    storedTotal.decrementAndGet();
+                    log.error("Spill failed for {}: {}", recipient, e.getMessage());
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove and return every queued message for a user, oldest first
+     */
+    public List<ChatEvent> drain(String recipient) {
+        adoptHandedOver();
+        Mailbox mailbox = mailboxes.remove(recipient);
+        if (mailbox == null) {
+            return Collections.emptyList();
+        }
+        synchronized (mailbox) {
+            mailbox.drained = true;
+            storedTotal.addAndGet(-mailbox.size());
+            List<ChatEvent> events = new ArrayList<>(mailbox.size());
+            events.addAll(mailbox.memory);
+            inMemoryTotal.addAndGet(-mailbox.memory.size());
+            mailbox.memory.clear();
+            try {
+                mailbox.readSpilled(events);
+            } catch (IOException e) {
+                // The file stays, to be taken over after the next restart
+                log.error("Could not read spilled messages for {}: {}", recipient, e.getMessage());
+            }
+            // Messages taken over from another process may interleave with ours
+            events.sort(Comparator.comparingLong(ChatEvent::getTimestamp));
+            return events;
+        }
+    }
+
+    /**
+     * Write every in-memory message to disk so another process can deliver it
+     */
+    public void flush() {
+        int written = 0;
+        for (Mailbox mailbox : mailboxes.values()) {
+            synchronized (mailbox) {
+                if (mailbox.drained || mailbox.memory.isEmpty()) {
+                    continue;
+                }
+                int count = mailbox.memory.size();
+                try {
+                    mailbox.persistMemory();
+                    inMemoryTotal.addAndGet(-count);
+                    written += count;
+                } catch (IOException e) {
+                    log.error("Could not flush mailbox: {}", e.getMessage());
+                }
+            }
+        }
+        if (written > 0) {
+            log.info("Flushed {} offline messages to disk", written);
+        }
+    }
+
+    public int getPendingCount(String recipient) {
+        Mailbox mailbox = mailboxes.get(recipient);
+        if (mailbox == null) {
+            return 0;
+        }
+        synchronized (mailbox) {
+            return mailbox.size();
+        }
+    }
+
+    public int getInMemoryCount() {
+        return inMemoryTotal.get();
+    }
+
+    /**
+     * Messages waiting in all mailboxes, in memory or on disk
+     */
+    public int getStoredCount() {
+        return storedTotal.get();
+    }
+
+    /**
+     * Note the spill directories of other processes, and spill files in the
+     * top directory from before per-process directories
+     */
+    private void findHandedOver() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                if (Files.isDirectory(entry) && !entry.equals(ownDirectory)) {
+                    handedOver.add(entry);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error loading mailboxes: {}", e.getMessage());
+        }
+        adopt(directory, false);
+    }
+
+    /**
+     * Take over the mailboxes of processes that have exited. While one is
+     * still draining it may add to its files, so they are left alone until
+     * it is gone. Checked at most once a second.
+     */
+    private void adoptHandedOver() {
+        if (handedOver.isEmpty() || System.currentTimeMillis() < nextHandoverCheck) {
+            return;
+        }
+        synchronized (handedOver) {
+            nextHandoverCheck = System.currentTimeMillis() + HANDOVER_CHECK_INTERVAL_MS;
+            List<Path> exited = new ArrayList<>();
+            for (Path dir : handedOver) {
+                if (!isRunning(dir)) {
+                    exited.add(dir);
+                }
+            }
+            // Oldest process first, so each user's messages keep their order
+            Collections.sort(exited);
+            for (Path dir : exited) {
+                // Anything that could not be read is tried again at the next check
+                if (adopt(dir, true)) {
+                    handedOver.remove(dir);
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the process that owns a spill directory is still running. The
+     * start time must match too, as the PID may since have been reused.
+     */
+    private static boolean isRunning(Path dir) {
+        String name = dir.getFileName().toString();
+        int dash = name.indexOf('-');
+        try {
+            long started = Long.parseLong(name.substring(0, dash));
+            long pid = Long.parseLong(name.substring(dash + 1));
+            return ProcessHandle.of(pid).filter(ProcessHandle::isAlive)
+                    .filter(process -> process.info().startInstant()
+                            .map(instant -> instant.toEpochMilli() == started).orElse(true))
+                    .isPresent();
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Queue here every message in a directory's spill files, deleting each
+     * file once its messages are queued
+     *
+     * @return false if a file could not be read and was left in place
+     */
+    private boolean adopt(Path dir, boolean removeDirectory) {
+        int adopted = 0;
+        int dropped = 0;
+        boolean complete = true;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.box")) {
+            for (Path file : files) {
+                if (!Files.isRegularFile(file)) {
+                    continue;
+                }
+                String recipient = recipientOf(file.getFileName().toString());
+                List<ChatEvent> events = new ArrayList<>();
+                try {
+                    readAll(file, events);
+                } catch (IOException e) {
+                    log.error("Could not read {}: {}", file, e.getMessage());
+                    complete = false;
+                    continue;
+                }
+                for (ChatEvent event : events) {
+                    if (append(recipient, event)) {
+                        adopted++;
+                    } else {
+                        dropped++;
+                    }
+                }
+                Files.delete(file);
+            }
+        } catch (IOException e) {
+            log.error("Error taking over mailboxes in {}: {}", dir, e.getMessage());
+            complete = false;
+        }
+        if (complete && removeDirectory) {
+            removeDirectory(dir);
+        }
+        if (dropped > 0) {
+            log.warn("Took over {} offline messages from {}, dropped {} as mailboxes were full",
+                    adopted, dir.getFileName(), dropped);
+        } else if (adopted > 0) {
+            log.info("Took over {} offline messages from {}", adopted, dir.getFileName());
+        }
+        return complete;
+    }
+
+    /**
+     * Recipient from a spill file name, "name~counter.box" or from before
+     * counters "name.box". URL encoding always escapes '~'.
+     */
+    private static String recipientOf(String fileName) {
+        String stem = fileName.substring(0, fileName.length() - ".box".length());
+        int tilde = stem.lastIndexOf('~');
+        return URLDecoder.decode(tilde >= 0 ? stem.substring(0, tilde) : stem, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Delete an exited process's emptied directory, with any temp file a
+     * crash left behind mid-flush
+     */
+    private static void removeDirectory(Path dir) {
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(dir, "*.tmp")) {
+            for (Path leftover : leftovers) {
+                Files.delete(leftover);
+            }
+            Files.delete(dir);
+        } catch (IOException e) {
+            log.error("Could not remove {}: {}", dir, e.getMessage());
+        }
+    }
+
+    /**
+     * Every whole message in a spill file. A record cut short by a crash, or
+     * garbled, ends the file; other I/O errors are thrown, with nothing read.
+     */
+    private static void readAll(Path file, List<ChatEvent> events) throws IOException {
+        List<ChatEvent> read = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file.toFile()), 64 * 1024))) {
+            while (true) {
+                read.add(new ChatEvent(ChatEvent.Kind.PRIVATE, in.readUTF(), in.readUTF(), in.readUTF(),
+                        in.readLong()));
+            }
+        } catch (EOFException e) {
+            // End of mailbox
+        } catch (UTFDataFormatException e) {
+            log.warn("Skipping the corrupt end of {}", file);
+        }
+        events.addAll(read);
+    }
+
+    private class Mailbox {
+        final ArrayDeque<ChatEvent> memory;
+        final Path file;
+        boolean spilled;
+        boolean drained;
+        int diskCount;
+
+        Mailbox(String recipient) {
+            this.memory = new ArrayDeque<>();
+            this.file = ownDirectory.resolve(URLEncoder.encode(recipient, StandardCharsets.UTF_8)
+                    + "~" + fileCounter.incrementAndGet() + ".box");
+        }
+
+        int size() {
+            return memory.size() + diskCount;
+        }
+
+        void spill(ChatEvent event) throws IOException {
+            Files.createDirectories(ownDirectory);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file.toFile(), true)))) {
+                write(out, event);
+            }
+            spilled = true;
+            diskCount++;
+        }
+
+        /**
+         * Move the in-memory messages to disk. They are older than anything
+         * already spilled, so they go in front of the existing file.
+         */
+        void persistMemory() throws IOException {
+            Files.createDirectories(ownDirectory);
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp.toFile())))) {
+                for (ChatEvent event : memory) {
+                    write(out, event);
+                }
+                if (spilled && Files.exists(file)) {
+                    Files.copy(file, out);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            diskCount += memory.size();
+            memory.clear();
+            spilled = true;
+        }
+
+        private void write(DataOutputStream out, ChatEvent event) throws IOException {
+            out.writeUTF(event.getSender());
+            out.writeUTF(event.getRecipient());
+            out.writeUTF(event.getContent());
+            out.writeLong(event.getTimestamp());
+        }
+
+        /**
+         * Read the spill file and delete it; left in place if it cannot be read
+         */
+        void readSpilled(List<ChatEvent> events) throws IOException {
+            if (!spilled || !Files.exists(file)) {
+                return;
+            }
+            readAll(file, events);
+            Files.delete(file);
+        }
+    }
+}
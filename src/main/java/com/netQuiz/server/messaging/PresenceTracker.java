@@ -0,0 +1,69 @@
+package com.netQuiz.server.messaging;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects presence changes between flushes. Each flush produces one
+ * versioned delta holding the final state of every user that changed,
+ * so a login storm costs one frame per client per window instead of a
+ * full user list per login.
+ */
+class PresenceTracker {
+    // true = joined, false = left; last change in the window wins
+    private final Map<String, Boolean> pending;
+    private final Set<String> typing;
+    private long version;
+
+    PresenceTracker() {
+        this.pending = new LinkedHashMap<>();
+        this.typing = new LinkedHashSet<>();
+        this.version = 0;
+    }
+
+    synchronized void recordJoin(String username) {
+        pending.put(username, Boolean.TRUE);
+    }
+
+    synchronized void recordLeave(String username) {
+        pending.put(username, Boolean.FALSE);
+        typing.remove(username);
+    }
+
+    synchronized void recordTyping(String username) {
+        typing.add(username);
+    }
+
+    synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Take the pending changes as the next version, or null if nothing changed
+     */
+    synchronized PresenceUpdate drain() {
+        if (pending.isEmpty() && typing.isEmpty()) {
+            return null;
+        }
+
+        List<String> joined = new ArrayList<>();
+        List<String> left = new ArrayList<>();
+        for (Map.Entry<String, Boolean> entry : pending.entrySet()) {
+            if (entry.getValue()) {
+                joined.add(entry.getKey());
+            } else {
+                left.add(entry.getKey());
+            }
+        }
+        List<String> typingNow = new ArrayList<>(typing);
+        pending.clear();
+        typing.clear();
+
+        long baseVersion = version++;
+        return PresenceUpdate.delta(baseVersion, version, joined, left, typingNow);
+    }
+}
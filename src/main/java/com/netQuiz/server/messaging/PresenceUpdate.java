@@ -0,0 +1,81 @@
+package com.netQuiz.server.messaging;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Presence frame sent to clients: either a full snapshot at a version, or
+ * the users who joined, left or were typing between two versions.
+ * One instance is shared by every recipient of a flush.
+ */
+public class PresenceUpdate {
+    private final boolean snapshot;
+    private final long baseVersion;
+    private final long version;
+    private final List<String> joined;
+    private final List<String> left;
+    private final List<String> typing;
+    private volatile byte[] encoded;
+
+    private PresenceUpdate(boolean snapshot, long baseVersion, long version,
+                           List<String> joined, List<String> left, List<String> typing) {
+        this.snapshot = snapshot;
+        this.baseVersion = baseVersion;
+        this.version = version;
+        this.joined = joined;
+        this.left = left;
+        this.typing = typing;
+    }
+
+    static PresenceUpdate snapshot(long version, List<String> users) {
+        return new PresenceUpdate(true, version, version, users, List.of(), List.of());
+    }
+
+    static PresenceUpdate delta(long baseVersion, long version,
+                                List<String> joined, List<String> left, List<String> typing) {
+        return new PresenceUpdate(false, baseVersion, version, joined, left, typing);
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Version the client must hold for this delta to apply
+     */
+    public long getBaseVersion() {
+        return baseVersion;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Joined users for a delta, or every online user for a snapshot
+     */
+    public List<String> getJoined() {
+        return joined;
+    }
+
+    public List<String> getLeft() {
+        return left;
+    }
+
+    public List<String> getTyping() {
+        return typing;
+    }
+
+    /**
+     * Encode the frame once and reuse the bytes for every recipient.
+     * Only one wire format consumes presence, so a single slot is enough.
+     */
+    public byte[] getEncoded(Function<PresenceUpdate, byte[]> encoder) {
+        byte[] bytes = encoded;
+        if (bytes == null) {
+            bytes = encoder.apply(this);
+            encoded = bytes;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,112 @@
+package com.netQuiz.server.messaging;
+
+/**
+ * All connections belonging to one user, at most one per transport kind
+ */
+class Session {
+    private final String username;
+    private final ChatTransport[] transports;
+    private final TokenBucket rateLimit;
+    private volatile ChatTransport primary;
+    private int id = -1; // Assigned by SessionRegistry
+
+    Session(String username, TokenBucket rateLimit) {
+        this.username = username;
+        this.rateLimit = rateLimit;
+        this.transports = new ChatTransport[ChatTransport.Kind.values().length];
+    }
+
+    String getUsername() {
+        return username;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
+    TokenBucket getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * Attach a transport, returning the one it replaced (if any)
+     */
+    synchronized ChatTransport addTransport(ChatTransport transport) {
+        int slot = transport.getKind().ordinal();
+        ChatTransport previous = transports[slot];
+        transports[slot] = transport;
+        updatePrimary();
+        return previous == transport ? null : previous;
+    }
+
+    synchronized boolean removeTransport(ChatTransport transport) {
+        int slot = transport.getKind().ordinal();
+        if (transports[slot] != transport) {
+            return false;
+        }
+        transports[slot] = null;
+        updatePrimary();
+        return true;
+    }
+
+    synchronized boolean hasTransport(ChatTransport.Kind kind) {
+        return transports[kind.ordinal()] != null;
+    }
+
+    ChatTransport getPrimary() {
+        return primary;
+    }
+
+    boolean isEmpty() {
+        return primary == null;
+    }
+
+    /**
+     * Deliver a chat event on the preferred connection only
+     */
+    void deliver(ChatEvent event) {
+        ChatTransport target = primary;
+        if (target != null) {
+            target.deliver(event);
+        }
+    }
+
+    void deliverPresence(PresenceUpdate update) {
+        for (ChatTransport transport : snapshot()) {
+            if (transport != null) {
+                transport.deliverPresence(update);
+            }
+        }
+    }
+
+    void closeAll() {
+        for (ChatTransport transport : snapshot()) {
+            if (transport != null) {
+                transport.close();
+            }
+        }
+    }
+
+    synchronized ChatTransport getTransport(ChatTransport.Kind kind) {
+        return transports[kind.ordinal()];
+    }
+
+    private synchronized ChatTransport[] snapshot() {
+        return transports.clone();
+    }
+
+    private void updatePrimary() {
+        ChatTransport preferred = null;
+        for (ChatTransport transport : transports) {
+            if (transport != null) {
+                preferred = transport;
+                break;
+            }
+        }
+        primary = preferred;
+    }
+}
@@ -0,0 +1,173 @@
+package com.netQuiz.server.messaging;
+
+import java.util.Arrays;
+
+/**
+ * This node's sessions, each under a small integer ID. Sessions sit in an
+ * array indexed by ID, and user names map to IDs through an open-addressing
+ * table of ints, so a session costs two array slots rather than a hash map
+ * node and entry. Freed IDs are reused, keeping the array dense.
+ *
+ * Changes are made under a lock; lookups and iteration take none and, like
+ * ConcurrentHashMap, may miss a change still in progress. Iterate without
+ * allocating by index:
+ * <pre>
+ * for (int id = 0, limit = registry.limit(); id &lt; limit; id++) {
+ *     Session session = registry.at(id);
+ *     if (session != null) { ... }
+ * }
+ * </pre>
+ */
+class SessionRegistry {
+    private static final int EMPTY = -1;
+    private static final int DELETED = -2;
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Session by ID; replaced, never shrunk, when it fills up
+    private volatile Session[] slots;
+    // Name hash -> ID with linear probing; at most half full, counting deleted entries
+    private volatile int[] index;
+    private volatile int limit;
+    private volatile int size;
+    private int[] freeIds;
+    private int freeCount;
+    private int used;
+
+    SessionRegistry() {
+        this.slots = new Session[INITIAL_CAPACITY];
+        this.index = emptyIndex(INITIAL_CAPACITY * 2);
+        this.freeIds = new int[INITIAL_CAPACITY];
+    }
+
+    Session get(String username) {
+        int[] table = index;
+        Session[] current = slots;
+        int mask = table.length - 1;
+        for (int i = spread(username.hashCode()) & mask; ; i = (i + 1) & mask) {
+            int id = table[i];
+            if (id == EMPTY) {
+                return null;
+            }
+            if (id >= 0 && id < current.length) {
+                Session session = current[id];
+                // Names are interned, so the identity check usually settles it
+                if (session != null && (session.getUsername() == username
+                        || session.getUsername().equals(username))) {
+                    return session;
+                }
+            }
+        }
+    }
+
+    boolean contains(String username) {
+        return get(username) != null;
+    }
+
+    /**
+     * Session with this ID, or null. IDs run from 0 to {@link #limit()}.
+     */
+    Session at(int id) {
+        Session[] current = slots;
+        return id < current.length ? current[id] : null;
+    }
+
+    /**
+     * One past the highest ID handed out so far
+     */
+    int limit() {
+        return limit;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Register a session for a name not already present, assigning its ID
+     */
+    synchronized void add(Session session) {
+        int id = freeCount > 0 ? freeIds[--freeCount] : limit;
+        if (id == slots.length) {
+            slots = Arrays.copyOf(slots, slots.length * 2);
+        }
+        session.setId(id);
+        slots[id] = session;
+        if (id == limit) {
+            limit = id + 1;
+        }
+
+        if ((used + 1) * 2 > index.length) {
+            rehash();
+        }
+        int[] table = index;
+        int mask = table.length - 1;
+        int i = spread(session.getUsername().hashCode()) & mask;
+        while (table[i] >= 0) {
+            i = (i + 1) & mask;
+        }
+        if (table[i] == EMPTY) {
+            used++;
+        }
+        table[i] = id;
+        size++;
+    }
+
+    synchronized boolean remove(Session session) {
+        int id = session.getId();
+        if (id < 0 || id >= limit || slots[id] != session) {
+            return false;
+        }
+        int[] table = index;
+        int mask = table.length - 1;
+        for (int i = spread(session.getUsername().hashCode()) & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+            if (table[i] == id) {
+                // Marked rather than emptied, so lookups probing past it still find later names
+                table[i] = DELETED;
+                break;
+            }
+        }
+        slots[id] = null;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+        }
+        freeIds[freeCount++] = id;
+        session.setId(-1);
+        size--;
+        return true;
+    }
+
+    /**
+     * Rebuild the index without deleted entries, growing it if live names
+     * alone would fill more than a quarter
+     */
+    private void rehash() {
+        int capacity = INITIAL_CAPACITY * 2;
+        while (capacity < size * 4 + 4) {
+            capacity *= 2;
+        }
+        int[] table = emptyIndex(capacity);
+        int mask = capacity - 1;
+        for (int id = 0; id < limit; id++) {
+            Session session = slots[id];
+            if (session != null) {
+                int i = spread(session.getUsername().hashCode()) & mask;
+                while (table[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = id;
+            }
+        }
+        used = size;
+        index = table;
+    }
+
+    private static int[] emptyIndex(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
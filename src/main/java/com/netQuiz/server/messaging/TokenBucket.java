@@ -0,0 +1,38 @@
+package com.netQuiz.server.messaging;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket in its GCRA form: the whole state is one
+ * "theoretical arrival time", so an admitted message costs a single CAS
+ * and there is no refill thread.
+ */
+public class TokenBucket {
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * @param ratePerSecond sustained rate
+     * @param burst         messages allowed back-to-back after an idle period
+     */
+    public TokenBucket(double ratePerSecond, int burst) {
+        this.emissionIntervalNanos = (long) (1_000_000_000L / ratePerSecond);
+        this.burstToleranceNanos = emissionIntervalNanos * Math.max(0, burst - 1);
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        while (true) {
+            long tat = theoreticalArrival.get();
+            long start = Math.max(tat, now);
+            if (start - now > burstToleranceNanos) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(tat, start + emissionIntervalNanos)) {
+                return true;
+            }
+        }
+    }
+}
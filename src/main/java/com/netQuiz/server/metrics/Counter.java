@@ -0,0 +1,27 @@
+package com.netQuiz.server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter. Increments are striped, so hot paths on many threads
+ * do not contend on one cache line.
+ */
+public class Counter {
+    private final LongAdder value;
+
+    Counter() {
+        this.value = new LongAdder();
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
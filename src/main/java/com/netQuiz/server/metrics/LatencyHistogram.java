@@ -0,0 +1,99 @@
+package com.netQuiz.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HDR-style latency histogram in microseconds.
+ * Each power of two is split into {@value #SUB_BUCKETS} linear sub-buckets,
+ * so any recorded value is within about 6% of its bucket bound, from 1us up
+ * to about 12 days, in a fixed array of counters. Recording is a few
+ * arithmetic operations and one atomic increment; there are no locks.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder sumMicros;
+
+    LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new LongAdder();
+        this.sumMicros = new LongAdder();
+    }
+
+    public void recordMicros(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sumMicros.add(value);
+    }
+
+    /**
+     * Record the time elapsed since a {@link System#nanoTime()} reading
+     */
+    public void recordSince(long startNanos) {
+        recordMicros((System.nanoTime() - startNanos) / 1000);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumMicros() {
+        return sumMicros.sum();
+    }
+
+    /**
+     * Upper bound of the bucket holding the given quantile (0..1)
+     */
+    public long quantileMicros(double quantile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return bucketUpperBound(i);
+            }
+        }
+        return bucketUpperBound(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Values below {@value #SUB_BUCKETS} get exact buckets; above that the
+     * exponent picks the row and the next bits the sub-bucket
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - 1)) - SUB_BUCKETS;
+        return exponent * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        int exponent = index / SUB_BUCKETS;
+        int subBucket = index % SUB_BUCKETS;
+        if (exponent == 0) {
+            return subBucket;
+        }
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - 1)) - 1;
+    }
+}
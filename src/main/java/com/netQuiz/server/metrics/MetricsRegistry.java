@@ -0,0 +1,128 @@
+package com.netQuiz.server.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide metrics. Handlers look up their counters and histograms once
+ * and keep the reference, so recording never touches the registry maps.
+ * Everything is rendered in the Prometheus text format by {@link #scrape()}.
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry instance = new MetricsRegistry();
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // Metric name -> series, sorted so the output is stable
+    private final Map<String, Family> families;
+
+    private MetricsRegistry() {
+        this.families = new ConcurrentSkipListMap<>();
+    }
+
+    public static MetricsRegistry getInstance() {
+        return instance;
+    }
+
+    public Counter counter(String name, String help) {
+        return counter(name, help, "");
+    }
+
+    /**
+     * Counter series with a label set such as {@code type="QUIZ"}
+     */
+    public Counter counter(String name, String help, String labels) {
+        return (Counter) family(name, help, "counter").series.computeIfAbsent(labels, l -> new Counter());
+    }
+
+    /**
+     * Latency of one protocol command, exported as a summary in seconds
+     */
+    public LatencyHistogram commandLatency(String command) {
+        return histogram("netquiz_command_duration_seconds", "Time to handle a client command",
+                "command=\"" + command + "\"");
+    }
+
+    public LatencyHistogram histogram(String name, String help, String labels) {
+        return (LatencyHistogram) family(name, help, "summary").series
+                .computeIfAbsent(labels, l -> new LatencyHistogram());
+    }
+
+    /**
+     * Value sampled at scrape time, e.g. a queue depth
+     */
+    public void gauge(String name, String help, LongSupplier value) {
+        gauge(name, help, "", value);
+    }
+
+    public void gauge(String name, String help, String labels, LongSupplier value) {
+        family(name, help, "gauge").series.put(labels, value);
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already a " + family.type);
+        }
+        return family;
+    }
+
+    /**
+     * Render all metrics in the Prometheus text exposition format
+     */
+    public String scrape() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            text.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            text.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                writeSeries(text, name, series.getKey(), series.getValue());
+            }
+        }
+        return text.toString();
+    }
+
+    private static void writeSeries(StringBuilder text, String name, String labels, Object metric) {
+        if (metric instanceof Counter) {
+            writeSample(text, name, labels, Long.toString(((Counter) metric).get()));
+        } else if (metric instanceof LongSupplier) {
+            writeSample(text, name, labels, Long.toString(((LongSupplier) metric).getAsLong()));
+        } else if (metric instanceof LatencyHistogram) {
+            LatencyHistogram histogram = (LatencyHistogram) metric;
+            for (double quantile : QUANTILES) {
+                String quantileLabel = "quantile=\"" + quantile + "\"";
+                writeSample(text, name, labels.isEmpty() ? quantileLabel : labels + "," + quantileLabel,
+                        seconds(histogram.quantileMicros(quantile)));
+            }
+            writeSample(text, name + "_sum", labels, seconds(histogram.getSumMicros()));
+            writeSample(text, name + "_count", labels, Long.toString(histogram.getCount()));
+        }
+    }
+
+    private static void writeSample(StringBuilder text, String name, String labels, String value) {
+        text.append(name);
+        if (!labels.isEmpty()) {
+            text.append('{').append(labels).append('}');
+        }
+        text.append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long micros) {
+        return Double.toString(micros / 1_000_000.0);
+    }
+
+    private static class Family {
+        final String help;
+        final String type;
+        final Map<String, Object> series;
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+            this.series = new ConcurrentSkipListMap<>();
+        }
+    }
+}
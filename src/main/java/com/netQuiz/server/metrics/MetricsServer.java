@@ -0,0 +1,101 @@
+package com.netQuiz.server.metrics;
+
+import com.netQuiz.server.logging.Logger;
+import com.netQuiz.shared.Constants;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the metrics registry at http://127.0.0.1:METRICS_PORT/metrics for
+ * Prometheus to scrape. Bound to loopback only.
+ */
+public class MetricsServer {
+    private static final Logger log = Logger.get("METRICS");
+
+    private final MetricsRegistry registry;
+    private final int port;
+    private HttpServer server;
+    private volatile boolean stopped;
+
+    public MetricsServer(MetricsRegistry registry) {
+        this(registry, Constants.METRICS_PORT);
+    }
+
+    public MetricsServer(MetricsRegistry registry, int port) {
+        this.registry = registry;
+        this.port = port;
+    }
+
+    public void start() {
+        try {
+            bind();
+        } catch (BindException e) {
+            // Usually the previous process is still draining after a hot restart
+            log.warn("Metrics port {} busy, retrying until it is free", port);
+            retryBind();
+        } catch (IOException e) {
+            log.error("Could not start metrics endpoint: {}", e.getMessage());
+        }
+    }
+
+    private synchronized void bind() throws IOException {
+        if (stopped) {
+            return;
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                port), 0);
+        server.createContext("/metrics", this::handleScrape);
+        server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "MetricsServer");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        log.info("Serving http://127.0.0.1:{}/metrics", port);
+    }
+
+    private void retryBind() {
+        Thread retry = new Thread(() -> {
+            while (!stopped) {
+                try {
+                    Thread.sleep(1000);
+                    bind();
+                    return;
+                } catch (BindException e) {
+                    // Still busy
+                } catch (IOException e) {
+                    log.error("Could not start metrics endpoint: {}", e.getMessage());
+                    return;
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "MetricsBind");
+        retry.setDaemon(true);
+        retry.start();
+    }
+
+    private void handleScrape(HttpExchange exchange) throws IOException {
+        byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public synchronized void stop() {
+        stopped = true;
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.netQuiz.server.notification;
+
+import com.netQuiz.server.metrics.LatencyHistogram;
+import com.netQuiz.server.metrics.MetricsRegistry;
+import com.netQuiz.shared.Constants;
+import com.netQuiz.shared.NotificationEvent;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded notification queue with priority lanes.
+ * Lanes are served by weighted round robin, so critical notices go out
+ * first without starving the others. Each lane has its own depth limit
+ * and the lanes share a total capacity; when the total is reached the
+ * lowest non-empty lane is shed first. Time from enqueue to dispatch is
+ * exported per lane as netquiz_notification_queue_wait_seconds.
+ */
+public class NotificationQueue {
+    /**
+     * Lanes in priority order, with their share of each scheduling round
+     */
+    public enum Lane {
+        CRITICAL(8, Constants.NOTIFICATION_CRITICAL_LANE_CAPACITY),
+        NORMAL(4, Constants.NOTIFICATION_NORMAL_LANE_CAPACITY),
+        LOW(1, Constants.NOTIFICATION_LOW_LANE_CAPACITY);
+
+        private final int weight;
+        private final int capacity;
+
+        Lane(int weight, int capacity) {
+            this.weight = weight;
+            this.capacity = capacity;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public static Lane of(NotificationEvent.EventType type) {
+            switch (type) {
+                case EXAM_NOTICE:
+                case SYSTEM:
+                    return CRITICAL;
+                case CHAT_ACTIVITY:
+                case TEST:
+                    return LOW;
+                default:
+                    return NORMAL;
+            }
+        }
+    }
+
+    private static final Lane[] LANES = Lane.values();
+
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final LaneQueue[] lanes;
+    private final int capacity;
+    private final NotificationServer.OverflowPolicy overflowPolicy;
+    private int size;
+    // Weighted round robin position
+    private int cursor;
+    private int credits;
+
+    public NotificationQueue(int capacity, NotificationServer.OverflowPolicy overflowPolicy) {
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.lanes = new LaneQueue[LANES.length];
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        for (Lane lane : LANES) {
+            lanes[lane.ordinal()] = new LaneQueue(metrics.histogram("netquiz_notification_queue_wait_seconds",
+                    "Time notifications wait in the queue before dispatch", "lane=\"" + lane + "\""));
+        }
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.cursor = 0;
+        this.credits = LANES[0].weight;
+    }
+
+    /**
+     * Queue an event on its lane, shedding lower-priority events when the
+     * queue is full. Returns false if the event itself was dropped.
+     */
+    public boolean offer(NotificationEvent event, Lane lane) {
+        lock.lock();
+        try {
+            LaneQueue queue = lanes[lane.ordinal()];
+
+            if (queue.entries.size() >= Math.min(lane.capacity, capacity)) {
+                if (overflowPolicy == NotificationServer.OverflowPolicy.DROP_NEWEST) {
+                    queue.dropped++;
+                    return false;
+                }
+                queue.entries.pollFirst();
+                queue.dropped++;
+                size--;
+            } else if (size >= capacity && !shedBelowOrAt(lane)) {
+                queue.dropped++;
+                return false;
+            }
+
+            queue.entries.addLast(new Entry(event, System.nanoTime()));
+            size++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop the oldest event from the lowest lane that is not above the
+     * incoming one
+     */
+    private boolean shedBelowOrAt(Lane incoming) {
+        for (int i = LANES.length - 1; i >= incoming.ordinal(); i--) {
+            if (lanes[i].entries.pollFirst() != null) {
+                lanes[i].dropped++;
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wait up to the timeout for the next event in scheduling order
+     */
+    public NotificationEvent poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return take(System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Move up to max queued events into the list in scheduling order
+     */
+    public int drainTo(List<NotificationEvent> target, int max) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            int drained = 0;
+            while (size > 0 && drained < max) {
+                target.add(take(now));
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private NotificationEvent take(long now) {
+        while (credits == 0 || lanes[cursor].entries.isEmpty()) {
+            cursor = (cursor + 1) % LANES.length;
+            credits = LANES[cursor].weight;
+        }
+        credits--;
+        size--;
+        Entry entry = lanes[cursor].entries.pollFirst();
+        lanes[cursor].wait.recordMicros(TimeUnit.NANOSECONDS.toMicros(now - entry.enqueuedAt));
+        return entry.event;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size(Lane lane) {
+        lock.lock();
+        try {
+            return lanes[lane.ordinal()].entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDroppedCount() {
+        lock.lock();
+        try {
+            long dropped = 0;
+            for (LaneQueue queue : lanes) {
+                dropped += queue.dropped;
+            }
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Entry {
+        final NotificationEvent event;
+        final long enqueuedAt;
+
+        Entry(NotificationEvent event, long enqueuedAt) {
+            this.event = event;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * One lane's events and drop count, guarded by the queue lock
+     */
+    private static class LaneQueue {
+        final ArrayDeque<Entry> entries;
+        final LatencyHistogram wait;
+        long dropped;
+
+        LaneQueue(LatencyHistogram wait) {
+            this.entries = new ArrayDeque<>();
+            this.wait = wait;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.netQuiz.server.notification;
+
+import com.netQuiz.shared.NotificationEvent;
+
+import java.util.List;
+
+/**
+ * Carries notifications raised on this node to the other cluster nodes,
+ * which push them to their own subscribers
+ */
+public interface NotificationRelay {
+
+    void forward(List<NotificationEvent> events);
+}
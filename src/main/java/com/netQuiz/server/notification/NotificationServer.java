@@ -1,33 +1,153 @@
 package com.netQuiz.server.notification;
 
+import com.netQuiz.server.logging.Logger;
+import com.netQuiz.server.messaging.TokenBucket;
+import com.netQuiz.server.metrics.Counter;
+import com.netQuiz.server.metrics.MetricsRegistry;
 import com.netQuiz.shared.Constants;
+import com.netQuiz.shared.NotificationEvent;
+import com.netQuiz.shared.NotificationProtocol;
+import com.netQuiz.shared.NotificationTopic;
+
 import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.concurrent.BlockingQueue;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * UDP notification broadcaster.
+ * Notifications are split by topic; each topic is its own sequenced stream
+ * sent either to the broadcast address or to the topic's multicast group.
+ * Every datagram is kept in a per-topic replay buffer; clients that detect
+ * a gap send a NACK to {@link Constants#UDP_NACK_PORT} and the missing
+ * datagrams are sent again. A topic that has sent nothing for a heartbeat
+ * interval sends a heartbeat with its latest sequence, so clients also
+ * notice a lost last packet, however busy the other topics are.
+ * Queued notifications wait in priority lanes (see {@link NotificationQueue})
+ * and are drained in batches, identical ones are coalesced, and as many as
+ * fit are packed into each datagram.
+ * Clients may also subscribe to topics over their login session; they
+ * receive the same coalesced batches as typed events, and topics nobody subscribed
+ * to are never encoded for TCP. Each subscriber has its own outbox written
+ * by a pusher pool (see {@link SubscriberOutbox}), so one slow session
+ * cannot hold up the broadcaster.
+ */
 public class NotificationServer implements Runnable {
-    private DatagramSocket socket;
-    private boolean running;
-    private BlockingQueue<String> messageQueue;
+    private static final Logger log = Logger.get("NOTIFY SERVER");
+
+    // Ignore repeated NACKs for the same sequence within this window
+    private static final long RETRANSMIT_SUPPRESS_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int MAX_NACK_RANGE = 256;
+    // Sources with a NACK rate limit; the least recently seen is forgotten past this
+    private static final int MAX_NACK_SOURCES = 4096;
+    private static final int MAX_BATCH = 512;
+
+    /**
+     * What to do when the queue is full
+     */
+    public enum OverflowPolicy {
+        DROP_NEWEST, DROP_OLDEST
+    }
+
+    private MulticastSocket socket;
+    private DatagramSocket nackSocket;
+    private volatile boolean running;
+    private NotificationQueue messageQueue;
+    private NotificationProtocol.DeliveryMode deliveryMode;
+    private final List<NotificationEvent> batch;
+    private final ByteBuffer datagramBuffer;
     private InetAddress broadcastAddress;
+    private final TopicStream[] streams;
+    private final List<CopyOnWriteArrayList<SubscriberOutbox>> subscribers;
+    private final Map<NotificationSubscriber, SubscriberOutbox> outboxes;
+    private final ThreadPoolExecutor pushers;
+    private final Counter subscribersCutOff;
+    // Only touched by the NACK thread
+    private final Map<InetAddress, TokenBucket> nackSources;
+    private final TokenBucket nackBudget;
+    private final Counter nacksThrottled;
+    private NotificationRelay relay;
+    private boolean broadcastsUdp = true;
 
     public NotificationServer() {
+        this(Constants.NOTIFICATION_QUEUE_CAPACITY, OverflowPolicy.DROP_OLDEST, Constants.NOTIFICATION_DELIVERY_MODE);
+    }
+
+    public NotificationServer(int queueCapacity, OverflowPolicy overflowPolicy,
+                              NotificationProtocol.DeliveryMode deliveryMode) {
         this.running = false;
-        this.messageQueue = new LinkedBlockingQueue<>();
+        this.messageQueue = new NotificationQueue(queueCapacity, overflowPolicy);
+        this.deliveryMode = deliveryMode;
+        this.batch = new ArrayList<>();
+        this.datagramBuffer = ByteBuffer.allocate(Constants.NOTIFICATION_MAX_DATAGRAM);
         try {
             this.broadcastAddress = getBroadcastAddress();
-            System.out.println("[NOTIFY SERVER] Using broadcast address: " + broadcastAddress);
+            log.info("Using broadcast address: {}", broadcastAddress);
         } catch (IOException e) {
-            System.err.println("[NOTIFY SERVER] Error getting broadcast address: " + e.getMessage());
+            log.error("Error getting broadcast address: {}", e.getMessage());
             try {
                 this.broadcastAddress = InetAddress.getByName("255.255.255.255");
-                System.out.println("[NOTIFY SERVER] Fallback broadcast: 255.255.255.255");
+                log.info("Fallback broadcast: 255.255.255.255");
             } catch (Exception ignored) {
             }
         }
+
+        // Targets are resolved once here instead of on every send
+        NotificationTopic[] topics = NotificationTopic.values();
+        this.streams = new TopicStream[topics.length];
+        this.subscribers = new ArrayList<>(topics.length);
+        for (NotificationTopic topic : topics) {
+            streams[topic.ordinal()] = new TopicStream(topic, resolveTarget(topic));
+            subscribers.add(new CopyOnWriteArrayList<>());
+        }
+        this.outboxes = new ConcurrentHashMap<>();
+        // Each outbox is queued at most once, so the task queue is bounded by the subscriber count
+        AtomicInteger threads = new AtomicInteger();
+        this.pushers = new ThreadPoolExecutor(Constants.NOTIFICATION_PUSH_THREADS, Constants.NOTIFICATION_PUSH_THREADS,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "NotifyPush-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pushers.allowCoreThreadTimeOut(true);
+        this.subscribersCutOff = MetricsRegistry.getInstance().counter(
+                "netquiz_notification_subscribers_cut_off_total",
+                "Session subscribers disconnected for not keeping up with notifications");
+        this.nackSources = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<InetAddress, TokenBucket> eldest) {
+                return size() > MAX_NACK_SOURCES;
+            }
+        };
+        this.nackBudget = new TokenBucket(Constants.NOTIFICATION_NACK_RATE_TOTAL,
+                Constants.NOTIFICATION_NACK_BURST_TOTAL);
+        this.nacksThrottled = MetricsRegistry.getInstance().counter("netquiz_notification_nacks_throttled_total",
+                "Requested retransmits skipped by the NACK rate limits");
+    }
+
+    private InetSocketAddress resolveTarget(NotificationTopic topic) {
+        InetAddress address = broadcastAddress;
+        if (deliveryMode == NotificationProtocol.DeliveryMode.MULTICAST) {
+            try {
+                address = topic.group();
+            } catch (UnknownHostException e) {
+                log.error("Bad multicast group for {}: {}", topic, e.getMessage());
+            }
+        }
+        return new InetSocketAddress(address, Constants.UDP_NOTIFICATION_PORT);
     }
 
     private InetAddress getBroadcastAddress() throws IOException {
@@ -45,84 +165,509 @@ public class NotificationServer implements Runnable {
         return InetAddress.getByName("255.255.255.255");
     }
 
+    /**
+     * Join a cluster before the server thread starts. Local notifications
+     * are forwarded through the relay; only one node sends UDP.
+     */
+    public void setRelay(NotificationRelay relay, boolean broadcastsUdp) {
+        this.relay = relay;
+        this.broadcastsUdp = broadcastsUdp;
+    }
+
+    /**
+     * Notifications raised on another node, queued like local ones
+     */
+    public void receiveRelayed(String origin, List<NotificationEvent> events) {
+        for (NotificationEvent event : events) {
+            event.setOrigin(origin);
+            sendNotification(event);
+        }
+    }
+
     @Override
     public void run() {
         try {
-            socket = new DatagramSocket(null);
-            socket.setReuseAddress(true);
-            socket.bind(new InetSocketAddress(Constants.UDP_NOTIFICATION_PORT));
-            socket.setBroadcast(true);
-
+            if (broadcastsUdp) {
+                openSockets();
+            } else {
+                log.info("UDP notifications are sent by another cluster node; pushing to sessions only");
+            }
             running = true;
-            System.out.println("[NOTIFY SERVER] Started UDP broadcaster on port " + Constants.UDP_NOTIFICATION_PORT);
 
-            sendNotification("SERVER:Notification server started");
+            notifySystemMessage("Notification server started");
 
+            long lastStallCheck = System.nanoTime();
+            long heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(Constants.NOTIFICATION_HEARTBEAT_MS);
             while (running) {
+                long now = System.nanoTime();
+                if (now - lastStallCheck >= heartbeatNanos) {
+                    cutOffStalled();
+                    lastStallCheck = now;
+                }
+                // Checked on every pass, as a steady stream on one topic may never let the poll time out
+                long wait = broadcastsUdp ? sendDueHeartbeats(now, heartbeatNanos) : heartbeatNanos;
                 try {
-                    String message = messageQueue.take();
-                    broadcastMessage(message);
+                    NotificationEvent message = messageQueue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (message != null) {
+                        collectBatch(message);
+                        broadcastBatch();
+                    }
                 } catch (InterruptedException ignored) {
                 }
             }
 
         } catch (IOException e) {
-            System.err.println("[NOTIFY SERVER] Socket error: " + e.getMessage());
+            log.error("Socket error: {}", e.getMessage());
         } finally {
             cleanup();
         }
     }
 
-    private void broadcastMessage(String message) {
-        try {
-            byte[] buffer = message.getBytes(StandardCharsets.UTF_8);
+    private void openSockets() throws IOException {
+        socket = new MulticastSocket(null);
+        socket.setReuseAddress(true);
+        socket.bind(new InetSocketAddress(Constants.UDP_NOTIFICATION_PORT));
+        if (deliveryMode == NotificationProtocol.DeliveryMode.MULTICAST) {
+            socket.setTimeToLive(Constants.NOTIFICATION_MULTICAST_TTL);
+        } else {
+            socket.setBroadcast(true);
+        }
+
+        // Shared with a replacement process during a hot restart
+        nackSocket = new DatagramSocket(null);
+        nackSocket.setReuseAddress(true);
+        if (Constants.SERVER_REUSE_PORT
+                && nackSocket.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+            nackSocket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        nackSocket.bind(new InetSocketAddress(Constants.UDP_NACK_PORT));
+        Thread nackThread = new Thread(this::listenForNacks, "NotificationNack");
+        nackThread.setDaemon(true);
+        nackThread.start();
+
+        log.info("Started UDP {} on port {} (NACK port {})", deliveryMode.name().toLowerCase(),
+                Constants.UDP_NOTIFICATION_PORT, Constants.UDP_NACK_PORT);
+    }
+
+    /**
+     * Gather everything that arrives within a short window after the first
+     * notification, so a burst goes out as a few full datagrams. A batch
+     * holding a critical notice is sent without waiting out the window.
+     */
+    private void collectBatch(NotificationEvent first) throws InterruptedException {
+        batch.clear();
+        batch.add(first);
+        boolean urgent = isCritical(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Constants.NOTIFICATION_BATCH_WINDOW_MS);
+        while (batch.size() < MAX_BATCH) {
+            int start = batch.size();
+            if (messageQueue.drainTo(batch, MAX_BATCH - start) > 0) {
+                for (int i = start; i < batch.size(); i++) {
+                    urgent |= isCritical(batch.get(i));
+                }
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (urgent || remaining <= 0) {
+                break;
+            }
+            NotificationEvent next = messageQueue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            urgent |= isCritical(next);
+        }
+    }
+
+    private static boolean isCritical(NotificationEvent event) {
+        return NotificationQueue.Lane.of(event.getType()) == NotificationQueue.Lane.CRITICAL;
+    }
+
+    /**
+     * Coalesce repeats in the batch (e.g. "X has sent a message." per chat
+     * line) and pack each topic's notifications into as few datagrams as possible
+     */
+    private void broadcastBatch() {
+        for (TopicStream stream : streams) {
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            Map<String, NotificationEvent> firsts = new HashMap<>();
+            for (NotificationEvent event : batch) {
+                if (event.getTopic() == stream.topic) {
+                    String key = event.toString();
+                    if (counts.merge(key, 1, Integer::sum) == 1) {
+                        firsts.put(key, event);
+                    }
+                }
+            }
+            if (!counts.isEmpty()) {
+                if (broadcastsUdp) {
+                    pack(stream, counts);
+                }
+                pushToSubscribers(stream.topic, counts, firsts);
+            }
+        }
+        if (relay != null) {
+            forwardLocal();
+        }
+    }
+
+    /**
+     * Send this node's events to the other nodes; relayed ones already went round
+     */
+    private void forwardLocal() {
+        List<NotificationEvent> local = new ArrayList<>(batch.size());
+        for (NotificationEvent event : batch) {
+            if (event.getOrigin() == null) {
+                local.add(event);
+            }
+        }
+        if (!local.isEmpty()) {
+            relay.forward(local);
+        }
+    }
+
+    /**
+     * Queue a topic's events for its session subscribers as one shared frame,
+     * coalesced the same way as the datagrams: each distinct event once, with
+     * its repeat count appended
+     */
+    private void pushToSubscribers(NotificationTopic topic, Map<String, Integer> counts,
+                                   Map<String, NotificationEvent> firsts) {
+        List<SubscriberOutbox> topicSubscribers = subscribers.get(topic.ordinal());
+        if (topicSubscribers.isEmpty()) {
+            return;
+        }
+        List<NotificationEvent> events = new ArrayList<>(counts.size());
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            NotificationEvent event = firsts.get(entry.getKey());
+            if (entry.getValue() > 1) {
+                event = new NotificationEvent(event.getType(), event.getPayload() + " (x" + entry.getValue() + ")",
+                        event.getTimestamp());
+            }
+            events.add(event);
+        }
+        byte[] frame = NotificationProtocol.encodeEventBatch(events);
+        for (SubscriberOutbox outbox : topicSubscribers) {
+            if (!outbox.offer(frame)) {
+                cutOff(outbox, Constants.NOTIFICATION_SUBSCRIBER_QUEUE + " frames behind");
+            }
+        }
+    }
+
+    /**
+     * Disconnect subscribers whose current write has been blocked too long
+     */
+    private void cutOffStalled() {
+        long now = System.nanoTime();
+        long timeout = TimeUnit.MILLISECONDS.toNanos(Constants.NOTIFICATION_SUBSCRIBER_WRITE_TIMEOUT_MS);
+        for (SubscriberOutbox outbox : outboxes.values()) {
+            if (outbox.closeIfStalled(now, timeout)) {
+                cutOff(outbox, "a write blocked for " + Constants.NOTIFICATION_SUBSCRIBER_WRITE_TIMEOUT_MS + "ms");
+            }
+        }
+    }
+
+    private void cutOff(SubscriberOutbox outbox, String reason) {
+        subscribersCutOff.increment();
+        log.warn("Disconnected a notification subscriber: {}", reason);
+        unsubscribe(outbox.getSubscriber());
+    }
+
+    /**
+     * Replace a session's topic subscriptions; an empty set unsubscribes it
+     */
+    public void subscribe(NotificationSubscriber subscriber, Set<NotificationTopic> topics) {
+        if (topics.isEmpty()) {
+            unsubscribe(subscriber);
+            return;
+        }
+        SubscriberOutbox outbox = outboxes.computeIfAbsent(subscriber,
+                s -> new SubscriberOutbox(s, pushers, Constants.NOTIFICATION_SUBSCRIBER_QUEUE));
+        for (NotificationTopic topic : NotificationTopic.values()) {
+            CopyOnWriteArrayList<SubscriberOutbox> topicSubscribers = subscribers.get(topic.ordinal());
+            if (topics.contains(topic)) {
+                topicSubscribers.addIfAbsent(outbox);
+            } else {
+                topicSubscribers.remove(outbox);
+            }
+        }
+    }
+
+    public void unsubscribe(NotificationSubscriber subscriber) {
+        SubscriberOutbox outbox = outboxes.remove(subscriber);
+        if (outbox == null) {
+            return;
+        }
+        for (CopyOnWriteArrayList<SubscriberOutbox> topicSubscribers : subscribers) {
+            topicSubscribers.remove(outbox);
+        }
+        outbox.discard();
+    }
+
+    public int getSubscriberCount(NotificationTopic topic) {
+        return subscribers.get(topic.ordinal()).size();
+    }
+
+    private void pack(TopicStream stream, Map<String, Integer> counts) {
+        int maxEntry = datagramBuffer.capacity() - NotificationProtocol.HEADER_SIZE
+                - NotificationProtocol.COUNT_SIZE - NotificationProtocol.ENTRY_OVERHEAD;
+        int entries = 0;
+        resetDatagram();
+
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            String text = entry.getValue() > 1 ? entry.getKey() + " (x" + entry.getValue() + ")" : entry.getKey();
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(bytes.length, maxEntry);
+
+            if (datagramBuffer.remaining() < NotificationProtocol.ENTRY_OVERHEAD + length) {
+                flushDatagram(stream, entries);
+                entries = 0;
+                resetDatagram();
+            }
+            datagramBuffer.putShort((short) length);
+            datagramBuffer.put(bytes, 0, length);
+            entries++;
+        }
+        if (entries > 0) {
+            flushDatagram(stream, entries);
+        }
+    }
 
-            // Force broadcast to all clients on local network
-            DatagramPacket packet = new DatagramPacket(
-                    buffer, buffer.length,
-                    InetAddress.getByName("255.255.255.255"),
-                    Constants.UDP_NOTIFICATION_PORT);
+    private void resetDatagram() {
+        datagramBuffer.clear();
+        datagramBuffer.position(NotificationProtocol.HEADER_SIZE + NotificationProtocol.COUNT_SIZE);
+    }
+
+    private void flushDatagram(TopicStream stream, int entries) {
+        byte[] datagram;
+        long sequence;
+        synchronized (stream) {
+            sequence = stream.nextSequence++;
+            datagramBuffer.put(0, NotificationProtocol.DATA);
+            datagramBuffer.put(1, stream.topic.code());
+            datagramBuffer.putLong(2, sequence);
+            datagramBuffer.putShort(NotificationProtocol.HEADER_SIZE, (short) entries);
+            datagram = new byte[datagramBuffer.position()];
+            datagramBuffer.get(0, datagram);
+            stream.remember(sequence, datagram);
+            stream.lastSend = System.nanoTime();
+        }
 
-            System.out.println("[NOTIFY SERVER] Broadcasting → " + message);
-            socket.send(packet);
+        if (log.isDebugEnabled()) {
+            // Guarded so the sequence is not boxed on every datagram
+            log.debug("Broadcasting {} #{} ({} notifications)", stream.topic, sequence, entries);
+        }
+        send(datagram, stream.target);
+    }
 
+    /**
+     * Heartbeat each topic that has sent nothing for an interval; a topic
+     * with traffic needs none, as its datagrams carry the sequence
+     *
+     * @return nanoseconds until the next topic is due
+     */
+    private long sendDueHeartbeats(long now, long intervalNanos) {
+        long wait = intervalNanos;
+        for (TopicStream stream : streams) {
+            long latest;
+            synchronized (stream) {
+                long idle = now - stream.lastSend;
+                if (idle < intervalNanos) {
+                    wait = Math.min(wait, intervalNanos - idle);
+                    continue;
+                }
+                latest = stream.nextSequence - 1;
+                stream.lastSend = now;
+            }
+            send(NotificationProtocol.encode(NotificationProtocol.HEARTBEAT, stream.topic, latest, new byte[0]),
+                    stream.target);
+        }
+        return wait;
+    }
+
+    private void send(byte[] datagram, InetSocketAddress target) {
+        try {
+            socket.send(new DatagramPacket(datagram, datagram.length, target));
         } catch (IOException e) {
-            System.err.println("[NOTIFY SERVER] Failed to broadcast: " + e.getMessage());
+            log.warn("Failed to broadcast: {}", e.getMessage());
         }
     }
 
+    /**
+     * Serve NACKs from the replay buffers. Missing datagrams are sent to the
+     * topic's target again, so one retransmit repairs every client that lost
+     * the same packet. As a NACK is far smaller than what it asks for, and
+     * its source address is easily forged, each requested sequence is
+     * charged to a per-source and a global rate limit.
+     */
+    private void listenForNacks() {
+        byte[] buffer = new byte[NotificationProtocol.HEADER_SIZE + 16];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+
+        while (!nackSocket.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                nackSocket.receive(packet);
+                ByteBuffer request = ByteBuffer.wrap(buffer, 0, packet.getLength());
+                if (packet.getLength() < buffer.length || request.get() != NotificationProtocol.NACK) {
+                    continue;
+                }
+                NotificationTopic topic = NotificationTopic.fromCode(request.get());
+                if (topic == null) {
+                    continue;
+                }
+                request.getLong();
+                long from = request.getLong();
+                long to = Math.min(request.getLong(), from + MAX_NACK_RANGE - 1);
+                TokenBucket source = nackSources.computeIfAbsent(packet.getAddress(),
+                        address -> new TokenBucket(Constants.NOTIFICATION_NACK_RATE_PER_SOURCE,
+                                Constants.NOTIFICATION_NACK_BURST_PER_SOURCE));
+                retransmit(streams[topic.ordinal()], from, to, source);
+            } catch (IOException e) {
+                if (!nackSocket.isClosed()) {
+                    log.error("NACK receive error: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void retransmit(TopicStream stream, long from, long to, TokenBucket source) {
+        long now = System.nanoTime();
+        for (long sequence = from; sequence <= to; sequence++) {
+            if (!source.tryAcquire() || !nackBudget.tryAcquire()) {
+                nacksThrottled.add(to - sequence + 1);
+                return;
+            }
+            byte[] datagram;
+            synchronized (stream) {
+                datagram = stream.replay(sequence, now);
+            }
+            if (datagram != null) {
+                send(datagram, stream.target);
+            }
+        }
+    }
+
+    /**
+     * Queue a notification on the lane for its type. When its lane is full
+     * the overflow policy decides whether the oldest queued or this new
+     * notification is dropped; when the whole queue is full lower lanes are
+     * shed first.
+     */
+    public void sendNotification(NotificationEvent notification) {
+        messageQueue.offer(notification, NotificationQueue.Lane.of(notification.getType()));
+    }
+
     public void sendNotification(String message) {
-        messageQueue.offer(message);
+        notifySystemMessage(message);
+    }
+
+    public int getQueueDepth() {
+        return messageQueue.size();
+    }
+
+    public int getQueueDepth(NotificationQueue.Lane lane) {
+        return messageQueue.size(lane);
+    }
+
+    public long getDroppedCount() {
+        return messageQueue.getDroppedCount();
     }
 
     public void notifyNewQuiz(String quizTitle, String creator) {
-        sendNotification("NEW_QUIZ:" + quizTitle + " by " + creator);
+        sendNotification(new NotificationEvent(NotificationEvent.EventType.NEW_QUIZ, quizTitle + " by " + creator));
+    }
+
+    public void notifyQuizResult(String quizId, String userId, int score) {
+        sendNotification(new NotificationEvent(NotificationEvent.EventType.QUIZ_RESULT,
+                userId + " scored " + score + " on " + quizId));
+    }
+
+    /**
+     * Time-critical exam announcement, e.g. "exam ends in 1 minute"
+     */
+    public void notifyExamNotice(String message) {
+        sendNotification(new NotificationEvent(NotificationEvent.EventType.EXAM_NOTICE, message));
     }
 
     public void notifyNewFile(String fileName, String uploader) {
-        sendNotification("NEW_FILE:" + fileName + " uploaded by " + uploader);
+        sendNotification(new NotificationEvent(NotificationEvent.EventType.NEW_FILE,
+                fileName + " uploaded by " + uploader));
     }
 
     public void notifySystemMessage(String message) {
-        sendNotification("SYSTEM:" + message);
+        sendNotification(new NotificationEvent(NotificationEvent.EventType.SYSTEM, message));
     }
 
     public void notifyUserLogin(String username) {
-        sendNotification("USER_LOGIN:" + username);
+        sendNotification(new NotificationEvent(NotificationEvent.EventType.USER_LOGIN, username));
     }
 
     public void notifyUserLogout(String username) {
-        sendNotification("USER_LOGOUT:" + username);
+        sendNotification(new NotificationEvent(NotificationEvent.EventType.USER_LOGOUT, username));
+    }
+
+    public void notifyChatActivity(String sender) {
+        sendNotification(new NotificationEvent(NotificationEvent.EventType.CHAT_ACTIVITY, sender));
     }
 
     public void testBroadcast() {
-        sendNotification("TEST:Hello from server at " + System.currentTimeMillis());
+        sendNotification(new NotificationEvent(NotificationEvent.EventType.TEST,
+                "Hello from server at " + System.currentTimeMillis()));
     }
 
     private void cleanup() {
+        running = false;
+        pushers.shutdownNow();
         if (socket != null && !socket.isClosed()) {
             socket.close();
         }
-        System.out.println("[NOTIFY SERVER] Shutdown complete.");
+        if (nackSocket != null && !nackSocket.isClosed()) {
+            nackSocket.close();
+        }
+        log.info("Shutdown complete.");
+    }
+
+    /**
+     * Sequence counter, target and replay buffer (indexed by sequence % size)
+     * for one topic. Guarded by the instance lock.
+     */
+    private static class TopicStream {
+        final NotificationTopic topic;
+        final InetSocketAddress target;
+        final byte[][] replayBuffer;
+        final long[] replaySequences;
+        final long[] lastRetransmit;
+        long nextSequence;
+        // Last new datagram or heartbeat; retransmits do not count
+        long lastSend;
+
+        TopicStream(NotificationTopic topic, InetSocketAddress target) {
+            this.topic = topic;
+            this.target = target;
+            this.replayBuffer = new byte[Constants.NOTIFICATION_REPLAY_BUFFER_SIZE][];
+            this.replaySequences = new long[Constants.NOTIFICATION_REPLAY_BUFFER_SIZE];
+            this.lastRetransmit = new long[Constants.NOTIFICATION_REPLAY_BUFFER_SIZE];
+            this.nextSequence = 1;
+            this.lastSend = System.nanoTime();
+        }
+
+        void remember(long sequence, byte[] datagram) {
+            int slot = (int) (sequence % replayBuffer.length);
+            replayBuffer[slot] = datagram;
+            replaySequences[slot] = sequence;
+            lastRetransmit[slot] = 0;
+        }
+
+        byte[] replay(long sequence, long now) {
+            int slot = (int) (sequence % replayBuffer.length);
+            if (sequence <= 0 || replaySequences[slot] != sequence
+                    || now - lastRetransmit[slot] < RETRANSMIT_SUPPRESS_NANOS) {
+                return null;
+            }
+            lastRetransmit[slot] = now;
+            return replayBuffer[slot];
+        }
     }
 }
@@ -0,0 +1,19 @@
+package com.netQuiz.server.notification;
+
+/**
+ * A client session that receives typed notification events over its own
+ * connection. Frames are encoded once per batch and shared by every
+ * subscriber of the topic.
+ */
+public interface NotificationSubscriber {
+
+    /**
+     * Write an encoded NOTIFY_BATCH frame
+     */
+    void deliverNotifications(byte[] frame);
+
+    /**
+     * Drop the connection; called when the session stops keeping up
+     */
+    void close();
+}
@@ -0,0 +1,123 @@
+package com.netQuiz.server.notification;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Frames waiting for one session subscriber. The broadcaster only queues
+ * them and a pusher thread does the writing, so a session that stops
+ * reading holds up itself and nobody else. A subscriber whose queue fills
+ * up, or whose write has been stuck too long, is cut off and closed.
+ */
+class SubscriberOutbox implements Runnable {
+    private final NotificationSubscriber subscriber;
+    private final Executor pushers;
+    private final int capacity;
+    private final ArrayDeque<byte[]> frames;
+    // Whether a pusher has this outbox in hand; guarded by this
+    private boolean scheduled;
+    private boolean closed;
+    // When the current write started, or 0 between writes
+    private volatile long writingSince;
+
+    SubscriberOutbox(NotificationSubscriber subscriber, Executor pushers, int capacity) {
+        this.subscriber = subscriber;
+        this.pushers = pushers;
+        this.capacity = capacity;
+        this.frames = new ArrayDeque<>();
+    }
+
+    NotificationSubscriber getSubscriber() {
+        return subscriber;
+    }
+
+    /**
+     * Queue a frame without blocking
+     *
+     * @return false if the subscriber is too far behind and was cut off
+     */
+    boolean offer(byte[] frame) {
+        boolean cutOff;
+        synchronized (this) {
+            if (closed) {
+                return true;
+            }
+            cutOff = frames.size() >= capacity;
+            if (cutOff) {
+                closed = true;
+                frames.clear();
+            } else {
+                frames.addLast(frame);
+                if (scheduled) {
+                    return true;
+                }
+                scheduled = true;
+            }
+        }
+        if (cutOff) {
+            subscriber.close();
+            return false;
+        }
+        try {
+            pushers.execute(this);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            discard();
+        }
+        return true;
+    }
+
+    /**
+     * Cut the subscriber off if a write has been blocked longer than the timeout
+     *
+     * @return true if it was cut off
+     */
+    boolean closeIfStalled(long now, long timeoutNanos) {
+        long since = writingSince;
+        if (since == 0 || now - since < timeoutNanos) {
+            return false;
+        }
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            closed = true;
+            frames.clear();
+        }
+        // Closing the socket also fails the blocked write, freeing the pusher
+        subscriber.close();
+        return true;
+    }
+
+    /**
+     * Stop queueing after the subscriber unsubscribed
+     */
+    synchronized void discard() {
+        closed = true;
+        frames.clear();
+    }
+
+    /**
+     * Write everything queued, then give the pusher back
+     */
+    @Override
+    public void run() {
+        while (true) {
+            byte[] frame;
+            synchronized (this) {
+                frame = closed ? null : frames.pollFirst();
+                if (frame == null) {
+                    scheduled = false;
+                    return;
+                }
+            }
+            writingSince = System.nanoTime();
+            try {
+                subscriber.deliverNotifications(frame);
+            } finally {
+                writingSince = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.netQuiz.server.search;
+
+import java.util.Arrays;
+
+/**
+ * Append-only postings list for a single term.
+ * Doc IDs are stored as variable-length deltas followed by the term frequency,
+ * so a typical posting costs two or three bytes instead of a boxed Integer.
+ * A skip entry every {@link #SKIP_INTERVAL} postings lets cursors jump ahead
+ * without decoding the whole list.
+ */
+class PostingsList {
+    static final int SKIP_INTERVAL = 128;
+
+    private byte[] data;
+    private int length;
+    private int lastDocId;
+    private int docFreq;
+
+    // Doc ID preceding each block and the byte offset where the block starts
+    private int[] skipDocIds;
+    private int[] skipOffsets;
+    private int skipCount;
+
+    PostingsList() {
+        this.data = new byte[8];
+        this.length = 0;
+        this.lastDocId = -1;
+        this.docFreq = 0;
+        this.skipDocIds = new int[0];
+        this.skipOffsets = new int[0];
+        this.skipCount = 0;
+    }
+
+    /**
+     * Add a posting. Doc IDs must be strictly increasing, which holds because
+     * the index assigns them in arrival order.
+     */
+    void add(int docId, int termFreq) {
+        if (docFreq % SKIP_INTERVAL == 0) {
+            addSkip();
+        }
+        ensureCapacity(10);
+        writeVarInt(docId - lastDocId);
+        writeVarInt(termFreq);
+        lastDocId = docId;
+        docFreq++;
+    }
+
+    int getDocFreq() {
+        return docFreq;
+    }
+
+    int sizeInBytes() {
+        return length;
+    }
+
+    Cursor cursor() {
+        return new Cursor(data, length, skipDocIds, skipOffsets, skipCount);
+    }
+
+    private void addSkip() {
+        if (skipCount == skipDocIds.length) {
+            int capacity = Math.max(4, skipCount * 2);
+            skipDocIds = Arrays.copyOf(skipDocIds, capacity);
+            skipOffsets = Arrays.copyOf(skipOffsets, capacity);
+        }
+        skipDocIds[skipCount] = lastDocId;
+        skipOffsets[skipCount] = length;
+        skipCount++;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+        }
+    }
+
+    private void writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+
+    /**
+     * Forward-only decoder over a snapshot of the list.
+     */
+    static class Cursor {
+        private final byte[] data;
+        private final int end;
+        private final int[] skipDocIds;
+        private final int[] skipOffsets;
+        private final int skipCount;
+        private int pos;
+        private int docId;
+        private int termFreq;
+
+        Cursor(byte[] data, int end, int[] skipDocIds, int[] skipOffsets, int skipCount) {
+            this.data = data;
+            this.end = end;
+            this.skipDocIds = skipDocIds;
+            this.skipOffsets = skipOffsets;
+            this.skipCount = skipCount;
+            this.pos = 0;
+            this.docId = -1;
+        }
+
+        /**
+         * Position the cursor just before the block containing the given
+         * posting ordinal, so the next call to {@link #next()} starts there.
+         */
+        void seekToPosting(int ordinal) {
+            int block = Math.min(ordinal / SKIP_INTERVAL, skipCount - 1);
+            if (block > 0 && skipOffsets[block] > pos) {
+                pos = skipOffsets[block];
+                docId = skipDocIds[block];
+            }
+        }
+
+        /**
+         * Move to the first posting with a doc ID of at least {@code target}.
+         * Returns true if the cursor landed exactly on the target.
+         */
+        boolean advance(int target) {
+            if (docId >= target) {
+                return docId == target;
+            }
+            // Last block whose preceding doc ID is still below the target
+            int lo = 0;
+            int hi = skipCount - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (skipDocIds[mid] < target) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (skipCount > 0 && skipOffsets[lo] > pos) {
+                pos = skipOffsets[lo];
+                docId = skipDocIds[lo];
+            }
+            while (docId < target) {
+                if (!next()) {
+                    return false;
+                }
+            }
+            return docId == target;
+        }
+
+        boolean next() {
+            if (pos >= end) {
+                return false;
+            }
+            docId += readVarInt();
+            termFreq = readVarInt();
+            return true;
+        }
+
+        int docId() {
+            return docId;
+        }
+
+        int termFreq() {
+            return termFreq;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.netQuiz.server.search;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing int to float map used to accumulate per-document scores
+ * during a query without boxing.
+ */
+class ScoreAccumulator {
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private float[] values;
+    private int size;
+
+    ScoreAccumulator(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        this.keys = new int[capacity];
+        this.values = new float[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    void add(int docId, float score) {
+        if (size * 2 >= keys.length) {
+            resize();
+        }
+        int slot = find(keys, docId);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = docId;
+            size++;
+        }
+        values[slot] += score;
+    }
+
+    /**
+     * Doc IDs currently holding a score, in ascending order.
+     */
+    int[] sortedKeys() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int key : keys) {
+            if (key != EMPTY) {
+                result[n++] = key;
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    float valueAt(int slot) {
+        return values[slot];
+    }
+
+    private static int find(int[] table, int key) {
+        int mask = table.length - 1;
+        int slot = (key * 0x9E3779B9) >>> 7 & mask;
+        while (table[slot] != EMPTY && table[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        float[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new float[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = find(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.netQuiz.server.search;
+
+import com.netQuiz.shared.FileInfo;
+import com.netQuiz.shared.SearchHit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Incremental in-memory inverted index over chat messages and shared files.
+ * Documents are appended as they arrive and ranked with BM25 at query time.
+ * Postings are delta/varint compressed and per-document data lives in
+ * parallel primitive arrays, so each indexed message costs a few dozen bytes
+ * on top of its text.
+ */
+public class SearchIndex {
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int MAX_TOKEN_LENGTH = 32;
+    private static final int MAX_SNIPPET_LENGTH = 200;
+    // Upper bound on postings decoded per term when scanning; older postings of
+    // very common terms are skipped in favour of recent documents
+    private static final int MAX_SCAN_POSTINGS = 100_000;
+
+    private static final byte TYPE_CHAT = 0;
+    private static final byte TYPE_FILE = 1;
+
+    private final Map<String, PostingsList> postings;
+    private final ReadWriteLock lock;
+
+    // Document store, indexed by doc ID
+    private byte[] docTypes;
+    private long[] docTimestamps;
+    private int[] docLengths;
+    private String[] docTitles;
+    private String[] docTexts;
+    private int docCount;
+    private long totalLength;
+
+    public SearchIndex() {
+        this.postings = new HashMap<>();
+        this.lock = new ReentrantReadWriteLock();
+        this.docTypes = new byte[1024];
+        this.docTimestamps = new long[1024];
+        this.docLengths = new int[1024];
+        this.docTitles = new String[1024];
+        this.docTexts = new String[1024];
+        this.docCount = 0;
+        this.totalLength = 0;
+    }
+
+    /**
+     * Index a public chat message. The sender is searchable as well as the content.
+     */
+    public void indexChatMessage(String sender, String content, long timestamp) {
+        addDocument(TYPE_CHAT, sender, content, timestamp, sender + " " + content);
+    }
+
+    /**
+     * Index a shared file by name and uploader.
+     */
+    public void indexFile(FileInfo fileInfo) {
+        String name = fileInfo.getFileName();
+        addDocument(TYPE_FILE, name, "uploaded by " + fileInfo.getUploader(), fileInfo.getUploadTime(),
+                name + " " + fileInfo.getUploader());
+    }
+
+    /**
+     * Return up to {@code limit} hits ordered by relevance, newest first on ties.
+     * Any query term may match; documents matching more terms rank higher.
+     */
+    public List<SearchHit> search(String query, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (docCount == 0) {
+                return Collections.emptyList();
+            }
+
+            // Rarest terms first so the candidate set stays small
+            List<PostingsList> lists = new ArrayList<>();
+            for (String term : new LinkedHashSet<>(terms)) {
+                PostingsList list = postings.get(term);
+                if (list != null) {
+                    lists.add(list);
+                }
+            }
+            if (lists.isEmpty()) {
+                return Collections.emptyList();
+            }
+            lists.sort((a, b) -> Integer.compare(a.getDocFreq(), b.getDocFreq()));
+
+            float avgLength = (float) totalLength / docCount;
+            ScoreAccumulator scores = new ScoreAccumulator(Math.min(lists.get(0).getDocFreq(), 1 << 16));
+
+            for (PostingsList list : lists) {
+                int df = list.getDocFreq();
+                float idf = (float) Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+
+                if (scores.size() > 0 && (df > docCount / 2 || df > MAX_SCAN_POSTINGS)) {
+                    // Common terms only re-rank the candidates found by rarer terms
+                    refineCandidates(list, idf, avgLength, scores);
+                } else {
+                    scanPostings(list, idf, avgLength, scores);
+                }
+            }
+
+            return collectTopHits(scores, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getDocumentCount() {
+        lock.readLock().lock();
+        try {
+            return docCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addDocument(byte type, String title, String text, long timestamp, String searchable) {
+        List<String> tokens = tokenize(searchable);
+        Collections.sort(tokens);
+
+        lock.writeLock().lock();
+        try {
+            int docId = docCount;
+            ensureDocCapacity(docId + 1);
+            docTypes[docId] = type;
+            docTimestamps[docId] = timestamp;
+            docLengths[docId] = tokens.size();
+            docTitles[docId] = title;
+            docTexts[docId] = text;
+            docCount++;
+            totalLength += tokens.size();
+
+            // Tokens are sorted, so equal terms are adjacent: count runs for term frequency
+            int i = 0;
+            while (i < tokens.size()) {
+                String term = tokens.get(i);
+                int j = i + 1;
+                while (j < tokens.size() && tokens.get(j).equals(term)) {
+                    j++;
+                }
+                postings.computeIfAbsent(term, t -> new PostingsList()).add(docId, j - i);
+                i = j;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void scanPostings(PostingsList list, float idf, float avgLength, ScoreAccumulator scores) {
+        PostingsList.Cursor cursor = list.cursor();
+        if (list.getDocFreq() > MAX_SCAN_POSTINGS) {
+            cursor.seekToPosting(list.getDocFreq() - MAX_SCAN_POSTINGS);
+        }
+        while (cursor.next()) {
+            int docId = cursor.docId();
+            scores.add(docId, bm25(idf, cursor.termFreq(), docId, avgLength));
+        }
+    }
+
+    private void refineCandidates(PostingsList list, float idf, float avgLength, ScoreAccumulator scores) {
+        PostingsList.Cursor cursor = list.cursor();
+        for (int docId : scores.sortedKeys()) {
+            if (cursor.advance(docId)) {
+                scores.add(docId, bm25(idf, cursor.termFreq(), docId, avgLength));
+            }
+        }
+    }
+
+    private float bm25(float idf, int tf, int docId, float avgLength) {
+        float norm = K1 * (1 - B + B * docLengths[docId] / avgLength);
+        return idf * tf * (K1 + 1) / (tf + norm);
+    }
+
+    private List<SearchHit> collectTopHits(ScoreAccumulator scores, int limit) {
+        int k = Math.min(limit, scores.size());
+        int[] heapDocs = new int[k];
+        float[] heapScores = new float[k];
+        int heapSize = 0;
+
+        // Min-heap of the best k documents seen so far
+        for (int slot = 0; slot < scores.capacity(); slot++) {
+            int docId = scores.keyAt(slot);
+            if (docId < 0) {
+                continue;
+            }
+            float score = scores.valueAt(slot);
+            if (heapSize < k) {
+                heapDocs[heapSize] = docId;
+                heapScores[heapSize] = score;
+                siftUp(heapDocs, heapScores, heapSize++);
+            } else if (ranksAbove(score, docId, heapScores[0], heapDocs[0])) {
+                heapDocs[0] = docId;
+                heapScores[0] = score;
+                siftDown(heapDocs, heapScores, heapSize);
+            }
+        }
+
+        SearchHit[] hits = new SearchHit[heapSize];
+        while (heapSize > 0) {
+            int docId = heapDocs[0];
+            hits[heapSize - 1] = toHit(docId, heapScores[0]);
+            heapSize--;
+            heapDocs[0] = heapDocs[heapSize];
+            heapScores[0] = heapScores[heapSize];
+            siftDown(heapDocs, heapScores, heapSize);
+        }
+        return Arrays.asList(hits);
+    }
+
+    private static boolean ranksAbove(float score, int docId, float otherScore, int otherDocId) {
+        return score > otherScore || (score == otherScore && docId > otherDocId);
+    }
+
+    private static void siftUp(int[] docs, float[] scores, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!ranksAbove(scores[parent], docs[parent], scores[i], docs[i])) {
+                break;
+            }
+            swap(docs, scores, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] docs, float[] scores, int size) {
+        int i = 0;
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                break;
+            }
+            int smallest = left;
+            int right = left + 1;
+            if (right < size && ranksAbove(scores[left], docs[left], scores[right], docs[right])) {
+                smallest = right;
+            }
+            if (!ranksAbove(scores[i], docs[i], scores[smallest], docs[smallest])) {
+                break;
+            }
+            swap(docs, scores, i, smallest);
+            i = smallest;
+        }
+    }
+
+    private static void swap(int[] docs, float[] scores, int a, int b) {
+        int d = docs[a];
+        docs[a] = docs[b];
+        docs[b] = d;
+        float s = scores[a];
+        scores[a] = scores[b];
+        scores[b] = s;
+    }
+
+    private SearchHit toHit(int docId, float score) {
+        SearchHit.HitType type = docTypes[docId] == TYPE_FILE ? SearchHit.HitType.FILE : SearchHit.HitType.CHAT;
+        String text = docTexts[docId];
+        if (text.length() > MAX_SNIPPET_LENGTH) {
+            text = text.substring(0, MAX_SNIPPET_LENGTH) + "...";
+        }
+        return new SearchHit(type, docTitles[docId], text, docTimestamps[docId], score);
+    }
+
+    private void ensureDocCapacity(int required) {
+        if (required > docTypes.length) {
+            int capacity = Math.max(required, docTypes.length * 2);
+            docTypes = Arrays.copyOf(docTypes, capacity);
+            docTimestamps = Arrays.copyOf(docTimestamps, capacity);
+            docLengths = Arrays.copyOf(docLengths, capacity);
+            docTitles = Arrays.copyOf(docTitles, capacity);
+            docTexts = Arrays.copyOf(docTexts, capacity);
+        }
+    }
+
+    /**
+     * Split text into lowercase alphanumeric terms. File extensions and
+     * underscores act as separators, so "lab_report.pdf" matches "report".
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start <= MAX_TOKEN_LENGTH) {
+                    tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
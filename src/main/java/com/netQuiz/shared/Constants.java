@@ -1,17 +1,153 @@
 package com.netQuiz.shared;
 
 public class Constants {
-    public static final String SERVER_HOST = "localhost";
-    public static final int SERVER_PORT = 5002; // Single port for all TCP operations (changed from 5000)
+    // Clients can point at another cluster node with -Dnetquiz.server.host / -Dnetquiz.server.port
+    public static final String SERVER_HOST = System.getProperty("netquiz.server.host", "localhost");
+    public static final int SERVER_PORT = Integer.getInteger("netquiz.server.port", 5002); // Single port for all TCP operations (changed from 5000)
     public static final int UDP_NOTIFICATION_PORT = 5003; // Separate UDP port for broadcasts (changed from 5001)
+    public static final int UDP_NACK_PORT = 5004; // Clients request retransmits of missed notifications here
+    // Plain-text chat for ChatClient and telnet, on the same MessagingEngine as CHAT_REQUEST
+    public static final int LINE_CHAT_PORT = Integer.getInteger("netquiz.linechat.port", 5005);
 
     public static final int BUFFER_SIZE = 8192;
     public static final String FILES_DIRECTORY = "server_files";
     public static final String QUIZZES_FILE = "quizzes.json";
+    public static final String SCORES_FILE = "scores.json";
     
+    // Chat rate limits (messages per second, and burst size after idle)
+    public static final double CHAT_USER_RATE_PER_SECOND = 5;
+    public static final int CHAT_USER_BURST = 10;
+    public static final double CHAT_ROOM_RATE_PER_SECOND = 500;
+    public static final int CHAT_ROOM_BURST = 1000;
+
+    // Presence changes are coalesced into one delta frame per client per window
+    public static final long PRESENCE_FLUSH_INTERVAL_MS = 250;
+
+    // Offline private message mailboxes
+    public static final String MAILBOX_DIRECTORY = "mailboxes";
+    public static final int MAILBOX_MEMORY_LIMIT_PER_USER = 100;
+    public static final int MAILBOX_MEMORY_LIMIT_TOTAL = 50_000;
+    public static final int MAILBOX_MAX_MESSAGES_PER_USER = 10_000;
+    // Across all mailboxes, in memory and on disk; recipient names are not checked,
+    // so without it a sender could fill the disk one made-up name at a time
+    public static final int MAILBOX_MAX_MESSAGES_TOTAL = 500_000;
+
+    // Reliable notification channel
+    public static final int NOTIFICATION_REPLAY_BUFFER_SIZE = 1024;
+    public static final long NOTIFICATION_HEARTBEAT_MS = 1000;
+    public static final int NOTIFICATION_QUEUE_CAPACITY = 10_000;
+    // Per-lane depth limits; the lanes together are bounded by NOTIFICATION_QUEUE_CAPACITY
+    public static final int NOTIFICATION_CRITICAL_LANE_CAPACITY = 1_000;
+    public static final int NOTIFICATION_NORMAL_LANE_CAPACITY = 5_000;
+    public static final int NOTIFICATION_LOW_LANE_CAPACITY = 8_000;
+    public static final int NOTIFICATION_MAX_DATAGRAM = 1400; // Stay under a typical Ethernet MTU
+    public static final long NOTIFICATION_BATCH_WINDOW_MS = 20;
+    // Session subscribers are written by a small pool; one that falls this many
+    // frames behind, or blocks a write this long, is disconnected
+    public static final int NOTIFICATION_PUSH_THREADS = 4;
+    public static final int NOTIFICATION_SUBSCRIBER_QUEUE = 256;
+    public static final long NOTIFICATION_SUBSCRIBER_WRITE_TIMEOUT_MS = 10_000;
+    // Retransmits served per second to one NACK source and to all of them; a NACK
+    // is tiny and its reply is up to a datagram per sequence, so both are capped
+    public static final double NOTIFICATION_NACK_RATE_PER_SOURCE = 64;
+    public static final int NOTIFICATION_NACK_BURST_PER_SOURCE = 256;
+    public static final double NOTIFICATION_NACK_RATE_TOTAL = 1_000;
+    public static final int NOTIFICATION_NACK_BURST_TOTAL = 2_000;
+    public static final NotificationProtocol.DeliveryMode NOTIFICATION_DELIVERY_MODE =
+            NotificationProtocol.DeliveryMode.BROADCAST;
+    public static final String NOTIFICATION_MULTICAST_PREFIX = "239.255.50."; // Topic groups .1 to .4
+    public static final int NOTIFICATION_MULTICAST_TTL = 4; // Allow a few router hops across subnets
+
+    // Metrics (Prometheus text format on loopback)
+    public static final int METRICS_PORT = 9404;
+
+    // Server logging (level can be overridden with -Dnetquiz.log.level=DEBUG)
+    public static final String LOG_LEVEL = "INFO";
+    public static final String LOG_DIRECTORY = "logs";
+    public static final String LOG_FILE = "netquiz.log";
+    public static final long LOG_MAX_FILE_BYTES = 10L * 1024 * 1024;
+    public static final int LOG_MAX_FILES = 5;
+    public static final int LOG_RING_BUFFER_SIZE = 8192;
+    public static final boolean LOG_TO_CONSOLE = true;
+
+    // Admission control on the main port. Classrooms often share one NAT address,
+    // so the per-address cap is only there to stop a single runaway client.
+    public static final int ADMISSION_MAX_CONNECTIONS = 5_000;
+    public static final int ADMISSION_MAX_CONNECTIONS_PER_ADDRESS = 2_000;
+    public static final int ADMISSION_ACCEPT_BACKLOG = 512;
+    public static final int ADMISSION_WORKER_THREADS = 64;
+    public static final int ADMISSION_PENDING_QUEUE = 1_024;
+    public static final long ADMISSION_RETRY_AFTER_MS = 2_000;
+    // Per read, from the TLS handshake on; chat and login sessions clear it once attached
+    public static final int ROUTER_READ_TIMEOUT_MS = 30_000;
+    public static final String SERVER_BUSY = "SERVER_BUSY"; // Followed by retry-after in ms
+    public static final int ADMISSION_REJECT_THREADS = 2; // Handshake and write SERVER_BUSY off the accept thread
+    public static final int ADMISSION_REJECT_QUEUE = 256; // Beyond this rejected sockets are closed unanswered
+    public static final int ADMISSION_REJECT_LINGER_MS = 1_000; // Bounds the handshake and the wait for the client to close
+    public static final int CLIENT_BUSY_RETRIES = 3; // Client services retry a SERVER_BUSY reply this often
+
+    // Graceful drain on SIGTERM. With SO_REUSEPORT a new process can bind the same
+    // ports while the old one finishes in-flight requests.
+    public static final long DRAIN_DEADLINE_MS = 30_000;
+    public static final boolean SERVER_REUSE_PORT = true;
+
+    // Long-lived chat and login sessions: clients send PING every heartbeat interval,
+    // the server closes sessions that have been silent for the idle timeout
+    public static final long SESSION_HEARTBEAT_MS = 10_000;
+    public static final long SESSION_IDLE_TIMEOUT_MS = 35_000; // Three missed heartbeats plus slack
+    public static final long SESSION_REAPER_TICK_MS = 1_000;
+
+    // Cluster event bus between server nodes (see ClusterConfig for membership)
+    public static final int CLUSTER_PEER_QUEUE = 10_000; // Frames buffered per peer link
+    public static final long CLUSTER_HEARTBEAT_MS = 1_000;
+    public static final long CLUSTER_RECONNECT_MS = 1_000;
+    public static final int CLUSTER_VIRTUAL_NODES = 128;
+    public static final int CLUSTER_FORWARD_TIMEOUT_MS = 5_000; // Quiz requests forwarded to the owning node
+    public static final int CLUSTER_MAX_SHARD_BYTES = 64 * 1024 * 1024;
+    // A replication snapshot carries every quiz a node holds, so bus frames get the same cap as a shard
+    public static final int CLUSTER_MAX_FRAME_BYTES = CLUSTER_MAX_SHARD_BYTES;
+    // Shared by all nodes, which must prove they hold it before their requests are trusted.
+    // The environment variable keeps it out of the process list.
+    public static final String CLUSTER_SECRET = System.getProperty("netquiz.cluster.secret",
+            System.getenv("NETQUIZ_CLUSTER_SECRET"));
+
+    // TLS on the client port and cluster links (see Tls); off unless -Dnetquiz.tls=true
+    public static final boolean TLS_ENABLED = Boolean.getBoolean("netquiz.tls");
+    public static final String TLS_KEYSTORE = System.getProperty("netquiz.tls.keystore", "netquiz-server.p12");
+    public static final String TLS_TRUSTSTORE = System.getProperty("netquiz.tls.truststore", "netquiz-trust.p12");
+    public static final String TLS_PASSWORD = System.getProperty("netquiz.tls.password", "changeit");
+    public static final String[] TLS_PROTOCOLS = {"TLSv1.3"};
+    public static final int TLS_HANDSHAKE_TIMEOUT_MS = 10_000;
+    public static final int TLS_SESSION_CACHE_SIZE = 10_000;
+    public static final int TLS_SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+    public static final int TLS_RECORD_SIZE = 16_384; // Largest TLS record payload
+
+    // Password store; scrypt at N=2^14, r=8 costs 16MB and roughly 100ms per check
+    // Cluster nodes given the same credentials file share users; a node with a file of
+    // its own does not register new names, or each node could hand out the same one
+    public static final String CREDENTIALS_FILE = System.getProperty("netquiz.auth.credentials", "credentials.jsonl");
+    public static final boolean CREDENTIALS_SHARED = System.getProperty("netquiz.auth.credentials") != null;
+    public static final boolean AUTH_REGISTER_ON_FIRST_LOGIN = true; // No sign-up step; a new name registers
+    public static final int AUTH_SCRYPT_N = 1 << 14;
+    public static final int AUTH_SCRYPT_R = 8;
+    public static final int AUTH_SCRYPT_P = 1;
+    public static final int AUTH_SALT_BYTES = 16;
+    public static final int AUTH_HASH_BYTES = 32;
+    // Each verifier holds 16MB while hashing, so one per core rather than one per login
+    public static final int AUTH_VERIFY_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final int AUTH_VERIFY_QUEUE = 10_000; // A full login storm waits here, not on router threads
+    // Signed session tokens; logged-in sessions get a new one at half the TTL.
+    // Cluster nodes given the same keys file accept each other's tokens.
+    public static final long AUTH_TOKEN_TTL_MS = 15 * 60 * 1000;
+    public static final String AUTH_TOKEN_KEYS_FILE = System.getProperty("netquiz.auth.keys", "session-keys.json");
+    public static final long AUTH_TOKEN_KEY_ROTATION_MS = 24 * 60 * 60 * 1000;
+    public static final int SCORE_UNAUTHORIZED = -1; // SUBMIT_ANSWERS reply when the token is not accepted
+    public static final int SCORE_UNAVAILABLE = -2; // SUBMIT_ANSWERS reply when no reachable node holds the quiz
+
     // Request types for routing
     public static final String QUIZ_REQUEST = "QUIZ";
     public static final String FILE_REQUEST = "FILE";
     public static final String CHAT_REQUEST = "CHAT";
     public static final String USER_REQUEST = "USER";
+    public static final String SEARCH_REQUEST = "SEARCH";
 }
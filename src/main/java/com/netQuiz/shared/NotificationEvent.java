@@ -0,0 +1,98 @@
+package com.netQuiz.shared;
+
+import java.io.Serializable;
+
+public class NotificationEvent implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private EventType type;
+    private String payload;
+    private long timestamp;
+    // Cluster node that raised the event, null when raised locally; never sent to clients
+    private transient String origin;
+
+    /**
+     * Event types and the topic each one is published on
+     */
+    public enum EventType {
+        NEW_QUIZ(NotificationTopic.QUIZ),
+        QUIZ_RESULT(NotificationTopic.QUIZ),
+        EXAM_NOTICE(NotificationTopic.QUIZ),
+        NEW_FILE(NotificationTopic.FILE),
+        USER_LOGIN(NotificationTopic.CHAT),
+        USER_LOGOUT(NotificationTopic.CHAT),
+        CHAT_ACTIVITY(NotificationTopic.CHAT),
+        SYSTEM(NotificationTopic.SYSTEM),
+        TEST(NotificationTopic.SYSTEM);
+
+        private static final EventType[] VALUES = values();
+
+        private final NotificationTopic topic;
+
+        EventType(NotificationTopic topic) {
+            this.topic = topic;
+        }
+
+        public NotificationTopic getTopic() {
+            return topic;
+        }
+
+        public static EventType fromCode(int code) {
+            return code >= 0 && code < VALUES.length ? VALUES[code] : null;
+        }
+    }
+
+    public NotificationEvent(EventType type, String payload) {
+        this(type, payload, System.currentTimeMillis());
+    }
+
+    public NotificationEvent(EventType type, String payload, long timestamp) {
+        this.type = type;
+        this.payload = payload;
+        this.timestamp = timestamp;
+    }
+
+    public EventType getType() {
+        return type;
+    }
+
+    public void setType(EventType type) {
+        this.type = type;
+    }
+
+    public NotificationTopic getTopic() {
+        return type.getTopic();
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public void setOrigin(String origin) {
+        this.origin = origin;
+    }
+
+    /**
+     * Text form used on the UDP channel, e.g. "NEW_QUIZ:Networks by alice"
+     */
+    @Override
+    public String toString() {
+        return type.name() + ":" + payload;
+    }
+}
@@ -0,0 +1,105 @@
+package com.netQuiz.shared;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Datagram layout for the notification channel:
+ * [type:1][topic:1][sequence:8][payload...]
+ * Sequences are per topic. DATA carries one or more notifications as
+ * [count:2] then [length:2][UTF-8] per entry, HEARTBEAT carries the latest
+ * sequence of its topic and no payload, NACK (client to server) carries the
+ * missing range as [from:8][to:8] after the header, with the header sequence unused.
+ * <p>
+ * Subscribed clients also receive typed events on their login session as
+ * NOTIFY_BATCH [count:2][baseTimestamp:8] then [type:1][offsetMs:4][payload UTF]
+ * per event.
+ */
+public class NotificationProtocol {
+    public static final byte DATA = 1;
+    public static final byte HEARTBEAT = 2;
+    public static final byte NACK = 3;
+
+    public static final int HEADER_SIZE = 10;
+    public static final int ENTRY_OVERHEAD = 2;
+    public static final int COUNT_SIZE = 2;
+
+    public static final String EVENT_BATCH = "NOTIFY_BATCH";
+
+    /**
+     * How notifications reach clients
+     */
+    public enum DeliveryMode {
+        // Limited/subnet broadcast to every host on the segment; clients filter by topic
+        BROADCAST,
+        // One multicast group per topic; only subscribed hosts receive a topic
+        MULTICAST
+    }
+
+    public static byte[] encode(byte type, NotificationTopic topic, long sequence, byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        buffer.put(type);
+        buffer.put(topic.code());
+        buffer.putLong(sequence);
+        buffer.put(payload);
+        return buffer.array();
+    }
+
+    public static byte[] encodeNack(NotificationTopic topic, long from, long to) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 16);
+        buffer.put(NACK);
+        buffer.put(topic.code());
+        buffer.putLong(0);
+        buffer.putLong(from);
+        buffer.putLong(to);
+        return buffer.array();
+    }
+
+    /**
+     * Encode a NOTIFY_BATCH frame, including its type string, for the TCP session
+     */
+    public static byte[] encodeEventBatch(List<NotificationEvent> events) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream frame = new DataOutputStream(bytes);
+            long base = events.isEmpty() ? 0 : events.get(0).getTimestamp();
+            frame.writeUTF(EVENT_BATCH);
+            frame.writeShort(events.size());
+            frame.writeLong(base);
+            for (NotificationEvent event : events) {
+                frame.writeByte(event.getType().ordinal());
+                frame.writeInt((int) (event.getTimestamp() - base));
+                frame.writeUTF(event.getPayload());
+            }
+            frame.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Read the body of a NOTIFY_BATCH frame after its type string.
+     * Events of unknown types are skipped.
+     */
+    public static List<NotificationEvent> readEventBatch(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        long base = in.readLong();
+        List<NotificationEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            NotificationEvent.EventType type = NotificationEvent.EventType.fromCode(in.readUnsignedByte());
+            long timestamp = base + in.readInt();
+            String payload = in.readUTF();
+            if (type != null) {
+                events.add(new NotificationEvent(type, payload, timestamp));
+            }
+        }
+        return events;
+    }
+}
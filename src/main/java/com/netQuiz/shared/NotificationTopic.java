@@ -0,0 +1,29 @@
+package com.netQuiz.shared;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Classes of notifications. Each topic is its own sequenced stream and,
+ * in multicast mode, its own group, so clients only receive what they subscribe to.
+ */
+public enum NotificationTopic {
+    QUIZ, FILE, CHAT, SYSTEM;
+
+    private static final NotificationTopic[] VALUES = values();
+
+    public byte code() {
+        return (byte) ordinal();
+    }
+
+    /**
+     * Multicast group for this topic, e.g. 239.255.50.1 for QUIZ
+     */
+    public InetAddress group() throws UnknownHostException {
+        return InetAddress.getByName(Constants.NOTIFICATION_MULTICAST_PREFIX + (ordinal() + 1));
+    }
+
+    public static NotificationTopic fromCode(byte code) {
+        return code >= 0 && code < VALUES.length ? VALUES[code] : null;
+    }
+}
@@ -0,0 +1,65 @@
+package com.netQuiz.shared;
+
+import java.io.Serializable;
+
+public class SearchHit implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private HitType type;
+    private String title;
+    private String text;
+    private long timestamp;
+    private float score;
+
+    public enum HitType {
+        CHAT, FILE
+    }
+
+    public SearchHit(HitType type, String title, String text, long timestamp, float score) {
+        this.type = type;
+        this.title = title;
+        this.text = text;
+        this.timestamp = timestamp;
+        this.score = score;
+    }
+
+    public HitType getType() {
+        return type;
+    }
+
+    public void setType(HitType type) {
+        this.type = type;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    public void setScore(float score) {
+        this.score = score;
+    }
+}
@@ -0,0 +1,162 @@
+package com.netQuiz.shared;
+
+import javax.net.ssl.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+/**
+ * TLS for the client port and cluster links, switched on with
+ * -Dnetquiz.tls=true. The server loads its key from a PKCS12 key store
+ * (-Dnetquiz.tls.keystore); clients trust -Dnetquiz.tls.truststore, or the
+ * JDK's CAs when that file does not exist. gen-tls-cert.sh makes a
+ * self-signed pair for local use.
+ *
+ * Quiz, file and search requests open a new connection each time, so all
+ * connections from one process share one client context: its session cache
+ * lets them resume with a TLS 1.3 ticket instead of a full handshake.
+ * With TLS off every method here hands back a plain socket.
+ */
+public final class Tls {
+    private static SSLContext clientContext;
+    private static SSLContext serverContext;
+
+    private Tls() {
+    }
+
+    public static boolean isEnabled() {
+        return Constants.TLS_ENABLED;
+    }
+
+    /**
+     * Connect to a server or node, with TLS when enabled
+     */
+    public static Socket connect(String host, int port) throws IOException {
+        return clientSide(new Socket(host, port), host, port);
+    }
+
+    public static Socket connect(InetSocketAddress address, int timeoutMs) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(address, timeoutMs);
+            return clientSide(socket, address.getHostString(), address.getPort());
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Layer TLS over a connected socket; the handshake runs on first use
+     */
+    public static Socket clientSide(Socket socket, String host, int port) throws IOException {
+        return isEnabled() ? client(clientContext(), socket, host, port) : socket;
+    }
+
+    /**
+     * Layer TLS over an accepted socket and handshake now, on the caller's
+     * thread, with a deadline so a silent peer cannot hold it
+     */
+    public static Socket serverSide(Socket socket) throws IOException {
+        return isEnabled() ? server(serverContext(), socket) : socket;
+    }
+
+    public static SSLSocket client(SSLContext context, Socket socket, String host, int port) throws IOException {
+        // Handshake messages are small writes; Nagle would hold each for a delayed ACK
+        socket.setTcpNoDelay(true);
+        SSLSocket ssl = (SSLSocket) context.getSocketFactory().createSocket(socket, host, port, true);
+        ssl.setEnabledProtocols(Constants.TLS_PROTOCOLS);
+        ssl.setUseClientMode(true);
+        // Check the certificate names the host we meant to reach
+        SSLParameters parameters = ssl.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        ssl.setSSLParameters(parameters);
+        return ssl;
+    }
+
+    public static SSLSocket server(SSLContext context, Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        SSLSocket ssl = (SSLSocket) context.getSocketFactory().createSocket(socket, null, true);
+        ssl.setEnabledProtocols(Constants.TLS_PROTOCOLS);
+        ssl.setUseClientMode(false);
+        int timeout = socket.getSoTimeout();
+        ssl.setSoTimeout(Constants.TLS_HANDSHAKE_TIMEOUT_MS);
+        ssl.startHandshake();
+        ssl.setSoTimeout(timeout);
+        return ssl;
+    }
+
+    /**
+     * Server context from a PKCS12 key store
+     */
+    public static SSLContext serverContext(Path keyStore, char[] password) throws IOException {
+        try {
+            KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keys.init(load(keyStore, password), password);
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keys.getKeyManagers(), null, null);
+            configure(context.getServerSessionContext());
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot load TLS key store " + keyStore + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Client context trusting a PKCS12 trust store, or the JDK's CAs when it is null
+     */
+    public static SSLContext clientContext(Path trustStore, char[] password) throws IOException {
+        try {
+            TrustManager[] trust = null;
+            if (trustStore != null) {
+                TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                factory.init(load(trustStore, password));
+                trust = factory.getTrustManagers();
+            }
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, trust, null);
+            configure(context.getClientSessionContext());
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot load TLS trust store " + trustStore + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static synchronized SSLContext clientContext() throws IOException {
+        if (clientContext == null) {
+            Path trustStore = Paths.get(Constants.TLS_TRUSTSTORE);
+            clientContext = clientContext(Files.exists(trustStore) ? trustStore : null,
+                    Constants.TLS_PASSWORD.toCharArray());
+        }
+        return clientContext;
+    }
+
+    /**
+     * The server's context; loading it at startup surfaces a missing key store early
+     */
+    public static synchronized SSLContext serverContext() throws IOException {
+        if (serverContext == null) {
+            serverContext = serverContext(Paths.get(Constants.TLS_KEYSTORE), Constants.TLS_PASSWORD.toCharArray());
+        }
+        return serverContext;
+    }
+
+    private static void configure(SSLSessionContext sessions) {
+        sessions.setSessionCacheSize(Constants.TLS_SESSION_CACHE_SIZE);
+        sessions.setSessionTimeout(Constants.TLS_SESSION_TIMEOUT_SECONDS);
+    }
+
+    private static KeyStore load(Path path, char[] password) throws IOException, GeneralSecurityException {
+        KeyStore store = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(path)) {
+            store.load(in, password);
+        }
+        return store;
+    }
+}